@@ -0,0 +1,33 @@
+package net.acomputerdog.ce2.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every benchmark with the GC profiler (allocation rate) and writes the results to bench-results.json.
+ * Any arguments are passed to the JMH command line instead, e.g. "ClassPathBenchmark -prof gc".
+ */
+public class BenchMain {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        Options options = new OptionsBuilder()
+                .include(BenchMain.class.getPackage().getName() + ".*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("bench-results.json")
+                .build();
+        try {
+            new Runner(options).run();
+        } catch (RunnerException e) {
+            System.err.println("Benchmarks failed: " + e);
+            System.exit(1);
+        }
+    }
+}
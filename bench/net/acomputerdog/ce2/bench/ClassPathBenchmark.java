@@ -0,0 +1,48 @@
+package net.acomputerdog.ce2.bench;
+
+import net.acomputerdog.ce2.CEClassPath;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class lookups through CEClassPath.find, which is what the ClassPool does for every class it loads.  The jar
+ * is put after a few other entries, like a real classpath with the JDK and libraries in front.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassPathBenchmark {
+    @Param({Corpus.CLASSES_1K, Corpus.CLASSES_10K, Corpus.CLASSES_100K})
+    public String corpus;
+
+    private CEClassPath classPath;
+    private String[] names;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        classPath = new CEClassPath();
+        classPath.addPath(Corpus.get(Corpus.HUGE_METHODS));
+        classPath.addPath(Corpus.get(Corpus.DEEP_HIERARCHY));
+        classPath.addPath(Corpus.get(corpus));
+        names = Corpus.getClassNames(corpus);
+    }
+
+    @Benchmark
+    public URL findHit() {
+        String name = names[next];
+        next = (next + 7919) % names.length;
+        return classPath.find(name);
+    }
+
+    @Benchmark
+    public URL findMiss() {
+        return classPath.find("bench.missing.Nothing");
+    }
+}
@@ -0,0 +1,142 @@
+package net.acomputerdog.ce2.bench;
+
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.MethodInfo;
+import net.acomputerdog.ce2.CEClassPath;
+import net.acomputerdog.ce2.cfg.ControlFlowGraph;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the control flow graph of every method on a classpath and checks that each one is consistent, then
+ * prints the total build time and the slowest method.  Exits with 1 if any graph fails to build or breaks a
+ * check.
+ * <p>
+ * Usage: ControlFlowCheck [path...]
+ * <p>
+ * Checks the running JRE's rt.jar if no paths are given.  The checks are:
+ * every block's offsets map back to it, every successor edge has a matching predecessor edge of the same kind,
+ * the entry dominates every reachable block, every block's immediate dominator dominates it, and every block
+ * in a loop is dominated by the loop header.
+ */
+public class ControlFlowCheck {
+    //only report the first few problems
+    private static final int MAX_REPORTED = 20;
+
+    private int methods = 0;
+    private long nanos = 0;
+    private long slowestNanos = 0;
+    private String slowest = null;
+    private final List<String> problems = new ArrayList<>();
+    private int problemCount = 0;
+
+    public static void main(String[] args) throws IOException {
+        CEClassPath classPath = new CEClassPath();
+        if (args.length == 0) {
+            classPath.addPath(new File(System.getProperty("java.home"), "lib" + File.separator + "rt.jar"));
+        }
+        for (String arg : args) {
+            classPath.addPath(new File(arg));
+        }
+
+        ControlFlowCheck check = new ControlFlowCheck();
+        classPath.visitClassFiles((entry, path, in) -> {
+            check.checkClass(new ClassFile(new DataInputStream(in)));
+            return true;
+        });
+
+        for (String problem : check.problems) {
+            System.out.println(problem);
+        }
+        System.out.printf("%d methods, %d problems, built in %d ms, slowest %s (%d us)%n", check.methods,
+                check.problemCount, check.nanos / 1000000, check.slowest, check.slowestNanos / 1000);
+        if (check.methods == 0 || check.problemCount > 0) {
+            System.exit(1);
+        }
+    }
+
+    private void checkClass(ClassFile cls) {
+        for (Object obj : cls.getMethods()) {
+            MethodInfo method = (MethodInfo) obj;
+            if (method.getCodeAttribute() == null) {
+                continue;
+            }
+            String name = cls.getName() + "." + method.getName() + method.getDescriptor();
+            methods++;
+            long start = System.nanoTime();
+            ControlFlowGraph cfg;
+            try {
+                cfg = ControlFlowGraph.build(method);
+            } catch (BadBytecode | RuntimeException e) {
+                report(name + ": unable to build: " + e);
+                continue;
+            }
+            long time = System.nanoTime() - start;
+            nanos += time;
+            if (time > slowestNanos) {
+                slowestNanos = time;
+                slowest = name;
+            }
+            String problem = check(cfg);
+            if (problem != null) {
+                report(name + ": " + problem);
+            }
+        }
+    }
+
+    /**
+     * Checks a graph.
+     *
+     * @return A description of the first problem found, or null if there are none
+     */
+    private static String check(ControlFlowGraph cfg) {
+        if (cfg.getBlockCount() > 0 && !cfg.isReachable(0)) {
+            return "entry block isn't reachable";
+        }
+        for (int b = 0; b < cfg.getBlockCount(); b++) {
+            String block = ControlFlowGraph.getBlockName(b);
+            if (cfg.findBlock(cfg.getStart(b)) != b || cfg.findBlock(cfg.getLastInstruction(b)) != b
+                    || cfg.getEnd(b) <= cfg.getLastInstruction(b)) {
+                return block + " has inconsistent offsets";
+            }
+            for (int i = 0; i < cfg.getSuccessorCount(b); i++) {
+                if (!hasPredecessor(cfg, cfg.getSuccessor(b, i), b, cfg.getSuccessorKind(b, i))) {
+                    return block + " -> " + ControlFlowGraph.getBlockName(cfg.getSuccessor(b, i)) + " has no matching predecessor edge";
+                }
+            }
+            if (!cfg.isReachable(b)) {
+                continue;
+            }
+            if (!cfg.dominates(0, b)) {
+                return block + " isn't dominated by the entry";
+            }
+            if (b != 0 && !cfg.dominates(cfg.getImmediateDominator(b), b)) {
+                return block + " isn't dominated by its immediate dominator";
+            }
+            if (cfg.getLoopHeader(b) != -1 && !cfg.dominates(cfg.getLoopHeader(b), b)) {
+                return block + " isn't dominated by its loop header";
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasPredecessor(ControlFlowGraph cfg, int block, int pred, int kind) {
+        for (int i = 0; i < cfg.getPredecessorCount(block); i++) {
+            if (cfg.getPredecessor(block, i) == pred && cfg.getPredecessorKind(block, i) == kind) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void report(String problem) {
+        if (problemCount++ < MAX_REPORTED) {
+            problems.add(problem);
+        }
+    }
+}
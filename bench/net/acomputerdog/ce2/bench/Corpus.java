@@ -0,0 +1,226 @@
+package net.acomputerdog.ce2.bench;
+
+import javassist.CtClass;
+import javassist.bytecode.*;
+
+import java.io.*;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Synthetic jars for the benchmarks.  Jars are generated on first use under -Dce2.bench.dir (default
+ * java.io.tmpdir/ce2-bench) and reused after that.  Generation is seeded and the zip entries have fixed
+ * timestamps, so the same corpus name always produces the same bytes.
+ * <p>
+ * Corpora:
+ * classes-N: N small classes in 100 packages, with string literals, fields and calls between classes
+ * huge-methods: 200 classes, each with a method over the 8000 byte JIT limit and a few medium methods
+ * deep-hierarchy: 20 chains of 200 classes, each class extending the previous one and adding an interface
+ */
+public class Corpus {
+    //bump when the generated classes change, so that old jars aren't reused
+    private static final int VERSION = 1;
+    private static final long ENTRY_TIME = 946684800000L;
+
+    private static final File DIR = new File(System.getProperty("ce2.bench.dir",
+            System.getProperty("java.io.tmpdir") + File.separator + "ce2-bench"));
+
+    public static final String CLASSES_1K = "classes-1000";
+    public static final String CLASSES_10K = "classes-10000";
+    public static final String CLASSES_100K = "classes-100000";
+    public static final String HUGE_METHODS = "huge-methods";
+    public static final String DEEP_HIERARCHY = "deep-hierarchy";
+
+    /**
+     * Gets the jar of a corpus, generating it if needed.
+     */
+    public static synchronized File get(String name) throws IOException {
+        File jar = new File(DIR, name + "-v" + VERSION + ".jar");
+        if (jar.isFile()) {
+            return jar;
+        }
+        if (!DIR.isDirectory() && !DIR.mkdirs()) {
+            throw new IOException("Unable to create " + DIR);
+        }
+        File temp = new File(DIR, jar.getName() + ".tmp");
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            generate(name, out);
+        }
+        if (!temp.renameTo(jar)) {
+            throw new IOException("Unable to move " + temp + " to " + jar);
+        }
+        return jar;
+    }
+
+    /**
+     * Gets the names of every class in a corpus, in the order they were generated.
+     */
+    public static String[] getClassNames(String name) {
+        int count;
+        if (name.startsWith("classes-")) {
+            count = Integer.parseInt(name.substring("classes-".length()));
+        } else if (HUGE_METHODS.equals(name)) {
+            count = 200;
+        } else if (DEEP_HIERARCHY.equals(name)) {
+            count = 20 * 200;
+        } else {
+            throw new IllegalArgumentException("Unknown corpus: " + name);
+        }
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = className(name, i);
+        }
+        return names;
+    }
+
+    private static String className(String corpus, int i) {
+        if (HUGE_METHODS.equals(corpus)) {
+            return "bench.huge.Huge" + i;
+        } else if (DEEP_HIERARCHY.equals(corpus)) {
+            return "bench.deep.chain" + (i / 200) + ".Level" + (i % 200);
+        } else {
+            return "bench.p" + (i % 100) + ".C" + i;
+        }
+    }
+
+    private static void generate(String corpus, ZipOutputStream out) throws IOException {
+        String[] names = getClassNames(corpus);
+        Random random = new Random(corpus.hashCode());
+        for (int i = 0; i < names.length; i++) {
+            ClassFile cls;
+            if (HUGE_METHODS.equals(corpus)) {
+                cls = hugeClass(names[i], random);
+            } else if (DEEP_HIERARCHY.equals(corpus)) {
+                cls = levelClass(names, i, random);
+            } else {
+                cls = smallClass(names, i, random);
+            }
+            write(cls, out);
+        }
+    }
+
+    private static void write(ClassFile cls, ZipOutputStream out) throws IOException {
+        ZipEntry entry = new ZipEntry(cls.getName().replace('.', '/') + ".class");
+        entry.setTime(ENTRY_TIME);
+        out.putNextEntry(entry);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        cls.write(new DataOutputStream(bytes));
+        out.write(bytes.toByteArray());
+        out.closeEntry();
+    }
+
+    private static ClassFile smallClass(String[] names, int index, Random random) {
+        ClassFile cls = new ClassFile(false, names[index], null);
+        ConstPool cp = cls.getConstPool();
+        addConstructor(cls, "java.lang.Object");
+        try {
+            cls.addField(new FieldInfo(cp, "count", "I"));
+            FieldInfo constant = new FieldInfo(cp, "NAME", "Ljava/lang/String;");
+            constant.setAccessFlags(AccessFlag.PUBLIC | AccessFlag.STATIC | AccessFlag.FINAL);
+            constant.addAttribute(new ConstantAttribute(cp, cp.addStringInfo("name-" + index)));
+            cls.addField(constant);
+
+            for (int m = 0; m < 4; m++) {
+                Bytecode code = new Bytecode(cp, 3, 1);
+                String target = names[random.nextInt(names.length)];
+                code.addLdc("message " + index + "." + m + " " + random.nextInt(1000));
+                code.addInvokestatic(target, "helper", "(Ljava/lang/String;)I");
+                code.addAload(0);
+                code.addGetfield(names[index], "count", "I");
+                code.addOpcode(Opcode.IADD);
+                code.addIconst(random.nextInt(5));
+                code.addOpcode(Opcode.IMUL);
+                code.addReturn(CtClass.intType);
+                addMethod(cls, "method" + m, "()I", AccessFlag.PUBLIC, code);
+            }
+
+            Bytecode helper = new Bytecode(cp, 1, 1);
+            helper.addAload(0);
+            helper.addInvokevirtual("java.lang.String", "length", "()I");
+            helper.addReturn(CtClass.intType);
+            addMethod(cls, "helper", "(Ljava/lang/String;)I", AccessFlag.PUBLIC | AccessFlag.STATIC, helper);
+        } catch (DuplicateMemberException e) {
+            throw new IllegalStateException(e);
+        }
+        return cls;
+    }
+
+    private static ClassFile hugeClass(String name, Random random) {
+        ClassFile cls = new ClassFile(false, name, null);
+        ConstPool cp = cls.getConstPool();
+        addConstructor(cls, "java.lang.Object");
+        try {
+            //about 10k bytes of loads and stores, like a generated table initializer
+            Bytecode huge = new Bytecode(cp, 2, 2);
+            for (int i = 0; i < 1500; i++) {
+                huge.addLdc("entry-" + i);
+                huge.addAstore(1);
+                huge.addIconst(random.nextInt(100));
+                huge.addOpcode(Opcode.POP);
+            }
+            huge.addOpcode(Opcode.RETURN);
+            addMethod(cls, "init", "()V", AccessFlag.PUBLIC | AccessFlag.STATIC, huge);
+
+            for (int m = 0; m < 3; m++) {
+                Bytecode medium = new Bytecode(cp, 2, 2);
+                for (int i = 0; i < 60; i++) {
+                    medium.addIload(0);
+                    medium.addIconst(random.nextInt(6));
+                    medium.addOpcode(Opcode.IADD);
+                    medium.addIstore(0);
+                }
+                medium.addIload(0);
+                medium.addReturn(CtClass.intType);
+                addMethod(cls, "medium" + m, "(I)I", AccessFlag.PUBLIC | AccessFlag.STATIC, medium);
+            }
+        } catch (DuplicateMemberException e) {
+            throw new IllegalStateException(e);
+        }
+        return cls;
+    }
+
+    private static ClassFile levelClass(String[] names, int index, Random random) {
+        boolean root = index % 200 == 0;
+        String superName = root ? "java.lang.Object" : names[index - 1];
+        ClassFile cls = new ClassFile(false, names[index], superName);
+        ConstPool cp = cls.getConstPool();
+        cls.setInterfaces(new String[]{random.nextBoolean() ? "java.io.Serializable" : "java.lang.Cloneable"});
+        addConstructor(cls, superName);
+        try {
+            Bytecode code = new Bytecode(cp, 2, 1);
+            code.addAload(0);
+            if (root) {
+                code.addIconst(0);
+            } else {
+                code.addInvokespecial(superName, "depth", "()I");
+            }
+            code.addIconst(1);
+            code.addOpcode(Opcode.IADD);
+            code.addReturn(CtClass.intType);
+            addMethod(cls, "depth", "()I", AccessFlag.PUBLIC, code);
+        } catch (DuplicateMemberException e) {
+            throw new IllegalStateException(e);
+        }
+        return cls;
+    }
+
+    private static void addConstructor(ClassFile cls, String superName) {
+        Bytecode code = new Bytecode(cls.getConstPool(), 1, 1);
+        code.addAload(0);
+        code.addInvokespecial(superName, MethodInfo.nameInit, "()V");
+        code.addOpcode(Opcode.RETURN);
+        try {
+            addMethod(cls, MethodInfo.nameInit, "()V", AccessFlag.PUBLIC, code);
+        } catch (DuplicateMemberException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void addMethod(ClassFile cls, String name, String desc, int access, Bytecode code) throws DuplicateMemberException {
+        MethodInfo method = new MethodInfo(cls.getConstPool(), name, desc);
+        method.setAccessFlags(access);
+        method.setCodeAttribute(code.toCodeAttribute());
+        cls.addMethod(method);
+    }
+}
@@ -0,0 +1,64 @@
+package net.acomputerdog.ce2.bench;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+import net.acomputerdog.ce2.CEClassPath;
+import net.acomputerdog.ce2.disassembler.Disassembler;
+import net.acomputerdog.ce2.disassembler.html.HTMLDisassembler;
+import net.acomputerdog.ce2.disassembler.lines.LineBuilder;
+import net.acomputerdog.ce2.disassembler.lines.LineStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Disassembling one class into lines, as a class tab does when it is opened.  Classes are loaded into the
+ * ClassPool during setup, so only the disassembly is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DisassemblerBenchmark {
+    @Param({Corpus.CLASSES_1K, Corpus.HUGE_METHODS, Corpus.DEEP_HIERARCHY})
+    public String corpus;
+
+    private Disassembler disassembler;
+    private CtClass[] classes;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException, NotFoundException {
+        CEClassPath classPath = new CEClassPath();
+        classPath.addPath(Corpus.get(corpus));
+        ClassPool pool = new ClassPool(true);
+        pool.appendClassPath(classPath);
+        disassembler = new HTMLDisassembler(pool);
+
+        String[] names = Corpus.getClassNames(corpus);
+        classes = new CtClass[Math.min(names.length, 1000)];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = pool.get(names[i * (names.length / classes.length)]);
+        }
+    }
+
+    @Benchmark
+    public LineStore disassembleToLines() {
+        CtClass cls = classes[next];
+        next = (next + 1) % classes.length;
+        LineBuilder builder = new LineBuilder();
+        disassembler.disassembleClass(cls, builder);
+        return builder.getLines();
+    }
+
+    @Benchmark
+    public String disassembleToHtml() {
+        CtClass cls = classes[next];
+        next = (next + 1) % classes.length;
+        return disassembler.disassembleClass(cls);
+    }
+}
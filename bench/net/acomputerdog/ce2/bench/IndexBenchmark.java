@@ -0,0 +1,70 @@
+package net.acomputerdog.ce2.bench;
+
+import net.acomputerdog.ce2.CEClassPath;
+import net.acomputerdog.ce2.index.ClassPathIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexing a classpath: just streaming the class files, and building the full ClassPathIndex.  A cold build
+ * clears the saved string index segments before every invocation, a warm one loads them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 4)
+@Fork(value = 1, jvmArgsAppend = "-Dce2.indexDir=" + IndexBenchmark.INDEX_DIR)
+public class IndexBenchmark {
+    static final String INDEX_DIR = "ce2-bench-index";
+
+    @Param({Corpus.CLASSES_1K, Corpus.CLASSES_10K, Corpus.CLASSES_100K})
+    public String corpus;
+
+    @Param({"true", "false"})
+    public boolean cold;
+
+    private CEClassPath classPath;
+
+    @Setup
+    public void setup() throws IOException {
+        classPath = new CEClassPath();
+        classPath.addPath(Corpus.get(corpus));
+    }
+
+    @Setup(Level.Invocation)
+    public void clearIndex() {
+        File[] segments = new File(INDEX_DIR).listFiles();
+        if (cold && segments != null) {
+            for (File segment : segments) {
+                if (!segment.delete()) {
+                    throw new IllegalStateException("Unable to delete " + segment);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public long visitClassFiles() {
+        long[] bytes = new long[1];
+        classPath.visitClassFiles((entry, path, in) -> {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes[0] += read;
+            }
+            return true;
+        });
+        return bytes[0];
+    }
+
+    @Benchmark
+    public ClassPathIndex build() {
+        ClassPathIndex index = new ClassPathIndex();
+        index.build(classPath, null);
+        return index;
+    }
+}
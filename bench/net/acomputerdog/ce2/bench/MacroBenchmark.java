@@ -0,0 +1,277 @@
+package net.acomputerdog.ce2.bench;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+import net.acomputerdog.ce2.CEClassPath;
+import net.acomputerdog.ce2.disassembler.Disassembler;
+import net.acomputerdog.ce2.disassembler.html.HTMLDisassembler;
+import net.acomputerdog.ce2.disassembler.lines.LineBuilder;
+import net.acomputerdog.ce2.index.ClassPathIndex;
+
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * End to end benchmark of the headless code paths: index a fixed corpus, then open and disassemble a fixed set
+ * of its classes the way Main sets up the GUI.  Records wall times, peak heap, peak RSS and GC time as JSON
+ * and compares them against a baseline, exiting with 1 if any metric is worse than the threshold allows.
+ * <p>
+ * Usage: MacroBenchmark [--baseline file] [--out file] [--threshold fraction] [--runs n] [--update]
+ * <p>
+ * The numbers only mean something on the machine they were measured on, so the baseline isn't committed.
+ * --update creates or replaces it, and without --update a missing baseline is an error (exit 2).  Times are
+ * the median of the runs, after one warmup run.  Metrics that can't be measured on this platform are -1 and
+ * aren't compared.
+ */
+public class MacroBenchmark {
+    private static final String CORPUS = Corpus.CLASSES_10K;
+    //every nth class of the corpus is disassembled
+    private static final int DISASSEMBLE_STRIDE = 20;
+    private static final Pattern METRIC = Pattern.compile("\"(\\w+)\"\\s*:\\s*(-?[0-9.]+)");
+
+    public static void main(String[] args) throws Exception {
+        File baseline = new File("bench/baseline.json");
+        File out = null;
+        double threshold = Double.parseDouble(System.getProperty("ce2.bench.threshold", "0.25"));
+        int runs = 5;
+        boolean update = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--baseline":
+                    baseline = new File(args[++i]);
+                    break;
+                case "--out":
+                    out = new File(args[++i]);
+                    break;
+                case "--threshold":
+                    threshold = Double.parseDouble(args[++i]);
+                    break;
+                case "--runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                case "--update":
+                    update = true;
+                    break;
+                default:
+                    System.err.println("Usage: MacroBenchmark [--baseline file] [--out file] [--threshold fraction] [--runs n] [--update]");
+                    System.exit(2);
+            }
+        }
+
+        //string index segments go to a fresh directory, so every run indexes from scratch
+        File indexDir = Files.createTempDirectory("ce2-macro-index").toFile();
+        System.setProperty("ce2.indexDir", indexDir.getPath());
+        File jar = Corpus.get(CORPUS);
+
+        HeapSampler heap = new HeapSampler();
+        Thread sampler = new Thread(heap, "CE2 heap sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+
+        run(jar, indexDir);
+        long[] indexTimes = new long[runs];
+        long[] disassembleTimes = new long[runs];
+        long gcBefore = gcTime();
+        for (int i = 0; i < runs; i++) {
+            long[] times = run(jar, indexDir);
+            indexTimes[i] = times[0];
+            disassembleTimes[i] = times[1];
+        }
+        heap.stop();
+        sampler.join();
+        clear(indexDir);
+        indexDir.delete();
+
+        Map<String, Long> results = new LinkedHashMap<>();
+        results.put("indexMs", median(indexTimes));
+        results.put("disassembleMs", median(disassembleTimes));
+        results.put("totalMs", median(indexTimes) + median(disassembleTimes));
+        results.put("gcMsPerRun", (gcTime() - gcBefore) / runs);
+        results.put("peakHeapMB", heap.peak / (1024 * 1024));
+        results.put("peakRssMB", peakRss() / 1024);
+
+        String json = toJson(results);
+        System.out.print(json);
+        if (out != null) {
+            Files.write(out.toPath(), json.getBytes(StandardCharsets.UTF_8));
+        }
+        if (update) {
+            Files.write(baseline.toPath(), json.getBytes(StandardCharsets.UTF_8));
+            System.out.println("Updated " + baseline);
+            return;
+        }
+        if (!baseline.isFile()) {
+            System.err.println("No baseline at " + baseline + ", run with --update on this machine to create one");
+            System.exit(2);
+        }
+        if (!compare(readJson(baseline), results, threshold)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the scenario once.
+     *
+     * @return The index and disassembly times in ms
+     */
+    private static long[] run(File jar, File indexDir) throws NotFoundException {
+        clear(indexDir);
+        long start = System.nanoTime();
+        CEClassPath classPath = new CEClassPath();
+        classPath.addPath(jar);
+        ClassPathIndex index = new ClassPathIndex();
+        index.build(classPath, null);
+        if (!index.isReady()) {
+            throw new IllegalStateException("Index build failed");
+        }
+        long indexed = System.nanoTime();
+
+        ClassPool classPool = new ClassPool(true);
+        classPool.appendClassPath(classPath);
+        Disassembler disassembler = new HTMLDisassembler(classPool, classPath);
+        String[] names = Corpus.getClassNames(CORPUS);
+        long lines = 0;
+        for (int i = 0; i < names.length; i += DISASSEMBLE_STRIDE) {
+            CtClass cls = classPool.get(names[i]);
+            LineBuilder builder = new LineBuilder();
+            disassembler.disassembleClass(cls, builder);
+            lines += builder.getLines().getLineCount();
+        }
+        if (lines == 0) {
+            throw new IllegalStateException("Nothing was disassembled");
+        }
+        long done = System.nanoTime();
+        return new long[]{(indexed - start) / 1000000, (done - indexed) / 1000000};
+    }
+
+    private static void clear(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    System.err.println("Unable to delete " + file);
+                }
+            }
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static long gcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+
+    /**
+     * Gets the peak resident set size in KB, or -1 if it isn't available (only Linux has /proc).
+     */
+    private static long peakRss() {
+        File status = new File("/proc/self/status");
+        if (!status.isFile()) {
+            return -1;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(status))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Unable to read peak RSS: " + e);
+        }
+        return -1;
+    }
+
+    /**
+     * Compares results against a baseline, printing every metric.
+     *
+     * @return false if any metric regressed by more than the threshold
+     */
+    private static boolean compare(Map<String, Long> baseline, Map<String, Long> results, double threshold) {
+        boolean passed = true;
+        for (Map.Entry<String, Long> entry : results.entrySet()) {
+            Long base = baseline.get(entry.getKey());
+            long value = entry.getValue();
+            if (base == null || base < 0 || value < 0) {
+                System.out.println(entry.getKey() + ": " + value + " (not compared)");
+                continue;
+            }
+            //small values are mostly noise, so allow at least a few units of slack
+            double limit = Math.max(base * (1 + threshold), base + 5);
+            boolean ok = value <= limit;
+            System.out.printf("%s: %d, baseline %d, limit %.0f%s%n", entry.getKey(), value, base, limit, ok ? "" : "  REGRESSION");
+            passed &= ok;
+        }
+        return passed;
+    }
+
+    private static Map<String, Long> readJson(File file) throws IOException {
+        Map<String, Long> values = new HashMap<>();
+        Matcher matcher = METRIC.matcher(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        while (matcher.find()) {
+            values.put(matcher.group(1), (long) Double.parseDouble(matcher.group(2)));
+        }
+        return values;
+    }
+
+    private static String toJson(Map<String, Long> values) {
+        StringBuilder json = new StringBuilder("{\n");
+        Iterator<Map.Entry<String, Long>> it = values.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            json.append("  \"").append(entry.getKey()).append("\": ").append(entry.getValue());
+            json.append(it.hasNext() ? ",\n" : "\n");
+        }
+        return json.append("}\n").toString();
+    }
+
+    /**
+     * Samples the used heap until stopped.  The heap pools reach their peaks at different times, so adding up
+     * their peak usages overstates the peak of the whole heap.
+     */
+    private static class HeapSampler implements Runnable {
+        private static final long INTERVAL_MS = 5;
+
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private volatile boolean running = true;
+        private volatile long peak = 0;
+
+        @Override
+        public void run() {
+            while (running) {
+                sample();
+                try {
+                    Thread.sleep(INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            sample();
+        }
+
+        private void stop() {
+            running = false;
+        }
+
+        private void sample() {
+            peak = Math.max(peak, memory.getHeapMemoryUsage().getUsed());
+        }
+    }
+}
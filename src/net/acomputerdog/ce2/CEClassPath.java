@@ -2,21 +2,36 @@ package net.acomputerdog.ce2;
 
 import javassist.ClassPath;
 import javassist.NotFoundException;
+import net.acomputerdog.ce2.jfr.ClassLookupEvent;
+import net.acomputerdog.ce2.jfr.Jfr;
+import net.acomputerdog.ce2.metrics.Metrics;
 import net.acomputerdog.ce2.util.FileUtils;
+import net.acomputerdog.ce2.util.IterableEnumeration;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 public class CEClassPath implements ClassPath {
     private List<File> paths = new ArrayList<>();
+    //class name -> URL of every class opened through this classpath
+    private final Map<String, String> locations = new ConcurrentHashMap<>();
 
     public CEClassPath() {
 
@@ -40,10 +55,11 @@ public class CEClassPath implements ClassPath {
         if (url == null) {
             throw new NotFoundException("Class could not be found");
         }
+        locations.put(classname, url.toString());
         try {
             URLConnection conn = url.openConnection();
             conn.connect();
-            return conn.getInputStream();
+            return Metrics.get().countBytes(conn.getInputStream());
         } catch (IOException e) {
             throw new NotFoundException("Class could not be loaded", e);
         }
@@ -51,23 +67,51 @@ public class CEClassPath implements ClassPath {
 
     @Override
     public URL find(String classname) {
+        ClassLookupEvent event = Jfr.ENABLED ? new ClassLookupEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long start = System.nanoTime();
+        Location location = findLocation(classname);
+        Metrics.get().recordLookup(location != null, System.nanoTime() - start);
+        if (event != null && event.shouldCommit()) {
+            event.className = classname;
+            event.location = location == null ? null : location.url.toString();
+            event.bytes = location == null ? -1 : location.bytes;
+            event.commit();
+        }
+        return location == null ? null : location.url;
+    }
+
+    /**
+     * Gets the URL a class was found at when it was opened through this classpath, without searching the
+     * classpath again.
+     *
+     * @return The URL as a string, or null if the class was never opened through this classpath
+     */
+    public String getLocation(String classname) {
+        return locations.get(classname);
+    }
+
+    private Location findLocation(String classname) {
         for (File path : paths) {
             if (path.isDirectory()) {
                 File sub = new File(path, classToPath(classname));
                 if (sub.isFile()) {
                     URL url = FileUtils.toUrl(sub);
                     if (url != null) {
-                        return url;
+                        return new Location(url, sub.length());
                     }
                 }
             } else if (path.isFile()) {
                 if (FileUtils.isJar(path)) {
-                    URL url = searchJar(path, classname);
-                    if (url != null) {
-                        return url;
+                    Location location = searchJar(path, classname);
+                    if (location != null) {
+                        return location;
                     }
                 } else if (FileUtils.isClass(path) && pathMatches(path, classname)) {
-                    return FileUtils.toUrl(path);
+                    URL url = FileUtils.toUrl(path);
+                    return url == null ? null : new Location(url, path.length());
                 }
             } else {
                 System.out.println("Skipping invalid classpath \"" + path.getPath() + "\".");
@@ -81,7 +125,103 @@ public class CEClassPath implements ClassPath {
 
     }
 
-    private static URL searchJar(File jarFile, String cls) {
+    /**
+     * Streams every class file reachable from this classpath to a visitor, one at a time, until the visitor
+     * asks to stop.
+     *
+     * @return false if the visitor stopped the walk early
+     */
+    public boolean visitClassFiles(ClassFileVisitor visitor) {
+        for (File path : getPaths()) {
+            if (!visitPath(path, path, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean visitPath(File entry, File file, ClassFileVisitor visitor) {
+        if (file.isDirectory()) {
+            File[] contents = file.listFiles();
+            if (contents != null) {
+                for (File sub : contents) {
+                    if (!visitPath(entry, sub, visitor)) {
+                        return false;
+                    }
+                }
+            }
+        } else if (file.isFile()) {
+            if (FileUtils.isJar(file)) {
+                return visitJar(file, visitor);
+            } else if (FileUtils.isClass(file)) {
+                String name = entry.equals(file) ? file.getName() : entry.toURI().relativize(file.toURI()).getPath();
+                try (InputStream in = new FileInputStream(file)) {
+                    return visitor.visitClass(entry, name, in);
+                } catch (IOException e) {
+                    System.err.println("IOException reading class: " + file.getPath());
+                    e.printStackTrace();
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean visitJar(File file, ClassFileVisitor visitor) {
+        try (ZipFile zip = new ZipFile(file)) {
+            for (ZipEntry zipEntry : new IterableEnumeration<>(zip.entries())) {
+                String name = zipEntry.getName();
+                if (FileUtils.isClass(name)) {
+                    try (InputStream in = zip.getInputStream(zipEntry)) {
+                        if (!visitor.visitClass(file, name, in)) {
+                            return false;
+                        }
+                    } catch (IOException e) {
+                        System.err.println("IOException reading class: " + name);
+                        e.printStackTrace();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("IOException reading zip!");
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    /**
+     * Visits every class file reachable from this classpath on a pool with one thread per core.  Class files
+     * are listed on the calling thread, but read, inflated and passed to the visitor on the workers.  The
+     * pool's queue is bounded so that listing can't get far ahead of the workers, and the calling thread
+     * visits classes too while it is full.  Once the visitor asks to stop, listing stops and the classes that
+     * are still queued are dropped.  Returns after every visited class is done.
+     *
+     * @return false if the visitor stopped the walk early
+     */
+    public boolean visitClassFilesParallel(ParallelClassFileVisitor visitor) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 64), new ThreadPoolExecutor.CallerRunsPolicy());
+        ParallelWalk walk = new ParallelWalk(pool, visitor);
+        try {
+            for (File path : getPaths()) {
+                if (walk.stopped) {
+                    break;
+                }
+                OpenEntry entry = new OpenEntry(path, null);
+                try {
+                    walk.visitPath(entry, path);
+                } finally {
+                    walk.release(entry);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        return !walk.stopped;
+    }
+
+    private static Location searchJar(File jarFile, String cls) {
         if (jarFile == null || cls == null) {
             return null;
         }
@@ -93,7 +233,7 @@ public class CEClassPath implements ClassPath {
             String clsPath = classToPath(cls);
             ZipEntry entry = jar.getEntry(clsPath);
             if (entry != null) {
-                return FileUtils.urlInJar(jarURL.toString(), clsPath);
+                return new Location(FileUtils.urlInJar(jarURL.toString(), clsPath), entry.getSize());
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -117,4 +257,185 @@ public class CEClassPath implements ClassPath {
         return cls.replace('.', File.separatorChar).concat(".class");
     }
 
+    /**
+     * Lists the class files for visitClassFilesParallel and queues them on the pool.
+     */
+    private static class ParallelWalk {
+        private final Executor pool;
+        private final ParallelClassFileVisitor visitor;
+        private volatile boolean stopped = false;
+
+        private ParallelWalk(Executor pool, ParallelClassFileVisitor visitor) {
+            this.pool = pool;
+            this.visitor = visitor;
+        }
+
+        private void visitPath(OpenEntry entry, File file) {
+            if (stopped) {
+                return;
+            }
+            if (file.isDirectory()) {
+                File[] contents = file.listFiles();
+                if (contents != null) {
+                    for (File sub : contents) {
+                        visitPath(entry, sub);
+                    }
+                }
+            } else if (file.isFile()) {
+                if (FileUtils.isJar(file)) {
+                    visitJar(file);
+                } else if (FileUtils.isClass(file)) {
+                    String name = entry.file.equals(file) ? file.getName() : entry.file.toURI().relativize(file.toURI()).getPath();
+                    submit(entry, name, () -> Files.readAllBytes(file.toPath()));
+                }
+            }
+        }
+
+        private void visitJar(File file) {
+            ZipFile zip;
+            try {
+                zip = new ZipFile(file);
+            } catch (IOException e) {
+                System.err.println("IOException reading zip!");
+                e.printStackTrace();
+                return;
+            }
+            //closed by whichever thread finishes with it last
+            OpenEntry entry = new OpenEntry(file, zip);
+            try {
+                for (ZipEntry zipEntry : new IterableEnumeration<>(zip.entries())) {
+                    if (stopped) {
+                        break;
+                    }
+                    String name = zipEntry.getName();
+                    if (FileUtils.isClass(name)) {
+                        //ZipFile only locks while reading the compressed bytes, so the workers inflate in parallel
+                        submit(entry, name, () -> {
+                            try (InputStream in = zip.getInputStream(zipEntry)) {
+                                return FileUtils.readFully(in);
+                            }
+                        });
+                    }
+                }
+            } finally {
+                release(entry);
+            }
+        }
+
+        private void submit(OpenEntry entry, String name, ClassFileReader reader) {
+            if (!entry.started) {
+                entry.started = true;
+                visitor.startEntry(entry.file);
+            }
+            entry.refs.incrementAndGet();
+            pool.execute(() -> {
+                try {
+                    if (!stopped) {
+                        byte[] bytes = reader.read();
+                        if (!visitor.visitClass(entry.file, name, bytes)) {
+                            stopped = true;
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("IOException reading class: " + name);
+                    e.printStackTrace();
+                } finally {
+                    release(entry);
+                }
+            });
+        }
+
+        private void release(OpenEntry entry) {
+            if (entry.refs.decrementAndGet() != 0) {
+                return;
+            }
+            if (entry.started) {
+                visitor.finishEntry(entry.file);
+            }
+            if (entry.zip != null) {
+                try {
+                    entry.zip.close();
+                } catch (IOException e) {
+                    System.err.println("IOException closing zip!");
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * A classpath entry that is being visited in parallel.  Holds one reference for the listing thread and one
+     * for every queued class.
+     */
+    private static class OpenEntry {
+        private final File file;
+        private final ZipFile zip;
+        private final AtomicInteger refs = new AtomicInteger(1);
+        //only used by the listing thread
+        private boolean started = false;
+
+        private OpenEntry(File file, ZipFile zip) {
+            this.file = file;
+            this.zip = zip;
+        }
+    }
+
+    /**
+     * Where a class was found, and the size of its class file, or -1 if the size isn't known.
+     */
+    private static class Location {
+        private final URL url;
+        private final long bytes;
+
+        private Location(URL url, long bytes) {
+            this.url = url;
+            this.bytes = bytes;
+        }
+    }
+
+    private interface ClassFileReader {
+        byte[] read() throws IOException;
+    }
+
+    public interface ClassFileVisitor {
+        /**
+         * Called for each class file.
+         *
+         * @param entry The classpath entry (jar or directory) that contains the class
+         * @param path Path of the class file inside the entry
+         * @param in Contents of the class file, closed after this returns
+         * @return true to keep going, false to stop visiting classes
+         */
+        boolean visitClass(File entry, String path, InputStream in) throws IOException;
+    }
+
+    public interface ParallelClassFileVisitor {
+        /**
+         * Called on the listing thread before the first class of a classpath entry is queued.
+         *
+         * @param entry The classpath entry (jar or directory)
+         */
+        default void startEntry(File entry) {
+
+        }
+
+        /**
+         * Called from a worker thread for each class file.
+         *
+         * @param entry The classpath entry (jar or directory) that contains the class
+         * @param path Path of the class file inside the entry
+         * @param bytes Contents of the class file
+         * @return true to keep going, false to stop visiting classes
+         */
+        boolean visitClass(File entry, String path, byte[] bytes);
+
+        /**
+         * Called once every queued class of an entry has been visited, from the thread that finished last.
+         *
+         * @param entry The classpath entry (jar or directory)
+         */
+        default void finishEntry(File entry) {
+
+        }
+    }
 }
@@ -1,19 +1,43 @@
 package net.acomputerdog.ce2;
 
-import javassist.ClassPool;
 import net.acomputerdog.ce2.disassembler.Disassembler;
 import net.acomputerdog.ce2.disassembler.html.HTMLDisassembler;
 import net.acomputerdog.ce2.gui.GuiMain;
+import net.acomputerdog.ce2.metrics.MeteredClassPool;
+import net.acomputerdog.ce2.metrics.Metrics;
+import net.acomputerdog.ce2.stats.StatsCommand;
+import net.acomputerdog.ce2.web.ExportCommand;
+import net.acomputerdog.ce2.web.ServeCommand;
+
+import java.util.Arrays;
 
 public class Main {
 
     public static void main(String[] args) {
+        //commands run without the GUI
+        if (args.length > 0) {
+            String[] commandArgs = Arrays.copyOfRange(args, 1, args.length);
+            switch (args[0]) {
+                case "stats":
+                    StatsCommand.main(commandArgs);
+                    return;
+                case "serve":
+                    ServeCommand.main(commandArgs);
+                    return;
+                case "export":
+                    ExportCommand.main(commandArgs);
+                    return;
+            }
+        }
+
         CEClassPath classPath = new CEClassPath();
         //include system classpath
-        ClassPool classPool = new ClassPool(true);
+        MeteredClassPool classPool = new MeteredClassPool(true);
         classPool.appendClassPath(classPath);
+        Metrics.get().setLiveClassCount(classPool::getCachedClassCount);
+        Metrics.register();
 
-        Disassembler disassembler = new HTMLDisassembler(classPool);
+        Disassembler disassembler = new HTMLDisassembler(classPool, classPath);
 
         new GuiMain(classPath, classPool, disassembler);
     }
@@ -0,0 +1,606 @@
+package net.acomputerdog.ce2.cfg;
+
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ExceptionTable;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+import net.acomputerdog.ce2.disassembler.InstructionTable;
+import net.acomputerdog.ce2.disassembler.Labels;
+import net.acomputerdog.ce2.util.IntList;
+
+import java.util.Arrays;
+
+/**
+ * The control flow graph of a method: its basic blocks, the edges between them, their dominators and the
+ * natural loops that they form.
+ * <p>
+ * Blocks are numbered in order of their offsets, and everything is stored in int arrays indexed by block.
+ * Edges are kept in compressed rows: the successors of block b are succs[succStart[b]] up to
+ * succs[succStart[b + 1]], and the same for predecessors.  Building the graph decodes each instruction once
+ * and is linear in the size of the code apart from the dominator and loop passes, which are linear in the
+ * number of edges for the code that compilers generate.
+ * <p>
+ * A block that is inside the range of an exception handler has an EXCEPTION edge to the handler.  Subroutines
+ * are approximated: jsr has a FALLTHROUGH edge to the next instruction in place of the edge from its ret,
+ * and ret has no successors.  Loops are only found when their header dominates the rest of the loop, which
+ * is always true for code compiled from Java.
+ */
+public class ControlFlowGraph {
+    public static final int FALLTHROUGH = 0;
+    public static final int JUMP = 1;
+    public static final int EXCEPTION = 2;
+
+    private static final String[] EDGE_NAMES = {"fallthrough", "jump", "exception"};
+
+    private final int codeLength;
+    //offset of the first instruction of each block, sorted
+    private final int[] starts;
+    //offset of the last instruction of each block
+    private final int[] lasts;
+
+    private final int[] succStart;
+    private final int[] succs;
+    private final byte[] succKinds;
+    private final int[] predStart;
+    private final int[] preds;
+    private final byte[] predKinds;
+
+    //reachable blocks in reverse postorder from the entry
+    private final int[] order;
+    //index of each block in order, -1 if unreachable
+    private final int[] rpo;
+    //immediate dominator of each block, -1 if unreachable, the entry is its own dominator
+    private final int[] idoms;
+    //header of the innermost loop that contains each block, -1 if it isn't in a loop
+    private final int[] loopHeaders;
+    private final int[] loopDepths;
+    private final int loopCount;
+
+    private ControlFlowGraph(int codeLength, int[] starts, int[] lasts, IntList edges) {
+        this.codeLength = codeLength;
+        this.starts = starts;
+        this.lasts = lasts;
+        int blocks = starts.length;
+
+        //edges are added in order of their source, so the successors only need their row starts
+        int numEdges = edges.size() / 3;
+        succStart = new int[blocks + 1];
+        succs = new int[numEdges];
+        succKinds = new byte[numEdges];
+        predStart = new int[blocks + 1];
+        preds = new int[numEdges];
+        predKinds = new byte[numEdges];
+        for (int e = 0; e < numEdges; e++) {
+            succStart[edges.get(e * 3) + 1]++;
+            predStart[edges.get(e * 3 + 1) + 1]++;
+        }
+        for (int b = 0; b < blocks; b++) {
+            succStart[b + 1] += succStart[b];
+            predStart[b + 1] += predStart[b];
+        }
+        int[] predFill = Arrays.copyOf(predStart, blocks);
+        for (int e = 0; e < numEdges; e++) {
+            int to = edges.get(e * 3 + 1);
+            byte kind = (byte) edges.get(e * 3 + 2);
+            succs[e] = to;
+            succKinds[e] = kind;
+            preds[predFill[to]] = edges.get(e * 3);
+            predKinds[predFill[to]++] = kind;
+        }
+
+        order = reversePostorder();
+        rpo = new int[blocks];
+        Arrays.fill(rpo, -1);
+        for (int i = 0; i < order.length; i++) {
+            rpo[order[i]] = i;
+        }
+        idoms = dominators();
+        loopHeaders = new int[blocks];
+        loopDepths = new int[blocks];
+        loopCount = findLoops();
+    }
+
+    /**
+     * Builds the control flow graph of a method.
+     *
+     * @return The graph, or null if the method has no code
+     */
+    public static ControlFlowGraph build(MethodInfo info) throws BadBytecode {
+        CodeAttribute code = info.getCodeAttribute();
+        return code == null ? null : build(code);
+    }
+
+    public static ControlFlowGraph build(CodeAttribute code) throws BadBytecode {
+        int length = code.getCodeLength();
+        //1 at the start of each instruction, 2 at the start of each block
+        byte[] marks = new byte[length + 1];
+        IntList targets = new IntList(64);
+        ExceptionTable table = code.getExceptionTable();
+
+        CodeIterator it = code.iterator();
+        while (it.hasNext()) {
+            int off = it.next();
+            int op = it.byteAt(off);
+            marks[off] |= 1;
+            if (endsBlock(it, off, op)) {
+                Labels.addTargets(it, off, op, targets);
+                if (it.hasNext()) {
+                    marks[it.lookAhead()] |= 2;
+                }
+            }
+        }
+        marks[0] |= 2;
+        for (int i = 0; i < table.size(); i++) {
+            targets.add(table.startPc(i));
+            targets.add(table.handlerPc(i));
+            //ranges can end at the end of the code
+            if (table.endPc(i) != length) {
+                targets.add(table.endPc(i));
+            }
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            int target = targets.get(i);
+            if (target < 0 || target >= length || (marks[target] & 1) == 0) {
+                throw new BadBytecode("Jump to " + target + ", which isn't the start of an instruction");
+            }
+            marks[target] |= 2;
+        }
+
+        //a block ends at the instruction before the next one starts
+        IntList starts = new IntList(64);
+        IntList lasts = new IntList(64);
+        int last = -1;
+        for (int off = 0; off < length; off++) {
+            if ((marks[off] & 1) != 0) {
+                if ((marks[off] & 2) != 0) {
+                    if (last != -1) {
+                        lasts.add(last);
+                    }
+                    starts.add(off);
+                }
+                last = off;
+            }
+        }
+        if (last != -1) {
+            lasts.add(last);
+        }
+        int[] blockStarts = starts.toArray();
+        int[] blockLasts = lasts.toArray();
+
+        //source, target, kind of every edge, in order of the source
+        IntList edges = new IntList(blockStarts.length * 6);
+        //the last source that each block was added as a successor of, so that edges aren't duplicated
+        int[] seen = new int[blockStarts.length];
+        Arrays.fill(seen, -1);
+        //exception table entries that cover each block, in compressed rows like the edges
+        int[] coverStart = new int[blockStarts.length + 1];
+        int[] covers = coveringEntries(table, blockStarts, coverStart);
+        for (int b = 0; b < blockStarts.length; b++) {
+            int off = blockLasts[b];
+            int op = it.byteAt(off);
+            if (endsBlock(it, off, op)) {
+                targets.clear();
+                Labels.addTargets(it, off, op, targets);
+                for (int i = 0; i < targets.size(); i++) {
+                    addEdge(edges, seen, b, Arrays.binarySearch(blockStarts, targets.get(i)), JUMP);
+                }
+            }
+            if (fallsThrough(it, off, op) && b + 1 < blockStarts.length) {
+                addEdge(edges, seen, b, b + 1, FALLTHROUGH);
+            }
+            for (int i = coverStart[b]; i < coverStart[b + 1]; i++) {
+                addEdge(edges, seen, b, Arrays.binarySearch(blockStarts, table.handlerPc(covers[i])), EXCEPTION);
+            }
+        }
+        return new ControlFlowGraph(length, blockStarts, blockLasts, edges);
+    }
+
+    /**
+     * Lists the exception table entries whose range covers each block, in table order so that the first handler
+     * that would catch an exception comes first.  Ranges start and end at blocks, so each is a range of blocks.
+     * The entries are sorted by their first block once, and the blocks are swept in order while keeping the
+     * entries whose range is open, so each entry is only added and removed once.
+     */
+    private static int[] coveringEntries(ExceptionTable table, int[] blockStarts, int[] coverStart) {
+        int numEntries = table.size();
+        int[] ends = new int[numEntries];
+        //first block << 32 | entry, so that sorting orders the entries by where they start
+        long[] byStart = new long[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            int end = Arrays.binarySearch(blockStarts, table.endPc(i));
+            //ranges can end at the end of the code
+            ends[i] = end < 0 ? blockStarts.length : end;
+            byStart[i] = (long) Arrays.binarySearch(blockStarts, table.startPc(i)) << 32 | i;
+        }
+        Arrays.sort(byStart);
+
+        IntList covers = new IntList(numEntries * 4);
+        //entries whose range covers the current block, in table order
+        int[] open = new int[numEntries];
+        int numOpen = 0;
+        int next = 0;
+        for (int b = 0; b < blockStarts.length; b++) {
+            while (next < numEntries && (int) (byStart[next] >>> 32) == b) {
+                int entry = (int) byStart[next++];
+                int pos = numOpen++;
+                for (; pos > 0 && open[pos - 1] > entry; pos--) {
+                    open[pos] = open[pos - 1];
+                }
+                open[pos] = entry;
+            }
+            //drops the ranges that ended before this block while listing the rest
+            int kept = 0;
+            for (int i = 0; i < numOpen; i++) {
+                if (ends[open[i]] > b) {
+                    open[kept++] = open[i];
+                    covers.add(open[i]);
+                }
+            }
+            numOpen = kept;
+            coverStart[b + 1] = covers.size();
+        }
+        return covers.toArray();
+    }
+
+    private static void addEdge(IntList edges, int[] seen, int from, int to, int kind) {
+        if (seen[to] != from) {
+            seen[to] = from;
+            edges.add(from);
+            edges.add(to);
+            edges.add(kind);
+        }
+    }
+
+    /**
+     * Checks if an instruction can only be the last one of a block: branches, switches, returns, athrow and ret.
+     */
+    private static boolean endsBlock(CodeIterator it, int off, int op) {
+        if (op >= Opcode.IRETURN && op <= Opcode.RETURN || op == Opcode.ATHROW || op == Opcode.RET) {
+            return true;
+        }
+        if (op == Opcode.WIDE) {
+            return it.byteAt(off + 1) == Opcode.RET;
+        }
+        int[] operands = InstructionTable.getOperands(op);
+        if (operands.length == 0) {
+            return false;
+        }
+        int kind = InstructionTable.kind(operands[0]);
+        return kind == InstructionTable.BRANCH || kind == InstructionTable.TABLESWITCH || kind == InstructionTable.LOOKUPSWITCH;
+    }
+
+    private static boolean fallsThrough(CodeIterator it, int off, int op) {
+        switch (op) {
+            case Opcode.GOTO:
+            case Opcode.GOTO_W:
+            case Opcode.TABLESWITCH:
+            case Opcode.LOOKUPSWITCH:
+            case Opcode.ATHROW:
+            case Opcode.RET:
+            case Opcode.IRETURN:
+            case Opcode.LRETURN:
+            case Opcode.FRETURN:
+            case Opcode.DRETURN:
+            case Opcode.ARETURN:
+            case Opcode.RETURN:
+                return false;
+            case Opcode.WIDE:
+                return it.byteAt(off + 1) != Opcode.RET;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Numbers the blocks that can be reached from the entry in reverse postorder, with an iterative depth first
+     * search so that long chains of blocks don't overflow the stack.
+     */
+    private int[] reversePostorder() {
+        int blocks = starts.length;
+        int[] postorder = new int[blocks];
+        int count = 0;
+        boolean[] visited = new boolean[blocks];
+        //block and the index of its next successor to visit
+        int[] stack = new int[blocks];
+        int[] next = new int[blocks];
+        int depth = 0;
+        if (blocks > 0) {
+            visited[0] = true;
+            stack[depth] = 0;
+            next[depth++] = succStart[0];
+        }
+        while (depth > 0) {
+            int b = stack[depth - 1];
+            if (next[depth - 1] < succStart[b + 1]) {
+                int succ = succs[next[depth - 1]++];
+                if (!visited[succ]) {
+                    visited[succ] = true;
+                    stack[depth] = succ;
+                    next[depth++] = succStart[succ];
+                }
+            } else {
+                postorder[count++] = b;
+                depth--;
+            }
+        }
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = postorder[count - 1 - i];
+        }
+        return order;
+    }
+
+    /**
+     * Finds the immediate dominator of every reachable block, with the iterative algorithm from "A Simple, Fast
+     * Dominance Algorithm" by Cooper, Harvey and Kennedy.
+     */
+    private int[] dominators() {
+        int blocks = starts.length;
+        int[] idom = new int[blocks];
+        Arrays.fill(idom, -1);
+        if (blocks == 0) {
+            return idom;
+        }
+        idom[0] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < order.length; i++) {
+                int b = order[i];
+                int dom = -1;
+                for (int p = predStart[b]; p < predStart[b + 1]; p++) {
+                    int pred = preds[p];
+                    if (idom[pred] != -1) {
+                        dom = dom == -1 ? pred : intersect(idom, pred, dom);
+                    }
+                }
+                if (idom[b] != dom) {
+                    idom[b] = dom;
+                    changed = true;
+                }
+            }
+        }
+        return idom;
+    }
+
+    private int intersect(int[] idom, int a, int b) {
+        while (a != b) {
+            while (rpo[a] > rpo[b]) {
+                a = idom[a];
+            }
+            while (rpo[b] > rpo[a]) {
+                b = idom[b];
+            }
+        }
+        return a;
+    }
+
+    /**
+     * Finds the natural loops: every edge to a block that dominates its source is a back edge, and the loop of
+     * a header is every block that can reach one of its back edges without going through the header.
+     *
+     * @return The number of loops
+     */
+    private int findLoops() {
+        Arrays.fill(loopHeaders, -1);
+        int[] inLoop = new int[starts.length];
+        Arrays.fill(inLoop, -1);
+        //a block can be pushed once for each of its edges
+        int[] work = new int[preds.length + 1];
+        int loops = 0;
+        //outer headers dominate inner headers, so they come first and the innermost header is set last
+        for (int h : order) {
+            int size = 0;
+            for (int p = predStart[h]; p < predStart[h + 1]; p++) {
+                if (isBackEdge(preds[p], h)) {
+                    work[size++] = preds[p];
+                }
+            }
+            if (size == 0) {
+                continue;
+            }
+            loops++;
+            inLoop[h] = h;
+            loopHeaders[h] = h;
+            loopDepths[h]++;
+            while (size > 0) {
+                int b = work[--size];
+                if (inLoop[b] == h) {
+                    continue;
+                }
+                inLoop[b] = h;
+                loopHeaders[b] = h;
+                loopDepths[b]++;
+                for (int p = predStart[b]; p < predStart[b + 1]; p++) {
+                    if (idoms[preds[p]] != -1 && inLoop[preds[p]] != h) {
+                        work[size++] = preds[p];
+                    }
+                }
+            }
+        }
+        return loops;
+    }
+
+    /**
+     * Checks if an edge goes back to a block that dominates its source, which makes the target a loop header.
+     */
+    public boolean isBackEdge(int from, int to) {
+        //only an edge that goes back in reverse postorder can be one, which saves most dominator walks
+        return rpo[from] != -1 && rpo[from] >= rpo[to] && dominates(to, from);
+    }
+
+    /**
+     * Checks if every path from the entry to a block goes through another block.  A block dominates itself.
+     */
+    public boolean dominates(int dominator, int block) {
+        if (idoms[block] == -1) {
+            return false;
+        }
+        while (block != dominator) {
+            if (block == 0) {
+                return false;
+            }
+            block = idoms[block];
+        }
+        return true;
+    }
+
+    public int getCodeLength() {
+        return codeLength;
+    }
+
+    public int getBlockCount() {
+        return starts.length;
+    }
+
+    public int getEdgeCount() {
+        return succs.length;
+    }
+
+    public int getLoopCount() {
+        return loopCount;
+    }
+
+    /**
+     * Gets the offset of the first instruction of a block.
+     */
+    public int getStart(int block) {
+        return starts[block];
+    }
+
+    /**
+     * Gets the offset after the last instruction of a block.
+     */
+    public int getEnd(int block) {
+        return block + 1 < starts.length ? starts[block + 1] : codeLength;
+    }
+
+    public int getLastInstruction(int block) {
+        return lasts[block];
+    }
+
+    /**
+     * Finds the block that contains an offset.
+     *
+     * @return The block, or -1 if the offset is outside of the code
+     */
+    public int findBlock(int offset) {
+        if (offset < 0 || offset >= codeLength) {
+            return -1;
+        }
+        int block = Arrays.binarySearch(starts, offset);
+        return block < 0 ? -block - 2 : block;
+    }
+
+    public int getSuccessorCount(int block) {
+        return succStart[block + 1] - succStart[block];
+    }
+
+    public int getSuccessor(int block, int i) {
+        return succs[succStart[block] + i];
+    }
+
+    /**
+     * Gets the kind of an edge to a successor: FALLTHROUGH, JUMP or EXCEPTION.
+     */
+    public int getSuccessorKind(int block, int i) {
+        return succKinds[succStart[block] + i];
+    }
+
+    public int getPredecessorCount(int block) {
+        return predStart[block + 1] - predStart[block];
+    }
+
+    public int getPredecessor(int block, int i) {
+        return preds[predStart[block] + i];
+    }
+
+    public int getPredecessorKind(int block, int i) {
+        return predKinds[predStart[block] + i];
+    }
+
+    public boolean isReachable(int block) {
+        return idoms[block] != -1;
+    }
+
+    /**
+     * Gets the immediate dominator of a block.
+     *
+     * @return The dominator, the block itself for the entry, or -1 if the block can't be reached
+     */
+    public int getImmediateDominator(int block) {
+        return idoms[block];
+    }
+
+    /**
+     * Gets the reachable blocks in reverse postorder, which must not be modified.
+     */
+    public int[] getReversePostorder() {
+        return order;
+    }
+
+    public boolean isLoopHeader(int block) {
+        return loopHeaders[block] == block;
+    }
+
+    /**
+     * Gets the header of the innermost loop that contains a block.
+     *
+     * @return The header, which is the block itself for loop headers, or -1 if the block isn't in a loop
+     */
+    public int getLoopHeader(int block) {
+        return loopHeaders[block];
+    }
+
+    public int getLoopDepth(int block) {
+        return loopDepths[block];
+    }
+
+    public static String getBlockName(int block) {
+        return "B" + block;
+    }
+
+    public static String getEdgeName(int kind) {
+        return EDGE_NAMES[kind];
+    }
+
+    /**
+     * Writes the graph in the DOT language of Graphviz.  Each block is labelled with its offsets, loop headers
+     * are drawn with a double border, back edges are bold, exception edges are dashed and unreachable blocks
+     * are grey.
+     */
+    public String toDot(String name) {
+        StringBuilder dot = new StringBuilder(64 + starts.length * 80);
+        dot.append("digraph \"").append(name.replace("\\", "\\\\").replace("\"", "\\\"")).append("\" {\n");
+        dot.append("  node [shape=box, fontname=monospace];\n");
+        for (int b = 0; b < starts.length; b++) {
+            dot.append("  ").append(getBlockName(b)).append(" [label=\"").append(getBlockName(b)).append("\\n")
+                    .append(starts[b]).append('-').append(lasts[b]);
+            if (loopHeaders[b] != -1) {
+                dot.append("\\nloop ").append(getBlockName(loopHeaders[b])).append(", depth ").append(loopDepths[b]);
+            }
+            dot.append('"');
+            if (isLoopHeader(b)) {
+                dot.append(", peripheries=2");
+            }
+            if (!isReachable(b)) {
+                dot.append(", color=grey, fontcolor=grey");
+            }
+            dot.append("];\n");
+        }
+        for (int b = 0; b < starts.length; b++) {
+            for (int e = succStart[b]; e < succStart[b + 1]; e++) {
+                dot.append("  ").append(getBlockName(b)).append(" -> ").append(getBlockName(succs[e]));
+                if (succKinds[e] == EXCEPTION) {
+                    dot.append(" [style=dashed]");
+                } else if (isBackEdge(b, succs[e])) {
+                    dot.append(" [style=bold]");
+                }
+                dot.append(";\n");
+            }
+        }
+        return dot.append("}\n").toString();
+    }
+}
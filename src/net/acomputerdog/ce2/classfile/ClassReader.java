@@ -0,0 +1,375 @@
+package net.acomputerdog.ce2.classfile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only view of a class file in a ByteBuffer, which can be a heap buffer or a mapped file.  Nothing is
+ * copied out of the buffer up front: opening a class only records the offset of every constant pool entry,
+ * field and method, and names, strings and code are decoded from the buffer when they are asked for.
+ * <p>
+ * This is meant for the analysis code (indexing, searching, statistics), which looks at most classes once
+ * and only at a few parts of each.  Anything that needs to modify or compile classes should still use javassist.
+ * A ClassReader is not thread safe, but separate readers can share a buffer.
+ */
+public class ClassReader {
+    public static final int CONST_Utf8 = 1;
+    public static final int CONST_Integer = 3;
+    public static final int CONST_Float = 4;
+    public static final int CONST_Long = 5;
+    public static final int CONST_Double = 6;
+    public static final int CONST_Class = 7;
+    public static final int CONST_String = 8;
+    public static final int CONST_Fieldref = 9;
+    public static final int CONST_Methodref = 10;
+    public static final int CONST_InterfaceMethodref = 11;
+    public static final int CONST_NameAndType = 12;
+    public static final int CONST_MethodHandle = 15;
+    public static final int CONST_MethodType = 16;
+    public static final int CONST_Dynamic = 17;
+    public static final int CONST_InvokeDynamic = 18;
+    public static final int CONST_Module = 19;
+    public static final int CONST_Package = 20;
+
+    private static final Member[] NO_MEMBERS = new Member[0];
+
+    private final ByteBuffer buf;
+    //offset of the tag of each constant pool entry, 0 for entry 0 and the second slot of longs and doubles
+    private final int[] constants;
+    //decoded Utf8 entries, filled in as they are used
+    private final String[] utf8s;
+    //offset of the access flags, which follow the constant pool
+    private final int header;
+    private final Member[] fields;
+    private final Member[] methods;
+
+    /**
+     * Opens the class file that starts at the position of a buffer.  The buffer's position and limit are not changed.
+     *
+     * @throws IllegalArgumentException if the buffer does not hold a valid class file
+     */
+    public ClassReader(ByteBuffer buffer) {
+        //slices are always big endian, and start at offset 0
+        this.buf = buffer.slice();
+        try {
+            if (buf.getInt(0) != 0xCAFEBABE) {
+                throw new IllegalArgumentException("Not a class file");
+            }
+            int count = u2(8);
+            constants = new int[count];
+            utf8s = new String[count];
+            int pos = 10;
+            for (int i = 1; i < count; i++) {
+                constants[i] = pos;
+                int tag = u1(pos);
+                switch (tag) {
+                    case CONST_Utf8:
+                        pos += 3 + u2(pos + 1);
+                        break;
+                    case CONST_Class:
+                    case CONST_String:
+                    case CONST_MethodType:
+                    case CONST_Module:
+                    case CONST_Package:
+                        pos += 3;
+                        break;
+                    case CONST_MethodHandle:
+                        pos += 4;
+                        break;
+                    case CONST_Integer:
+                    case CONST_Float:
+                    case CONST_Fieldref:
+                    case CONST_Methodref:
+                    case CONST_InterfaceMethodref:
+                    case CONST_NameAndType:
+                    case CONST_Dynamic:
+                    case CONST_InvokeDynamic:
+                        pos += 5;
+                        break;
+                    case CONST_Long:
+                    case CONST_Double:
+                        pos += 9;
+                        //takes up two entries
+                        i++;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown constant pool tag " + tag + " at " + pos);
+                }
+            }
+
+            header = pos;
+            pos += 8 + u2(pos + 6) * 2;
+            int numFields = u2(pos);
+            fields = numFields == 0 ? NO_MEMBERS : new Member[numFields];
+            pos = readMembers(fields, pos + 2);
+            int numMethods = u2(pos);
+            methods = numMethods == 0 ? NO_MEMBERS : new Member[numMethods];
+            readMembers(methods, pos + 2);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated class file", e);
+        }
+    }
+
+    /**
+     * Opens a class file held in an array, without copying it.
+     */
+    public static ClassReader read(byte[] bytes) {
+        return new ClassReader(ByteBuffer.wrap(bytes));
+    }
+
+    private int readMembers(Member[] members, int pos) {
+        for (int i = 0; i < members.length; i++) {
+            members[i] = new Member(pos);
+            pos += 8;
+            for (int attrs = u2(pos - 2); attrs > 0; attrs--) {
+                pos += 6 + buf.getInt(pos + 2);
+            }
+        }
+        return pos;
+    }
+
+    public int getAccessFlags() {
+        return u2(header);
+    }
+
+    /**
+     * Gets the name of this class, with dots as separators.
+     */
+    public String getName() {
+        return getClassName(u2(header + 2));
+    }
+
+    /**
+     * Gets the name of the superclass, or null for java.lang.Object and module-info.
+     */
+    public String getSuperName() {
+        int idx = u2(header + 4);
+        return idx == 0 ? null : getClassName(idx);
+    }
+
+    public String[] getInterfaces() {
+        String[] interfaces = new String[u2(header + 6)];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = getClassName(u2(header + 8 + i * 2));
+        }
+        return interfaces;
+    }
+
+    public Member[] getFields() {
+        return fields;
+    }
+
+    public Member[] getMethods() {
+        return methods;
+    }
+
+    /**
+     * Gets the number of constant pool slots, including the unused slot 0.
+     */
+    public int getConstantCount() {
+        return constants.length;
+    }
+
+    /**
+     * Gets the tag of a constant pool entry, or 0 for slots that don't start an entry.
+     */
+    public int getTag(int idx) {
+        int pos = constants[idx];
+        return pos == 0 ? 0 : u1(pos);
+    }
+
+    public String getUtf8(int idx) {
+        String str = utf8s[idx];
+        if (str == null) {
+            int pos = constants[idx];
+            str = decodeUtf8(pos + 3, u2(pos + 1));
+            utf8s[idx] = str;
+        }
+        return str;
+    }
+
+    /**
+     * Checks if a Utf8 entry is equal to an ASCII string, without decoding it.
+     */
+    public boolean utf8Equals(int idx, String ascii) {
+        int pos = constants[idx];
+        int len = u2(pos + 1);
+        if (len != ascii.length()) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (buf.get(pos + 3 + i) != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the name of a Class entry, with dots as separators.  Array classes keep their descriptor form,
+     * for example "[Ljava.lang.String;".
+     */
+    public String getClassName(int idx) {
+        return getUtf8(u2(constants[idx] + 1)).replace('/', '.');
+    }
+
+    public String getString(int idx) {
+        return getUtf8(u2(constants[idx] + 1));
+    }
+
+    public int getInt(int idx) {
+        return buf.getInt(constants[idx] + 1);
+    }
+
+    public float getFloat(int idx) {
+        return buf.getFloat(constants[idx] + 1);
+    }
+
+    public long getLong(int idx) {
+        return buf.getLong(constants[idx] + 1);
+    }
+
+    public double getDouble(int idx) {
+        return buf.getDouble(constants[idx] + 1);
+    }
+
+    /**
+     * Gets the value of a constant that can be loaded with ldc as a String, Integer, Float, Long or Double,
+     * or null for the other kinds of constants.
+     */
+    public Object getLdcValue(int idx) {
+        switch (getTag(idx)) {
+            case CONST_String:
+                return getString(idx);
+            case CONST_Integer:
+                return getInt(idx);
+            case CONST_Float:
+                return getFloat(idx);
+            case CONST_Long:
+                return getLong(idx);
+            case CONST_Double:
+                return getDouble(idx);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Gets the class of a Fieldref, Methodref or InterfaceMethodref.
+     */
+    public String getRefClassName(int idx) {
+        return getClassName(u2(constants[idx] + 1));
+    }
+
+    /**
+     * Gets the member name of a Fieldref, Methodref, InterfaceMethodref, InvokeDynamic or Dynamic entry.
+     */
+    public String getRefName(int idx) {
+        return getUtf8(u2(constants[u2(constants[idx] + 3)] + 1));
+    }
+
+    /**
+     * Gets the descriptor of a Fieldref, Methodref, InterfaceMethodref, InvokeDynamic or Dynamic entry.
+     */
+    public String getRefType(int idx) {
+        return getUtf8(u2(constants[u2(constants[idx] + 3)] + 3));
+    }
+
+    private int u1(int pos) {
+        return buf.get(pos) & 0xFF;
+    }
+
+    private int u2(int pos) {
+        return buf.getShort(pos) & 0xFFFF;
+    }
+
+    /**
+     * Decodes the "modified UTF-8" used by class files.
+     */
+    private String decodeUtf8(int start, int len) {
+        char[] chars = new char[len];
+        int numChars = 0;
+        int end = start + len;
+        int pos = start;
+        while (pos < end) {
+            int b = u1(pos);
+            if (b < 0x80) {
+                chars[numChars++] = (char) b;
+                pos++;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[numChars++] = (char) (((b & 0x1F) << 6) | (buf.get(pos + 1) & 0x3F));
+                pos += 2;
+            } else {
+                chars[numChars++] = (char) (((b & 0x0F) << 12) | ((buf.get(pos + 1) & 0x3F) << 6) | (buf.get(pos + 2) & 0x3F));
+                pos += 3;
+            }
+        }
+        return new String(chars, 0, numChars);
+    }
+
+    /**
+     * A field or method.  Only its offset is stored, everything else is read from the class file when asked for.
+     */
+    public class Member {
+        private final int pos;
+
+        private Member(int pos) {
+            this.pos = pos;
+        }
+
+        public int getAccessFlags() {
+            return u2(pos);
+        }
+
+        public String getName() {
+            return getUtf8(u2(pos + 2));
+        }
+
+        public String getDescriptor() {
+            return getUtf8(u2(pos + 4));
+        }
+
+        /**
+         * Checks if this is a constructor or static initializer.
+         */
+        public boolean isInitializer() {
+            return utf8Equals(u2(pos + 2), "<init>") || utf8Equals(u2(pos + 2), "<clinit>");
+        }
+
+        /**
+         * Finds an attribute by name.
+         *
+         * @return The offset of the attribute's data in the class file, or -1 if there is no such attribute
+         */
+        private int findAttribute(String name) {
+            int attr = pos + 8;
+            for (int attrs = u2(pos + 6); attrs > 0; attrs--) {
+                if (utf8Equals(u2(attr), name)) {
+                    return attr + 6;
+                }
+                attr += 6 + buf.getInt(attr + 2);
+            }
+            return -1;
+        }
+
+        /**
+         * Gets the constant pool index of the ConstantValue of a field, or 0 if it has none.  The JVM ignores
+         * ConstantValue on fields that aren't static, so this does too.
+         */
+        public int getConstantValue() {
+            if ((getAccessFlags() & 0x0008) == 0) {
+                return 0;
+            }
+            int attr = findAttribute("ConstantValue");
+            return attr == -1 ? 0 : u2(attr);
+        }
+
+        /**
+         * Gets the code of a method, or null if it is abstract or native.
+         */
+        public CodeReader getCode() {
+            int attr = findAttribute("Code");
+            //max_stack, max_locals, code_length
+            return attr == -1 ? null : new CodeReader(buf, attr + 8, buf.getInt(attr + 4));
+        }
+    }
+}
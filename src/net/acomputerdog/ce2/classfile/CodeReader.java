@@ -0,0 +1,121 @@
+package net.acomputerdog.ce2.classfile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Walks the instructions of a method in place, in the class file buffer.  Offsets are relative to the start of
+ * the code, the same as the offsets shown in disassembly.  Used like javassist's CodeIterator:
+ * <pre>
+ * while (code.hasNext()) {
+ *     int off = code.next();
+ *     int op = code.byteAt(off);
+ * }
+ * </pre>
+ */
+public class CodeReader {
+    //length of each instruction, 0 for switches and wide which have variable lengths, -1 for invalid opcodes
+    private static final byte[] LENGTHS = new byte[256];
+
+    static {
+        String lengths =
+                //nop - dconst_1, bipush, sipush, ldc, ldc_w, ldc2_w
+                "1111111111111111" + "23233" +
+                //iload - aload, iload_0 - saload, istore - astore
+                "22222" + "1111111111111111111111111111" + "22222" +
+                //istore_0 - lxor, iinc
+                "1111111111111111111111111111111111111111111111111111111111111111111111111" + "3" +
+                //i2l - dcmpg, ifeq - jsr, ret, tableswitch, lookupswitch
+                "11111111111111111111" + "3333333333333333" + "2" + "00" +
+                //ireturn - return, getstatic - invokestatic, invokeinterface, invokedynamic
+                "111111" + "3333333" + "55" +
+                //new, newarray, anewarray, arraylength, athrow, checkcast, instanceof, monitorenter, monitorexit
+                "323113311" +
+                //wide, multianewarray, ifnull, ifnonnull, goto_w, jsr_w
+                "043355";
+        for (int op = 0; op < LENGTHS.length; op++) {
+            LENGTHS[op] = op < lengths.length() ? (byte) (lengths.charAt(op) - '0') : -1;
+        }
+    }
+
+    private final ByteBuffer buf;
+    private final int start;
+    private final int length;
+    private int next = 0;
+
+    CodeReader(ByteBuffer buf, int start, int length) {
+        this.buf = buf;
+        this.start = start;
+        this.length = length;
+    }
+
+    public int getCodeLength() {
+        return length;
+    }
+
+    public boolean hasNext() {
+        return next < length;
+    }
+
+    /**
+     * Moves to the next instruction.
+     *
+     * @return The offset of the instruction
+     * @throws IllegalArgumentException if the opcode is invalid
+     */
+    public int next() {
+        int off = next;
+        next = off + instructionLength(off);
+        return off;
+    }
+
+    /**
+     * Moves back to the first instruction.
+     */
+    public void begin() {
+        next = 0;
+    }
+
+    /**
+     * Gets the length of the instruction at an offset, including its operands.
+     */
+    public int instructionLength(int off) {
+        int op = byteAt(off);
+        int len = LENGTHS[op];
+        if (len > 0) {
+            return len;
+        }
+        if (len < 0) {
+            throw new IllegalArgumentException("Invalid opcode " + op + " at " + off);
+        }
+        //the operands of the switches start at the next multiple of 4
+        int pad = (off + 4) & ~3;
+        switch (op) {
+            case 0xaa: //tableswitch
+                return pad + 12 + (s32bitAt(pad + 8) - s32bitAt(pad + 4) + 1) * 4 - off;
+            case 0xab: //lookupswitch
+                return pad + 8 + s32bitAt(pad + 4) * 8 - off;
+            default: //wide
+                return byteAt(off + 1) == 0x84 ? 6 : 4;
+        }
+    }
+
+    public int byteAt(int off) {
+        return buf.get(start + off) & 0xFF;
+    }
+
+    public int signedByteAt(int off) {
+        return buf.get(start + off);
+    }
+
+    public int u16bitAt(int off) {
+        return buf.getShort(start + off) & 0xFFFF;
+    }
+
+    public int s16bitAt(int off) {
+        return buf.getShort(start + off);
+    }
+
+    public int s32bitAt(int off) {
+        return buf.getInt(start + off);
+    }
+}
@@ -0,0 +1,56 @@
+package net.acomputerdog.ce2.diff;
+
+/**
+ * A class that is different between the two sides of a JarDiff.  Only the number of changed lines is kept,
+ * JarDiff.getLines() diffs the class again when its lines are needed.
+ */
+public class ClassDiff {
+    public enum Status {
+        ADDED("+"),
+        REMOVED("-"),
+        CHANGED("~");
+
+        private final String symbol;
+
+        Status(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+    }
+
+    private final String className;
+    private final Status status;
+    private final int changedLines;
+
+    ClassDiff(String className, Status status, int changedLines) {
+        this.className = className;
+        this.status = status;
+        this.changedLines = changedLines;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Gets the number of lines of the disassembly that changed, or -1 if the class is only on one side.
+     */
+    public int getChangedLineCount() {
+        return changedLines;
+    }
+
+    @Override
+    public String toString() {
+        if (changedLines != -1) {
+            return status.getSymbol() + " " + className + " (" + changedLines + " lines)";
+        }
+        return status.getSymbol() + " " + className;
+    }
+}
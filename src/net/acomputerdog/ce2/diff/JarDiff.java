@@ -0,0 +1,238 @@
+package net.acomputerdog.ce2.diff;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.bytecode.AttributeInfo;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.MethodInfo;
+import net.acomputerdog.ce2.CEClassPath;
+import net.acomputerdog.ce2.disassembler.html.HTMLDisassembler;
+import net.acomputerdog.ce2.disassembler.lines.LineBuilder;
+import net.acomputerdog.ce2.disassembler.lines.LineStore;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Compares the classes of two classpath entries (jars or directories).  Every class is hashed, so classes
+ * that are the same on both sides are skipped without being parsed any further, and only the classes whose
+ * hashes differ are disassembled and line diffed.  Hashing and diffing are spread over one thread per core.
+ */
+public class JarDiff {
+    //attributes that only hold debug information
+    private static final Set<String> DEBUG_ATTRIBUTES = new HashSet<>(Arrays.asList(
+            "SourceFile", "SourceDebugExtension", "LineNumberTable", "LocalVariableTable", "LocalVariableTypeTable"));
+
+    private final File leftFile;
+    private final File rightFile;
+    private final boolean ignoreDebug;
+
+    private volatile Side left;
+    private volatile Side right;
+
+    private final AtomicInteger identical = new AtomicInteger();
+    private final AtomicInteger compared = new AtomicInteger();
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param leftFile Old classpath entry
+     * @param rightFile New classpath entry
+     * @param ignoreDebug If true, classes that only differ in debug attributes count as the same
+     */
+    public JarDiff(File leftFile, File rightFile, boolean ignoreDebug) {
+        this.leftFile = leftFile;
+        this.rightFile = rightFile;
+        this.ignoreDebug = ignoreDebug;
+    }
+
+    /**
+     * Runs the diff.  Added and removed classes are reported first, then changed classes as they are diffed,
+     * from the worker threads.
+     */
+    public void run(Consumer<ClassDiff> results) {
+        Side left;
+        Side right;
+        try {
+            left = readSide(leftFile);
+            right = readSide(rightFile);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        this.left = left;
+        this.right = right;
+        if (cancelled) {
+            return;
+        }
+
+        List<String> changed = new ArrayList<>();
+        for (String name : new TreeSet<>(left.classes.keySet())) {
+            if (!right.classes.containsKey(name)) {
+                results.accept(new ClassDiff(name, ClassDiff.Status.REMOVED, -1));
+            } else if (!Arrays.equals(left.hashes.get(name), right.hashes.get(name))) {
+                changed.add(name);
+            } else {
+                identical.incrementAndGet();
+            }
+        }
+        for (String name : new TreeSet<>(right.classes.keySet())) {
+            if (!left.classes.containsKey(name)) {
+                results.accept(new ClassDiff(name, ClassDiff.Status.ADDED, -1));
+            }
+        }
+
+        //the class files are already in memory, so the parallel stream's pool is enough here
+        changed.parallelStream().forEach(name -> {
+            if (cancelled) {
+                return;
+            }
+            LineDiff diff = LineDiff.diff(disassemble(left, name), disassemble(right, name));
+            compared.incrementAndGet();
+            //hashes can differ without changing the disassembly, e.g. a reordered constant pool
+            if (diff.hasChanges()) {
+                results.accept(new ClassDiff(name, ClassDiff.Status.CHANGED, diff.getChangedRowCount()));
+            } else {
+                identical.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Reads and hashes every class of one side.
+     */
+    private Side readSide(File file) throws InterruptedException {
+        CEClassPath classPath = new CEClassPath();
+        classPath.addPath(file);
+        Side side = new Side(classPath);
+        classPath.visitClassFilesParallel((entry, path, bytes) -> {
+            if (cancelled) {
+                return false;
+            }
+            String name = path.substring(0, path.length() - ".class".length()).replace('/', '.');
+            side.classes.put(name, bytes);
+            side.hashes.put(name, hash(bytes));
+            return true;
+        });
+        return side;
+    }
+
+    private byte[] hash(byte[] bytes) {
+        byte[] data = bytes;
+        if (ignoreDebug) {
+            try {
+                data = stripDebug(bytes);
+            } catch (IOException | RuntimeException e) {
+                //hash the class as it is
+            }
+        }
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    //javassist returns raw lists of AttributeInfo
+    @SuppressWarnings("unchecked")
+    private static byte[] stripDebug(byte[] bytes) throws IOException {
+        ClassFile cls = new ClassFile(new DataInputStream(new ByteArrayInputStream(bytes)));
+        removeDebug(cls.getAttributes());
+        for (Object obj : cls.getMethods()) {
+            CodeAttribute code = ((MethodInfo) obj).getCodeAttribute();
+            if (code != null) {
+                removeDebug(code.getAttributes());
+            }
+        }
+        //drops the constant pool entries that were only used by debug attributes
+        cls.compact();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+        cls.write(new DataOutputStream(out));
+        return out.toByteArray();
+    }
+
+    private static void removeDebug(List<AttributeInfo> attributes) {
+        attributes.removeIf(attr -> DEBUG_ATTRIBUTES.contains(attr.getName()));
+    }
+
+    private static String[] disassemble(Side side, String name) {
+        LineBuilder builder = new LineBuilder();
+        try {
+            //javassist pools aren't safe to add classes to from several threads, so each class gets its own child pool
+            ClassPool pool = new ClassPool(side.pool);
+            pool.childFirstLookup = true;
+            CtClass cls = pool.makeClass(new ByteArrayInputStream(side.classes.get(name)));
+            new HTMLDisassembler(pool).disassembleClass(cls, builder);
+        } catch (IOException | RuntimeException e) {
+            //include the hash, so that two different classes that both fail still show up as changed
+            builder.newLine();
+            builder.addBytecode("Unable to disassemble " + name + " (" + toHex(side.hashes.get(name)) + "): " + e);
+        }
+        LineStore lines = builder.getLines();
+        String[] text = new String[lines.getLineCount()];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = lines.getLine(i);
+        }
+        return text;
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder();
+        if (hash != null) {
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Disassembles and diffs a class.  A class that is only on one side is compared against nothing.  Slow for
+     * large classes, so this should be called off the event thread.  Only valid after run().
+     */
+    public LineDiff getLines(ClassDiff cls) {
+        String[] none = new String[0];
+        String name = cls.getClassName();
+        String[] leftLines = left.classes.containsKey(name) ? disassemble(left, name) : none;
+        String[] rightLines = right.classes.containsKey(name) ? disassemble(right, name) : none;
+        return LineDiff.diff(leftLines, rightLines);
+    }
+
+    /**
+     * Stops the diff.  Classes that are already being diffed may still be reported.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Gets the number of classes that are on both sides and are the same.
+     */
+    public int getIdenticalCount() {
+        return identical.get();
+    }
+
+    /**
+     * Gets the number of classes whose hashes differed and that were disassembled.
+     */
+    public int getComparedCount() {
+        return compared.get();
+    }
+
+    private static class Side {
+        private final Map<String, byte[]> classes = new ConcurrentHashMap<>();
+        private final Map<String, byte[]> hashes = new ConcurrentHashMap<>();
+        private final ClassPool pool;
+
+        private Side(CEClassPath classPath) {
+            pool = new ClassPool(true);
+            pool.appendClassPath(classPath);
+        }
+    }
+}
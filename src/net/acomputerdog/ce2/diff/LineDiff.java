@@ -0,0 +1,241 @@
+package net.acomputerdog.ce2.diff;
+
+import net.acomputerdog.ce2.util.IntList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line diff of two texts, laid out as side by side rows.  Uses Myers' O(ND) algorithm on the lines between
+ * the common prefix and suffix.  If the texts differ by more than MAX_EDITS lines, the middle is shown as a
+ * single replaced block instead, which keeps the memory for the edit trace bounded.
+ */
+public class LineDiff {
+    private static final int MAX_EDITS = 2000;
+
+    private static final int SAME = 0;
+    private static final int REMOVED = 1;
+    private static final int ADDED = 2;
+
+    private final String[] left;
+    private final String[] right;
+    //line shown on each side of a row, or -1 for a gap
+    private final int[] leftRows;
+    private final int[] rightRows;
+    private final int changedRows;
+
+    private LineDiff(String[] left, String[] right, int[] leftRows, int[] rightRows) {
+        this.left = left;
+        this.right = right;
+        this.leftRows = leftRows;
+        this.rightRows = rightRows;
+        int changed = 0;
+        for (int row = 0; row < leftRows.length; row++) {
+            if (!isSame(row)) {
+                changed++;
+            }
+        }
+        this.changedRows = changed;
+    }
+
+    public static LineDiff diff(String[] left, String[] right) {
+        //compare lines as ints
+        Map<String, Integer> ids = new HashMap<>();
+        int[] a = toIds(left, ids);
+        int[] b = toIds(right, ids);
+
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix] == b[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix && a[a.length - 1 - suffix] == b[b.length - 1 - suffix]) {
+            suffix++;
+        }
+
+        IntList ops = new IntList(a.length + b.length);
+        for (int i = 0; i < prefix; i++) {
+            ops.add(SAME);
+        }
+        if (!myers(a, prefix, a.length - suffix, b, prefix, b.length - suffix, ops)) {
+            for (int i = prefix; i < a.length - suffix; i++) {
+                ops.add(REMOVED);
+            }
+            for (int i = prefix; i < b.length - suffix; i++) {
+                ops.add(ADDED);
+            }
+        }
+        for (int i = 0; i < suffix; i++) {
+            ops.add(SAME);
+        }
+        return layout(left, right, ops);
+    }
+
+    private static int[] toIds(String[] lines, Map<String, Integer> ids) {
+        int[] out = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            Integer id = ids.get(lines[i]);
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines[i], id);
+            }
+            out[i] = id;
+        }
+        return out;
+    }
+
+    /**
+     * Adds the edit script from a[aStart, aEnd) to b[bStart, bEnd).  Returns false without adding anything if
+     * it needs more than MAX_EDITS edits.
+     */
+    private static boolean myers(int[] a, int aStart, int aEnd, int[] b, int bStart, int bEnd, IntList ops) {
+        int n = aEnd - aStart;
+        int m = bEnd - bStart;
+        int max = Math.min(n + m, MAX_EDITS);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        //v for -d..d at the start of each round d
+        List<int[]> trace = new ArrayList<>();
+
+        for (int d = 0; d <= max; d++) {
+            int[] snapshot = new int[2 * d + 1];
+            System.arraycopy(v, offset - d, snapshot, 0, snapshot.length);
+            trace.add(snapshot);
+
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[aStart + x] == b[bStart + y]) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    backtrack(trace, n, m, ops);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void backtrack(List<int[]> trace, int x, int y, IntList ops) {
+        IntList reversed = new IntList(x + y);
+        for (int d = trace.size() - 1; d > 0; d--) {
+            int[] v = trace.get(d);
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && v[k - 1 + d] < v[k + 1 + d])) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = v[prevK + d];
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                reversed.add(SAME);
+                x--;
+                y--;
+            }
+            reversed.add(x == prevX ? ADDED : REMOVED);
+            x = prevX;
+            y = prevY;
+        }
+        while (x > 0 && y > 0) {
+            reversed.add(SAME);
+            x--;
+            y--;
+        }
+        for (int i = reversed.size() - 1; i >= 0; i--) {
+            ops.add(reversed.get(i));
+        }
+    }
+
+    //removed lines directly followed by added lines are paired up on the same rows
+    private static LineDiff layout(String[] left, String[] right, IntList ops) {
+        IntList leftRows = new IntList(ops.size());
+        IntList rightRows = new IntList(ops.size());
+        int l = 0;
+        int r = 0;
+        int i = 0;
+        while (i < ops.size()) {
+            if (ops.get(i) == SAME) {
+                leftRows.add(l++);
+                rightRows.add(r++);
+                i++;
+                continue;
+            }
+            int removed = 0;
+            while (i < ops.size() && ops.get(i) == REMOVED) {
+                removed++;
+                i++;
+            }
+            int added = 0;
+            while (i < ops.size() && ops.get(i) == ADDED) {
+                added++;
+                i++;
+            }
+            for (int row = 0; row < Math.max(removed, added); row++) {
+                leftRows.add(row < removed ? l + row : -1);
+                rightRows.add(row < added ? r + row : -1);
+            }
+            l += removed;
+            r += added;
+        }
+        return new LineDiff(left, right, leftRows.toArray(), rightRows.toArray());
+    }
+
+    public int getRowCount() {
+        return leftRows.length;
+    }
+
+    /**
+     * Gets the number of rows that aren't the same on both sides.
+     */
+    public int getChangedRowCount() {
+        return changedRows;
+    }
+
+    public boolean hasChanges() {
+        return changedRows > 0;
+    }
+
+    /**
+     * Gets the index of the left line of a row, or -1 if the row is a gap on the left.
+     */
+    public int getLeftLine(int row) {
+        return leftRows[row];
+    }
+
+    /**
+     * Gets the index of the right line of a row, or -1 if the row is a gap on the right.
+     */
+    public int getRightLine(int row) {
+        return rightRows[row];
+    }
+
+    /**
+     * Gets the left line of a row, or null if the row is a gap on the left.
+     */
+    public String getLeft(int row) {
+        return leftRows[row] == -1 ? null : left[leftRows[row]];
+    }
+
+    /**
+     * Gets the right line of a row, or null if the row is a gap on the right.
+     */
+    public String getRight(int row) {
+        return rightRows[row] == -1 ? null : right[rightRows[row]];
+    }
+
+    public boolean isSame(int row) {
+        return leftRows[row] != -1 && rightRows[row] != -1 && left[leftRows[row]].equals(right[rightRows[row]]);
+    }
+}
@@ -0,0 +1,178 @@
+package net.acomputerdog.ce2.disassembler;
+
+import net.acomputerdog.ce2.disassembler.html.HTMLFormat;
+
+/**
+ * Base for disassembly output backends.  Keeps track of formatting, indentation and line numbers,
+ * and leaves the actual output to subclasses.
+ */
+public abstract class CodeBuilder {
+    private final Disassembly disassembly = new Disassembly();
+
+    private HTMLFormat currFormat = HTMLFormat.TEXT;
+    private int indentLevel = 0;
+    private int numLines = 0;
+    private boolean printedFirstLine = false;
+
+    protected void changeFormat(HTMLFormat format) {
+        if (currFormat != format) {
+            formatChanged(currFormat, format);
+            currFormat = format;
+        }
+    }
+
+    protected HTMLFormat getFormat() {
+        return currFormat;
+    }
+
+    public int getNumLines() {
+        return numLines;
+    }
+
+    /**
+     * Gets the member and instruction positions recorded so far.
+     */
+    public Disassembly getDisassembly() {
+        return disassembly;
+    }
+
+    public void markMember(String key) {
+        disassembly.addMember(key, numLines);
+    }
+
+    public void markInstruction(int offset) {
+        disassembly.addInstruction(offset, numLines);
+    }
+
+    public void setIndent(int level) {
+        this.indentLevel = level;
+    }
+
+    public void increaseIndent() {
+        indentLevel++;
+    }
+
+    public void decreaseIndent() {
+        indentLevel--;
+    }
+
+    public void append(String str) {
+        if (!printedFirstLine) {
+            printLine();
+        }
+
+        writeText(str);
+    }
+
+    public void addKeyword(String str) {
+        changeFormat(HTMLFormat.KEYWORD);
+        append(str);
+    }
+
+    public void addText(String str) {
+        changeFormat(HTMLFormat.TEXT);
+        append(str);
+    }
+
+    public void addType(String str) {
+        changeFormat(HTMLFormat.TYPE);
+        append(str);
+    }
+
+    public void addBytecode(String str) {
+        changeFormat(HTMLFormat.BYTECODE);
+        append(str);
+    }
+
+    public void addPrimitive(String str) {
+        changeFormat(HTMLFormat.PRIMITIVE);
+        append(str);
+    }
+
+    public void addArgument(String str) {
+        changeFormat(HTMLFormat.ARGUMENT);
+        append(str);
+    }
+
+    public void addVoid(String str) {
+        changeFormat(HTMLFormat.VOID);
+        append(str);
+    }
+
+    public void addStatic(String str) {
+        changeFormat(HTMLFormat.STATIC_TEXT);
+        append(str);
+    }
+
+    public void addLink(HTMLFormat format, String str, Reference target) {
+        changeFormat(format);
+        if (!printedFirstLine) {
+            printLine();
+        }
+        startLink(target);
+        writeText(str);
+        endLink();
+    }
+
+    public void newLine() {
+        newLine(1);
+    }
+
+    public void newLine(int count) {
+        if (count < 0) {
+            count = 0;
+        }
+        numLines += count;
+        for (int i = 0; i < count; i++) {
+            writeLineBreak();
+            printLine();
+        }
+        writeIndent(indentLevel * 4);
+    }
+
+    private void printLine() {
+        printedFirstLine = true;
+        HTMLFormat old = currFormat;
+        changeFormat(HTMLFormat.TEXT);
+        writeLineNumber(numLines);
+        changeFormat(old);
+    }
+
+    /**
+     * If true, method bodies should be replaced with a fold that is decoded later.
+     */
+    public boolean isDeferringBodies() {
+        return false;
+    }
+
+    /**
+     * Marks the current line as a placeholder for content identified by key.
+     */
+    public void addFold(Object key) {
+
+    }
+
+    protected void writeLineNumber(int line) {
+        writeText(String.format("%-4d| ", line));
+    }
+
+    protected void writeIndent(int spaces) {
+        for (int i = 0; i < spaces; i++) {
+            writeText(" ");
+        }
+    }
+
+    protected void startLink(Reference target) {
+
+    }
+
+    protected void endLink() {
+
+    }
+
+    protected abstract void formatChanged(HTMLFormat from, HTMLFormat to);
+
+    protected abstract void writeText(String str);
+
+    protected abstract void writeLineBreak();
+}
@@ -1,7 +1,15 @@
 package net.acomputerdog.ce2.disassembler;
 
 import javassist.CtClass;
+import javassist.bytecode.MethodInfo;
+import net.acomputerdog.ce2.cfg.ControlFlowGraph;
 
 public interface Disassembler {
     String disassembleClass(CtClass cls);
+
+    void disassembleClass(CtClass cls, CodeBuilder builder);
+
+    void disassembleBody(MethodInfo info, CodeBuilder builder);
+
+    void disassembleBlocks(MethodInfo info, ControlFlowGraph cfg, CodeBuilder builder);
 }
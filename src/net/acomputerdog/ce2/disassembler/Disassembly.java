@@ -1,24 +1,113 @@
 package net.acomputerdog.ce2.disassembler;
 
+import javassist.bytecode.MethodInfo;
+
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
-//you can't scroll to a line in a JEditorPane...
-@Deprecated
+/**
+ * Records the lines that members and instructions were written to, so that a view can jump to them.
+ * Instruction lines are stored relative to their member, so moving a member doesn't touch its instructions.
+ */
 public class Disassembly {
-    private final String contents;
-    private final Map<String, Integer> memberMap;
+    private final Map<String, Member> memberMap = new HashMap<>();
+    private Member currMember;
+
+    public static String memberKey(String name, String descriptor) {
+        return name + descriptor;
+    }
+
+    public static String memberKey(MethodInfo info) {
+        return memberKey(info.getName(), info.getDescriptor());
+    }
+
+    public void addMember(String key, int line) {
+        currMember = new Member(line);
+        memberMap.put(key, currMember);
+    }
+
+    public void addInstruction(int offset, int line) {
+        if (currMember != null) {
+            currMember.addInstruction(offset, line - currMember.line);
+        }
+    }
 
-    public Disassembly(String contents, Map<String, Integer> memberMap) {
-        this.contents = contents;
-        this.memberMap = memberMap;
+    public Set<String> getMembers() {
+        return Collections.unmodifiableSet(memberMap.keySet());
     }
 
-    public String getContents() {
-        return contents;
+    /**
+     * Gets the line a member was written to, or -1 if it wasn't written.
+     */
+    public int getMemberLine(String key) {
+        Member member = memberMap.get(key);
+        return member == null ? -1 : member.line;
     }
 
-    public Map<String, Integer> getMemberMap() {
-        return Collections.unmodifiableMap(memberMap);
+    /**
+     * Gets the line of the instruction that contains a bytecode offset, or -1 if there is none.
+     */
+    public int getInstructionLine(String key, int offset) {
+        Member member = memberMap.get(key);
+        if (member == null || member.numInstructions == 0) {
+            return -1;
+        }
+        int idx = Arrays.binarySearch(member.offsets, 0, member.numInstructions, offset);
+        if (idx < 0) {
+            //not the start of an instruction, use the one before it
+            idx = -idx - 2;
+            if (idx < 0) {
+                return -1;
+            }
+        }
+        return member.line + member.lines[idx];
+    }
+
+    /**
+     * Moves every member that starts after a line, for when lines are inserted or removed.
+     */
+    public void moveLines(int after, int delta) {
+        for (Member member : memberMap.values()) {
+            if (member.line > after) {
+                member.line += delta;
+            }
+        }
+    }
+
+    /**
+     * Replaces the instructions of a member with the ones recorded for it in another Disassembly.
+     */
+    public void copyInstructions(String key, Disassembly from) {
+        Member member = memberMap.get(key);
+        Member source = from.memberMap.get(key);
+        if (member != null && source != null) {
+            member.offsets = Arrays.copyOf(source.offsets, source.numInstructions);
+            member.lines = Arrays.copyOf(source.lines, source.numInstructions);
+            member.numInstructions = source.numInstructions;
+        }
+    }
+
+    private static class Member {
+        private int line;
+        private int[] offsets = new int[0];
+        private int[] lines = new int[0];
+        private int numInstructions = 0;
+
+        private Member(int line) {
+            this.line = line;
+        }
+
+        private void addInstruction(int offset, int relativeLine) {
+            if (numInstructions == offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(16, numInstructions * 2));
+                lines = Arrays.copyOf(lines, offsets.length);
+            }
+            offsets[numInstructions] = offset;
+            lines[numInstructions] = relativeLine;
+            numInstructions++;
+        }
     }
 }
@@ -0,0 +1,172 @@
+package net.acomputerdog.ce2.disassembler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The operands of every opcode, read once from bytecodes.txt.  Each opcode has an array of operands in the
+ * order that they appear after the opcode, each packed into an int as (kind &lt;&lt; 8 | width in bytes), so
+ * decoding an instruction is an array lookup and a loop over at most three operands.
+ * <p>
+ * Switches and wide have a single operand of their own kind with a width of 0, since their length depends on
+ * the code.  The operands of a wide instruction are those of the instruction it widens, twice as wide.
+ */
+public class InstructionTable {
+    /**
+     * Signed value (bipush, sipush, the increment of iinc).
+     */
+    public static final int SIGNED = 1;
+    /**
+     * Unsigned value (dimensions of multianewarray).
+     */
+    public static final int UNSIGNED = 2;
+    /**
+     * Local variable index.
+     */
+    public static final int LOCAL = 3;
+    /**
+     * Constant pool index.
+     */
+    public static final int CONSTANT = 4;
+    /**
+     * Branch offset, relative to the start of the instruction.
+     */
+    public static final int BRANCH = 5;
+    /**
+     * Primitive array type of newarray.
+     */
+    public static final int ATYPE = 6;
+    /**
+     * Bytes that are always zero or can be worked out from the other operands (the count of invokeinterface),
+     * and aren't shown.
+     */
+    public static final int IMPLIED = 7;
+    public static final int TABLESWITCH = 8;
+    public static final int LOOKUPSWITCH = 9;
+    public static final int WIDE = 10;
+
+    private static final int[] NO_OPERANDS = new int[0];
+    private static final int[][] OPERANDS = new int[256][];
+    private static final boolean[] STATIC = new boolean[256];
+
+    static {
+        for (int op = 0; op < OPERANDS.length; op++) {
+            OPERANDS[op] = NO_OPERANDS;
+        }
+        InputStream in = InstructionTable.class.getResourceAsStream("/bytecodes.txt");
+        if (in == null) {
+            throw new IllegalStateException("bytecodes.txt is missing from the classpath");
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                //mnemonic, opcode, opcode in binary, operands, stack effect, description
+                String[] cols = line.split("\t");
+                //the lines that continue the description of wide have no opcode
+                if (cols.length < 4 || cols[1].isEmpty()) {
+                    continue;
+                }
+                int op = Integer.parseInt(cols[1], 16);
+                OPERANDS[op] = parseOperands(cols[0], cols[3].trim(), cols.length > 5 ? cols[5] : "");
+                STATIC[op] = cols[0].contains("static");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read bytecodes.txt", e);
+        }
+    }
+
+    /**
+     * Parses an operand list like "2: indexbyte1, indexbyte2".  Bytes with the same name and increasing numbers
+     * are one operand.
+     */
+    private static int[] parseOperands(String mnemonic, String spec, String description) {
+        if (spec.isEmpty()) {
+            return NO_OPERANDS;
+        }
+        int colon = spec.indexOf(':');
+        String length = spec.substring(0, colon);
+        String[] names = spec.substring(colon + 1).split(",");
+        if (length.endsWith("+")) {
+            return new int[]{(spec.contains("npairs") ? LOOKUPSWITCH : TABLESWITCH) << 8};
+        }
+        if (length.contains("/")) {
+            return new int[]{WIDE << 8};
+        }
+
+        List<Integer> operands = new ArrayList<>();
+        String lastName = null;
+        int total = 0;
+        for (String name : names) {
+            name = name.trim();
+            int digits = name.length();
+            while (digits > 0 && Character.isDigit(name.charAt(digits - 1))) {
+                digits--;
+            }
+            String base = name.substring(0, digits);
+            boolean continues = digits > 0 && digits < name.length() && !name.endsWith("1") && base.equals(lastName);
+            if (continues) {
+                operands.set(operands.size() - 1, operands.get(operands.size() - 1) + 1);
+            } else {
+                operands.add(kindOf(base, description) << 8 | 1);
+            }
+            lastName = base;
+            total++;
+        }
+        if (total != Integer.parseInt(length)) {
+            throw new IllegalStateException("Operands of " + mnemonic + " don't add up to " + length + " bytes");
+        }
+        int[] packed = new int[operands.size()];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = operands.get(i);
+        }
+        return packed;
+    }
+
+    private static int kindOf(String name, String description) {
+        switch (name) {
+            case "index":
+            case "indexbyte":
+                return description.contains("constant pool") ? CONSTANT : LOCAL;
+            case "branchbyte":
+                return BRANCH;
+            case "byte":
+            case "const":
+                return SIGNED;
+            case "atype":
+                return ATYPE;
+            //reserved zero bytes
+            case "":
+            case "count":
+                return IMPLIED;
+            default:
+                return UNSIGNED;
+        }
+    }
+
+    /**
+     * Gets the operands of an opcode, which must not be modified.
+     */
+    public static int[] getOperands(int op) {
+        return OPERANDS[op];
+    }
+
+    public static int kind(int operand) {
+        return operand >>> 8;
+    }
+
+    public static int width(int operand) {
+        return operand & 0xFF;
+    }
+
+    /**
+     * Checks if the constant operand of an opcode refers to a static member.
+     */
+    public static boolean isStatic(int op) {
+        return STATIC[op];
+    }
+}
@@ -0,0 +1,148 @@
+package net.acomputerdog.ce2.disassembler;
+
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ExceptionTable;
+import net.acomputerdog.ce2.util.IntList;
+
+import java.util.Arrays;
+
+/**
+ * The labels of a method: every offset that is jumped to, or starts, ends or handles an exception range.
+ * They are collected in one pass over the code before it is written, sorted, and numbered in order, so
+ * that a branch can find the name of its target with a binary search.
+ * <p>
+ * The exception ranges are kept as events sorted by offset, which a writer can step through alongside the
+ * instructions instead of searching the exception table at every label.
+ */
+public class Labels {
+    //in the order that events at the same offset are sorted
+    public static final int TRY_END = 0;
+    public static final int TRY_START = 1;
+    public static final int HANDLER = 2;
+
+    private final int[] offsets;
+    //offset << 32 | kind << 16 | exception table entry, sorted
+    private final long[] events;
+
+    private Labels(int[] offsets, long[] events) {
+        this.offsets = offsets;
+        this.events = events;
+    }
+
+    public static Labels collect(CodeAttribute code) throws BadBytecode {
+        IntList targets = new IntList(64);
+        CodeIterator it = code.iterator();
+        while (it.hasNext()) {
+            int off = it.next();
+            addTargets(it, off, it.byteAt(off), targets);
+        }
+
+        ExceptionTable table = code.getExceptionTable();
+        long[] events = new long[table.size() * 3];
+        for (int i = 0; i < table.size(); i++) {
+            targets.add(table.startPc(i));
+            targets.add(table.endPc(i));
+            targets.add(table.handlerPc(i));
+            events[i * 3] = event(table.startPc(i), TRY_START, i);
+            events[i * 3 + 1] = event(table.endPc(i), TRY_END, i);
+            events[i * 3 + 2] = event(table.handlerPc(i), HANDLER, i);
+        }
+        Arrays.sort(events);
+
+        int[] offsets = targets.toArray();
+        Arrays.sort(offsets);
+        int unique = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            if (unique == 0 || offsets[i] != offsets[unique - 1]) {
+                offsets[unique++] = offsets[i];
+            }
+        }
+        return new Labels(Arrays.copyOf(offsets, unique), events);
+    }
+
+    private static long event(int offset, int kind, int entry) {
+        return (long) offset << 32 | kind << 16 | entry;
+    }
+
+    /**
+     * Adds the offsets that an instruction can jump to, not counting the next instruction.
+     */
+    public static void addTargets(CodeIterator it, int off, int op, IntList targets) {
+        int pos = off + 1;
+        for (int operand : InstructionTable.getOperands(op)) {
+            int width = InstructionTable.width(operand);
+            switch (InstructionTable.kind(operand)) {
+                case InstructionTable.BRANCH:
+                    targets.add(off + (width == 2 ? it.s16bitAt(pos) : it.s32bitAt(pos)));
+                    break;
+                case InstructionTable.TABLESWITCH: {
+                    int table = (off + 4) & ~3;
+                    targets.add(off + it.s32bitAt(table));
+                    int cases = it.s32bitAt(table + 8) - it.s32bitAt(table + 4) + 1;
+                    for (int i = 0; i < cases; i++) {
+                        targets.add(off + it.s32bitAt(table + 12 + i * 4));
+                    }
+                    break;
+                }
+                case InstructionTable.LOOKUPSWITCH: {
+                    int table = (off + 4) & ~3;
+                    targets.add(off + it.s32bitAt(table));
+                    int pairs = it.s32bitAt(table + 4);
+                    for (int i = 0; i < pairs; i++) {
+                        targets.add(off + it.s32bitAt(table + 12 + i * 8));
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+            pos += width;
+        }
+    }
+
+    public int size() {
+        return offsets.length;
+    }
+
+    public int getOffset(int label) {
+        return offsets[label];
+    }
+
+    /**
+     * Finds the label at an offset.
+     *
+     * @return The number of the label, or -1 if nothing jumps to the offset
+     */
+    public int find(int offset) {
+        int label = Arrays.binarySearch(offsets, offset);
+        return label < 0 ? -1 : label;
+    }
+
+    public static String getName(int label) {
+        return "L" + label;
+    }
+
+    public int getEventCount() {
+        return events.length;
+    }
+
+    public int getEventOffset(int event) {
+        return (int) (events[event] >>> 32);
+    }
+
+    /**
+     * Gets the kind of an exception range event: TRY_END, TRY_START or HANDLER.
+     */
+    public int getEventKind(int event) {
+        return (int) (events[event] >>> 16) & 0xFFFF;
+    }
+
+    /**
+     * Gets the exception table entry of an event.
+     */
+    public int getEventEntry(int event) {
+        return (int) events[event] & 0xFFFF;
+    }
+}
@@ -0,0 +1,71 @@
+package net.acomputerdog.ce2.disassembler;
+
+/**
+ * Target of a link in a disassembly: a class, and optionally one of its members and an instruction in it.
+ */
+public class Reference {
+    private final String className;
+    private final String memberKey;
+    private final int offset;
+
+    public Reference(String className) {
+        this(className, null);
+    }
+
+    public Reference(String className, String memberKey) {
+        this(className, memberKey, -1);
+    }
+
+    public Reference(String className, String memberKey, int offset) {
+        if (className == null) {
+            throw new IllegalArgumentException("Class name cannot be null!");
+        }
+        this.className = className;
+        this.memberKey = memberKey;
+        this.offset = offset;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Gets the member key (as created by Disassembly.memberKey()), or null if this refers to the whole class.
+     */
+    public String getMemberKey() {
+        return memberKey;
+    }
+
+    /**
+     * Gets the bytecode offset of the instruction, or -1 if this refers to the whole member.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Reference that = (Reference) o;
+
+        return offset == that.offset && className.equals(that.className) && (memberKey != null ? memberKey.equals(that.memberKey) : that.memberKey == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = className.hashCode();
+        result = 31 * result + (memberKey != null ? memberKey.hashCode() : 0);
+        result = 31 * result + offset;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        if (memberKey == null) {
+            return className;
+        }
+        return offset == -1 ? className + "#" + memberKey : className + "#" + memberKey + "@" + offset;
+    }
+}
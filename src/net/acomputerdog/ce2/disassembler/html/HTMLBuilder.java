@@ -1,42 +1,27 @@
 package net.acomputerdog.ce2.disassembler.html;
 
-public class HTMLBuilder {
-    private final StringBuilder builder;
+import net.acomputerdog.ce2.disassembler.CodeBuilder;
+import net.acomputerdog.ce2.disassembler.Reference;
 
-    private HTMLFormat currFormat = HTMLFormat.TEXT;
-    private int indentLevel = 0;
-    private int numLines = 0;
-    private boolean printedFirstLine = false;
+public class HTMLBuilder extends CodeBuilder {
+    private final StringBuilder builder;
 
     public HTMLBuilder() {
         builder = new StringBuilder();
     }
 
-    private void changeFormat(HTMLFormat format) {
-        if (currFormat != format) {
-            currFormat.writeEnd(this);
-            format.writeStart(this);
-            currFormat = format;
-        }
-    }
-
-    public void setIndent(int level) {
-        this.indentLevel = level;
-    }
-
-    public void increaseIndent() {
-        indentLevel++;
+    public void appendRawHTML(String html) {
+        builder.append(html);
     }
 
-    public void decreaseIndent() {
-        indentLevel--;
+    @Override
+    protected void formatChanged(HTMLFormat from, HTMLFormat to) {
+        from.writeEnd(this);
+        to.writeStart(this);
     }
 
-    public void append(String str) {
-        if (!printedFirstLine) {
-            printLine();
-        }
-
+    @Override
+    protected void writeText(String str) {
         str = str.replace("\n", "\\n");
         str = str.replace("<", "&#60;");
         str = str.replace(">", "&#62;");
@@ -44,80 +29,41 @@ public class HTMLBuilder {
         appendRawHTML(str);
     }
 
-    public void appendRawHTML(String html) {
-        builder.append(html);
-    }
-
-    public void addKeyword(String str) {
-        changeFormat(HTMLFormat.KEYWORD);
-        append(str);
-    }
-
-    public void addText(String str) {
-        changeFormat(HTMLFormat.TEXT);
-        append(str);
-    }
-
-    public void addType(String str) {
-        changeFormat(HTMLFormat.TYPE);
-        append(str);
-    }
-
-    public void addBytecode(String str) {
-        changeFormat(HTMLFormat.BYTECODE);
-        append(str);
-    }
-
-    public void addPrimitive(String str) {
-        changeFormat(HTMLFormat.PRIMITIVE);
-        append(str);
+    @Override
+    protected void startLink(Reference target) {
+        appendRawHTML("<a href=\"ce2:" + escapeAttribute(target.toString()) + "\">");
     }
 
-    public void addArgument(String str) {
-        changeFormat(HTMLFormat.ARGUMENT);
-        append(str);
+    @Override
+    protected void endLink() {
+        appendRawHTML("</a>");
     }
 
-    public void addVoid(String str) {
-        changeFormat(HTMLFormat.VOID);
-        append(str);
+    private static String escapeAttribute(String str) {
+        return str.replace("&", "&#38;").replace("\"", "&#34;").replace("<", "&#60;").replace(">", "&#62;");
     }
 
-    public void addStatic(String str) {
-        changeFormat(HTMLFormat.STATIC_TEXT);
-        append(str);
+    @Override
+    protected void writeLineBreak() {
+        //add line number
+        appendRawHTML("<br>\n");
     }
 
-    public void newLine() {
-        newLine(1);
+    @Override
+    protected void writeLineNumber(int line) {
+        appendRawHTML(String.format("%-4d| ", line).replace(" ", "&nbsp;"));
     }
 
-    public void newLine(int count) {
-        if (count < 0) {
-            count = 0;
-        }
-        numLines += count;
-        for (int i = 0; i < count; i++) {
-            //add line number
-            appendRawHTML("<br>\n");
-            printLine();
-        }
-        for (int i = 0; i < indentLevel * 4; i++) {
+    @Override
+    protected void writeIndent(int spaces) {
+        for (int i = 0; i < spaces; i++) {
             appendRawHTML("&nbsp;");
         }
     }
 
-    private void printLine() {
-        printedFirstLine = true;
-        HTMLFormat old = currFormat;
-        changeFormat(HTMLFormat.TEXT);
-        appendRawHTML(String.format("%-4d| ", numLines).replace(" ", "&nbsp;"));
-        changeFormat(old);
-    }
-
     @Override
     public String toString() {
-        currFormat.writeEnd(this);
+        getFormat().writeEnd(this);
         //append("</div>\n");
         return builder.toString();
     }
@@ -2,41 +2,146 @@ package net.acomputerdog.ce2.disassembler.html;
 
 import javassist.*;
 import javassist.bytecode.*;
+import net.acomputerdog.ce2.CEClassPath;
+import net.acomputerdog.ce2.cfg.ControlFlowGraph;
+import net.acomputerdog.ce2.disassembler.CodeBuilder;
 import net.acomputerdog.ce2.disassembler.Disassembler;
+import net.acomputerdog.ce2.disassembler.Disassembly;
+import net.acomputerdog.ce2.disassembler.InstructionTable;
+import net.acomputerdog.ce2.disassembler.Labels;
+import net.acomputerdog.ce2.disassembler.Reference;
 import net.acomputerdog.ce2.disassembler.fakeclass.FakeClass;
+import net.acomputerdog.ce2.jfr.DisassembleEvent;
+import net.acomputerdog.ce2.jfr.Jfr;
+import net.acomputerdog.ce2.jfr.MethodDecodeEvent;
+import net.acomputerdog.ce2.metrics.Metrics;
+
+import java.util.Set;
+import java.util.TreeSet;
 
 public class HTMLDisassembler implements Disassembler {
+    //reference kinds of method handles, indexed by kind
+    private static final String[] METHOD_HANDLE_KINDS = {null, "getfield", "getstatic", "putfield", "putstatic",
+            "invokevirtual", "invokestatic", "invokespecial", "newinvokespecial", "invokeinterface"};
 
     private final ClassPool classPool;
+    //only used for the locations in JFR events, may be null
+    private final CEClassPath classPath;
 
     public HTMLDisassembler(ClassPool classPool) {
+        this(classPool, null);
+    }
+
+    /**
+     * @param classPath Classpath that classPool loads classes from, so that JFR events can say where a class
+     *                  came from without looking it up again
+     */
+    public HTMLDisassembler(ClassPool classPool, CEClassPath classPath) {
         this.classPool = classPool;
+        this.classPath = classPath;
     }
 
     @Override
     public String disassembleClass(CtClass cls) {
         HTMLBuilder builder = new HTMLBuilder();
-        FakeClass.loadMissingClasses(classPool, cls.getRefClasses());
 
         writeHTMLheader(builder);
+        disassembleClass(cls, builder);
+        writeHTMLfooter(builder);
+
+        return builder.toString();
+    }
+
+    @Override
+    public void disassembleClass(CtClass cls, CodeBuilder builder) {
+        DisassembleEvent event = Jfr.ENABLED ? new DisassembleEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        Metrics metrics = Metrics.get();
+        long time = System.nanoTime();
+        FakeClass.loadMissingClasses(classPool, cls.getRefClasses());
+        time = recordPhase(metrics, Metrics.Phase.RESOLVE, time);
+
         writeHeader(builder, cls);
+        time = recordPhase(metrics, Metrics.Phase.HEADER, time);
 
         builder.setIndent(1);
         builder.newLine();
         writeFields(builder, cls);
+        time = recordPhase(metrics, Metrics.Phase.FIELDS, time);
         writeConstructors(builder, cls);
+        time = recordPhase(metrics, Metrics.Phase.CONSTRUCTORS, time);
         writeMethods(builder, cls);
         builder.setIndent(0);
         builder.newLine();
 
         writeFooter(builder, cls);
-        writeHTMLfooter(builder);
+        recordPhase(metrics, Metrics.Phase.METHODS, time);
+        metrics.recordDisassembly(builder.getNumLines());
+        if (event != null) {
+            //counting the instructions below isn't part of the disassembly
+            event.end();
+            if (event.shouldCommit()) {
+                commitEvent(event, cls, builder);
+            }
+        }
+    }
 
-        return builder.toString();
-        //return new Disassembly(builder.toString());
+    private void commitEvent(DisassembleEvent event, CtClass cls, CodeBuilder builder) {
+        event.className = cls.getName();
+        event.location = getLocation(cls.getName());
+        for (Object obj : cls.getClassFile2().getMethods()) {
+            CodeAttribute code = ((MethodInfo) obj).getCodeAttribute();
+            if (code != null) {
+                event.codeBytes += code.getCodeLength();
+                event.instructions += countInstructions(code);
+            }
+            event.methods++;
+        }
+        event.lines = builder.getNumLines();
+        event.commit();
     }
 
-    protected void writeHeader(HTMLBuilder builder, CtClass cls) {
+    private String getLocation(String className) {
+        return classPath == null ? null : classPath.getLocation(className);
+    }
+
+    private static int countInstructions(CodeAttribute code) {
+        int count = 0;
+        CodeIterator it = code.iterator();
+        try {
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+        } catch (BadBytecode e) {
+            //count the instructions up to the bad one
+        }
+        return count;
+    }
+
+    private static long recordPhase(Metrics metrics, Metrics.Phase phase, long start) {
+        long now = System.nanoTime();
+        metrics.recordPhase(phase, now - start);
+        return now;
+    }
+
+    @Override
+    public void disassembleBody(MethodInfo info, CodeBuilder builder) {
+        builder.setIndent(1);
+        builder.markMember(Disassembly.memberKey(info));
+        writeByteCode(builder, info);
+    }
+
+    @Override
+    public void disassembleBlocks(MethodInfo info, ControlFlowGraph cfg, CodeBuilder builder) {
+        builder.setIndent(0);
+        builder.markMember(Disassembly.memberKey(info));
+        writeBlocks(builder, info, cfg);
+    }
+
+    protected void writeHeader(CodeBuilder builder, CtClass cls) {
         writePackage(builder, cls);
         builder.newLine();
 
@@ -48,26 +153,30 @@ public class HTMLDisassembler implements Disassembler {
         builder.newLine();
     }
 
-    protected void writePackage(HTMLBuilder b, CtClass cls) {
+    protected void writePackage(CodeBuilder b, CtClass cls) {
         b.addKeyword("package ");
         b.addText(cls.getPackageName());
         b.addText(";");
         b.newLine();
     }
 
-    protected void writeImports(HTMLBuilder b, CtClass cls) {
+    protected void writeImports(CodeBuilder b, CtClass cls) {
+        //sorted, so that the same class always disassembles the same way
+        Set<String> names = new TreeSet<>();
         for (Object obj : cls.getRefClasses()) {
-            String name = obj.toString();
+            names.add(obj.toString());
+        }
+        for (String name : names) {
             if (!name.equals(cls.getName())) {
                 b.addKeyword("import ");
-                b.addType(name);
+                b.addLink(HTMLFormat.TYPE, name, new Reference(name));
                 b.addText(";");
                 b.newLine();
             }
         }
     }
 
-    protected void writeClassLine(HTMLBuilder b, CtClass cls) {
+    protected void writeClassLine(CodeBuilder b, CtClass cls) {
         writeClassModifiers(b, cls);
         b.addType(cls.getSimpleName());
         b.addText(" ");
@@ -78,7 +187,7 @@ public class HTMLDisassembler implements Disassembler {
         } catch (NotFoundException ignored) {}
         if (parent != null && !"java.lang.Object".equals(parent.getName()) && !"java.lang.Enum".equals(parent.getName())) {
             b.addKeyword("extends ");
-            b.addType(parent.getSimpleName());
+            b.addLink(HTMLFormat.TYPE, parent.getSimpleName(), new Reference(parent.getName()));
             b.addText(" ");
         }
 
@@ -94,14 +203,14 @@ public class HTMLDisassembler implements Disassembler {
                 b.addText(", ");
             }
             CtClass face = interfaces[i];
-            b.addType(face.getSimpleName());
+            b.addLink(HTMLFormat.TYPE, face.getSimpleName(), new Reference(face.getName()));
         }
         if (interfaces.length > 0) {
             b.addText(" ");
         }
     }
 
-    protected void writeClassModifiers(HTMLBuilder b, CtClass cls) {
+    protected void writeClassModifiers(CodeBuilder b, CtClass cls) {
         int mod = cls.getModifiers();
 
         writeCommonModifiers(b, mod);
@@ -125,7 +234,7 @@ public class HTMLDisassembler implements Disassembler {
         }
     }
 
-    protected void writeCommonModifiers(HTMLBuilder b, int mod) {
+    protected void writeCommonModifiers(CodeBuilder b, int mod) {
         if (Modifier.isPublic(mod)) {
             b.addKeyword("public ");
         } else if (Modifier.isPrivate(mod)) {
@@ -143,7 +252,7 @@ public class HTMLDisassembler implements Disassembler {
         }
     }
 
-    protected void writeFieldModifiers(HTMLBuilder b, CtField field) {
+    protected void writeFieldModifiers(CodeBuilder b, CtField field) {
         int mod = field.getModifiers();
 
         writeCommonModifiers(b, mod);
@@ -157,7 +266,7 @@ public class HTMLDisassembler implements Disassembler {
         }
     }
 
-    protected void writeMethodModifiers(HTMLBuilder b, CtMethod method) {
+    protected void writeMethodModifiers(CodeBuilder b, CtMethod method) {
         int mod = method.getModifiers();
 
         writeCommonModifiers(b, mod);
@@ -176,7 +285,7 @@ public class HTMLDisassembler implements Disassembler {
         }
     }
 
-    protected void writeInterfaceMethodModifiers(HTMLBuilder b, CtMethod method) {
+    protected void writeInterfaceMethodModifiers(CodeBuilder b, CtMethod method) {
         int mod = method.getModifiers();
 
         if (Modifier.isStatic(mod)) {
@@ -190,7 +299,7 @@ public class HTMLDisassembler implements Disassembler {
         }
     }
 
-    protected void writeConstructorModifiers(HTMLBuilder b, CtConstructor constructor) {
+    protected void writeConstructorModifiers(CodeBuilder b, CtConstructor constructor) {
         int mod = constructor.getModifiers();
 
         writeCommonModifiers(b, mod);
@@ -203,9 +312,10 @@ public class HTMLDisassembler implements Disassembler {
         }
     }
 
-    protected void writeFields(HTMLBuilder b, CtClass cls) {
+    protected void writeFields(CodeBuilder b, CtClass cls) {
         CtField[] fields = cls.getDeclaredFields();
         for (CtField field : fields) {
+            b.markMember(Disassembly.memberKey(field.getName(), field.getFieldInfo2().getDescriptor()));
             writeFieldModifiers(b, field);
             try {
                 writeType(b, field.getType());
@@ -224,7 +334,7 @@ public class HTMLDisassembler implements Disassembler {
         b.newLine();
     }
 
-    protected void writeType(HTMLBuilder b, CtClass type){
+    protected void writeType(CodeBuilder b, CtClass type){
         int arrayDepth = 0;
         try {
             while (type.isArray()) {
@@ -239,7 +349,7 @@ public class HTMLDisassembler implements Disassembler {
                     b.addPrimitive(prim);
                 }
             } else {
-                b.addType(type.getSimpleName());
+                b.addLink(HTMLFormat.TYPE, type.getSimpleName(), new Reference(type.getName()));
             }
         } catch (NotFoundException e) {
             b.addType("?");
@@ -249,8 +359,9 @@ public class HTMLDisassembler implements Disassembler {
         }
     }
 
-    protected void writeConstructors(HTMLBuilder b, CtClass cls) {
+    protected void writeConstructors(CodeBuilder b, CtClass cls) {
         for (CtConstructor constructor : cls.getDeclaredConstructors()) {
+            b.markMember(Disassembly.memberKey(constructor.getMethodInfo2()));
             writeConstructorModifiers(b, constructor);
             b.addType(cls.getSimpleName());
             b.addText("(");
@@ -261,7 +372,7 @@ public class HTMLDisassembler implements Disassembler {
             }
             b.addText(") {");
 
-            writeByteCode(b, constructor.getMethodInfo());
+            writeBody(b, constructor.getMethodInfo());
 
             b.newLine();
             b.addText("}");
@@ -269,7 +380,7 @@ public class HTMLDisassembler implements Disassembler {
         }
     }
 
-    protected void writeMethodArgs(HTMLBuilder b, CtClass[] args) {
+    protected void writeMethodArgs(CodeBuilder b, CtClass[] args) {
         for (int i = 0; i < args.length; i++) {
             if (i > 0) {
                 b.addText(", ");
@@ -281,8 +392,9 @@ public class HTMLDisassembler implements Disassembler {
         }
     }
 
-    protected void writeMethods(HTMLBuilder b, CtClass cls) {
+    protected void writeMethods(CodeBuilder b, CtClass cls) {
         for (CtMethod method : cls.getDeclaredMethods()) {
+            b.markMember(Disassembly.memberKey(method.getMethodInfo2()));
             try {
                 if (cls.isInterface()) {
                     writeInterfaceMethodModifiers(b, method);
@@ -311,7 +423,7 @@ public class HTMLDisassembler implements Disassembler {
                 } else {
                     b.addText(") {");
 
-                    writeByteCode(b, method.getMethodInfo());
+                    writeBody(b, method.getMethodInfo());
 
                     b.addText("}");
                     b.newLine(2);
@@ -326,27 +438,76 @@ public class HTMLDisassembler implements Disassembler {
         }
     }
 
-    protected void writeByteCode(HTMLBuilder b, MethodInfo info) {
+    protected void writeBody(CodeBuilder b, MethodInfo info) {
+        if (b.isDeferringBodies()) {
+            writeBodyPlaceholder(b, info);
+        } else {
+            writeByteCode(b, info);
+        }
+    }
+
+    //must have the same layout as writeByteCode, with the instructions on a single line
+    protected void writeBodyPlaceholder(CodeBuilder b, MethodInfo info) {
+        b.increaseIndent();
+        b.newLine();
+        b.addText("...");
+        b.addFold(info);
+        b.decreaseIndent();
+        b.newLine();
+    }
+
+    protected void writeByteCode(CodeBuilder b, MethodInfo info) {
         b.increaseIndent();
         b.newLine();
 
         ConstPool pool = info.getConstPool();
         if (info.getCodeAttribute() != null) {
-            CodeIterator it = info.getCodeAttribute().iterator();
-            it.begin();
+            MethodDecodeEvent event = Jfr.ENABLED ? new MethodDecodeEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+            int instructions = 0;
+            CodeAttribute code = info.getCodeAttribute();
+            CodeIterator it = code.iterator();
+            String memberKey = Disassembly.memberKey(info);
             try {
+                Labels labels = Labels.collect(code);
+                int label = 0;
+                int nextEvent = 0;
+                int offsetWidth = String.valueOf(code.getCodeLength()).length();
                 while (it.hasNext()) {
                     int idx = it.next();
                     int op = it.byteAt(idx);
 
-                    writeInstruction(b, pool, it, idx, op);
+                    //a label that isn't at the start of an instruction goes before the next one
+                    while (label < labels.size() && labels.getOffset(label) <= idx) {
+                        nextEvent = writeLabel(b, pool, code.getExceptionTable(), labels, label++, nextEvent);
+                        b.newLine();
+                    }
+                    b.markInstruction(idx);
+                    writeOffset(b, idx, offsetWidth);
+                    writeInstruction(b, pool, it, idx, op, labels, memberKey);
+                    instructions++;
                     if (it.hasNext()) {
                         b.newLine();
                     }
                 }
+                //exception ranges can end after the last instruction
+                while (label < labels.size()) {
+                    b.newLine();
+                    nextEvent = writeLabel(b, pool, code.getExceptionTable(), labels, label++, nextEvent);
+                }
             } catch (BadBytecode | ArrayIndexOutOfBoundsException e) {
                 b.addBytecode("An error occurred parsing bytecode!");
             }
+            if (event != null && event.shouldCommit()) {
+                event.className = pool.getClassName();
+                event.location = getLocation(pool.getClassName());
+                event.method = info.getName() + info.getDescriptor();
+                event.codeBytes = info.getCodeAttribute().getCodeLength();
+                event.instructions = instructions;
+                event.commit();
+            }
 
             b.decreaseIndent();
             b.newLine();
@@ -374,162 +535,392 @@ public class HTMLDisassembler implements Disassembler {
     }
 
 
-    protected void writeInstruction(HTMLBuilder b, ConstPool pool, CodeIterator it, int off, int op) {
-        String opName = Mnemonic.OPCODE[op];
-        b.addBytecode(opName);
-
-        int a1;
-        int a2;
-        int a3;
-        switch (op) {
-            //single byte value
-            case 0x10:
-            case 0x15:
-            case 0x16:
-            case 0x17:
-            case 0x18:
-            case 0x19:
-            case 0x36:
-            case 0x37:
-            case 0x38:
-            case 0x39:
-            case 0x3a:
-            case 0xa9:
-            case 0xbc:
-                a1 = it.byteAt(off + 1);
-                b.addArgument(" ");
-                b.addArgument(String.valueOf(a1));
+    /**
+     * Writes the code of a method block by block, each starting with a line that describes its edges and loop.
+     * Blocks are in order of their offsets, so the instructions are in the same order as in writeByteCode.
+     */
+    protected void writeBlocks(CodeBuilder b, MethodInfo info, ControlFlowGraph cfg) {
+        ConstPool pool = info.getConstPool();
+        CodeAttribute code = info.getCodeAttribute();
+        CodeIterator it = code.iterator();
+        String memberKey = Disassembly.memberKey(info);
+        try {
+            Labels labels = Labels.collect(code);
+            int offsetWidth = String.valueOf(code.getCodeLength()).length();
+            for (int block = 0; block < cfg.getBlockCount(); block++) {
+                if (block > 0) {
+                    b.newLine();
+                    b.newLine();
+                }
+                writeBlockHeader(b, cfg, labels, block);
+                b.increaseIndent();
+                int end = cfg.getEnd(block);
+                it.move(cfg.getStart(block));
+                while (it.hasNext() && it.lookAhead() < end) {
+                    int idx = it.next();
+                    b.newLine();
+                    b.markInstruction(idx);
+                    writeOffset(b, idx, offsetWidth);
+                    writeInstruction(b, pool, it, idx, it.byteAt(idx), labels, memberKey);
+                }
+                b.decreaseIndent();
+            }
+        } catch (BadBytecode | ArrayIndexOutOfBoundsException e) {
+            b.addBytecode("An error occurred parsing bytecode!");
+        }
+        b.newLine();
+    }
+
+    protected void writeBlockHeader(CodeBuilder b, ControlFlowGraph cfg, Labels labels, int block) {
+        b.addKeyword("block ");
+        b.addArgument(ControlFlowGraph.getBlockName(block));
+        int label = labels.find(cfg.getStart(block));
+        if (label != -1) {
+            b.addText(" (");
+            b.addArgument(Labels.getName(label));
+            b.addText(")");
+        }
+        b.addText(":");
+        if (block == 0) {
+            b.addText(" entry;");
+        } else if (!cfg.isReachable(block)) {
+            b.addText(" unreachable;");
+        }
+        if (cfg.isLoopHeader(block)) {
+            b.addText(" loop header, depth " + cfg.getLoopDepth(block) + ";");
+        } else if (cfg.getLoopHeader(block) != -1) {
+            b.addText(" in loop ");
+            b.addArgument(ControlFlowGraph.getBlockName(cfg.getLoopHeader(block)));
+            b.addText(", depth " + cfg.getLoopDepth(block) + ";");
+        }
+        if (cfg.getPredecessorCount(block) > 0) {
+            b.addKeyword(" from");
+            for (int i = 0; i < cfg.getPredecessorCount(block); i++) {
+                writeEdge(b, cfg.getPredecessor(block, i), cfg.getPredecessorKind(block, i), i == 0);
+            }
+            b.addText(";");
+        }
+        if (cfg.getSuccessorCount(block) > 0) {
+            b.addKeyword(" to");
+            for (int i = 0; i < cfg.getSuccessorCount(block); i++) {
+                writeEdge(b, cfg.getSuccessor(block, i), cfg.getSuccessorKind(block, i), i == 0);
+            }
+            b.addText(";");
+        }
+    }
+
+    //fallthrough edges are the common case, so only the other kinds are named
+    protected void writeEdge(CodeBuilder b, int block, int kind, boolean first) {
+        b.addText(first ? " " : ", ");
+        b.addArgument(ControlFlowGraph.getBlockName(block));
+        if (kind != ControlFlowGraph.FALLTHROUGH) {
+            b.addText(" (" + ControlFlowGraph.getEdgeName(kind) + ")");
+        }
+    }
+
+    //offsets are padded so that the instructions line up
+    protected void writeOffset(CodeBuilder b, int off, int width) {
+        String str = String.valueOf(off);
+        StringBuilder padded = new StringBuilder(width + 2);
+        for (int i = str.length(); i < width; i++) {
+            padded.append(' ');
+        }
+        b.addText(padded.append(str).append(": ").toString());
+    }
+
+    /**
+     * Writes a label, followed by the exception ranges that start, end or are handled at it.
+     *
+     * @param event The first exception range event that hasn't been written yet
+     * @return The first event after this label
+     */
+    protected int writeLabel(CodeBuilder b, ConstPool pool, ExceptionTable table, Labels labels, int label, int event) {
+        int off = labels.getOffset(label);
+        b.addArgument(Labels.getName(label));
+        b.addText(":");
+        boolean first = true;
+        for (; event < labels.getEventCount() && labels.getEventOffset(event) <= off; event++) {
+            int entry = labels.getEventEntry(event);
+            b.addText(first ? " " : "; ");
+            first = false;
+            switch (labels.getEventKind(event)) {
+                case Labels.TRY_END:
+                    b.addKeyword("end try");
+                    b.addText(" from ");
+                    b.addArgument(Labels.getName(labels.find(table.startPc(entry))));
+                    break;
+                case Labels.TRY_START:
+                    b.addKeyword("try");
+                    b.addText(" until ");
+                    b.addArgument(Labels.getName(labels.find(table.endPc(entry))));
+                    b.addText(", ");
+                    writeCatchType(b, pool, table.catchType(entry));
+                    b.addText(" at ");
+                    b.addArgument(Labels.getName(labels.find(table.handlerPc(entry))));
+                    break;
+                default:
+                    writeCatchType(b, pool, table.catchType(entry));
+                    b.addText(" from ");
+                    b.addArgument(Labels.getName(labels.find(table.startPc(entry))));
+                    b.addText(" until ");
+                    b.addArgument(Labels.getName(labels.find(table.endPc(entry))));
+                    break;
+            }
+        }
+        return event;
+    }
+
+    //catch type 0 is finally, and catches everything
+    protected void writeCatchType(CodeBuilder b, ConstPool pool, int catchType) {
+        b.addKeyword("catch ");
+        if (catchType == 0) {
+            b.addKeyword("any");
+        } else {
+            writeClassRef(b, pool, catchType);
+        }
+    }
+
+    protected void writeInstruction(CodeBuilder b, ConstPool pool, CodeIterator it, int off, int op, Labels labels, String memberKey) {
+        b.addBytecode(Mnemonic.OPCODE[op]);
+        writeOperands(b, pool, it, off, op, off + 1, 1, labels, memberKey);
+        b.addText(";");
+    }
+
+    /**
+     * Writes the operands of an instruction as laid out in InstructionTable.
+     *
+     * @param pos Offset of the first operand
+     * @param scale Multiplier of the operand widths, 2 for instructions widened by wide
+     */
+    protected void writeOperands(CodeBuilder b, ConstPool pool, CodeIterator it, int off, int op, int pos, int scale, Labels labels, String memberKey) {
+        boolean first = true;
+        for (int operand : InstructionTable.getOperands(op)) {
+            int kind = InstructionTable.kind(operand);
+            int width = InstructionTable.width(operand) * scale;
+            if (kind != InstructionTable.IMPLIED) {
+                b.addArgument(first ? " " : ", ");
+                first = false;
+            }
+            switch (kind) {
+                case InstructionTable.SIGNED:
+                    b.addArgument(String.valueOf(width == 1 ? it.signedByteAt(pos) : it.s16bitAt(pos)));
+                    break;
+                case InstructionTable.UNSIGNED:
+                case InstructionTable.LOCAL:
+                    b.addArgument(String.valueOf(width == 1 ? it.byteAt(pos) : it.u16bitAt(pos)));
+                    break;
+                case InstructionTable.CONSTANT:
+                    writeConstantRef(b, pool, width == 1 ? it.byteAt(pos) : it.u16bitAt(pos), InstructionTable.isStatic(op));
+                    break;
+                case InstructionTable.BRANCH:
+                    writeBranch(b, pool, labels, memberKey, off + (width == 2 ? it.s16bitAt(pos) : it.s32bitAt(pos)));
+                    break;
+                case InstructionTable.ATYPE:
+                    writeArrayType(b, it.byteAt(pos));
+                    break;
+                case InstructionTable.TABLESWITCH:
+                    writeTableSwitch(b, pool, it, off, labels, memberKey);
+                    break;
+                case InstructionTable.LOOKUPSWITCH:
+                    writeLookupSwitch(b, pool, it, off, labels, memberKey);
+                    break;
+                case InstructionTable.WIDE: {
+                    int widened = it.byteAt(off + 1);
+                    b.addBytecode(Mnemonic.OPCODE[widened]);
+                    writeOperands(b, pool, it, off, widened, off + 2, 2, labels, memberKey);
+                    break;
+                }
+                default:
+                    break;
+            }
+            pos += width;
+        }
+    }
+
+    /**
+     * Writes a branch target as a link to its label.
+     */
+    protected void writeBranch(CodeBuilder b, ConstPool pool, Labels labels, String memberKey, int target) {
+        int label = labels.find(target);
+        if (label == -1) {
+            b.addArgument("?");
+        } else {
+            b.addLink(HTMLFormat.ARGUMENT, Labels.getName(label), new Reference(pool.getClassName(), memberKey, target));
+        }
+    }
+
+    protected void writeArrayType(CodeBuilder b, int atype) {
+        switch (atype) {
+            case 4:
+                b.addType("boolean");
                 break;
-            //single two byte value
-            case 0x11:
-                a1 = it.s16bitAt(off + 1);
-                b.addArgument(" ");
-                b.addArgument(String.valueOf(a1));
+            case 5:
+                b.addType("char");
                 break;
-            //single two byte offset
-            case 0x99:
-            case 0x9a:
-            case 0x9b:
-            case 0x9c:
-            case 0x9d:
-            case 0x9e:
-            case 0x9f:
-            case 0xa0:
-            case 0xa1:
-            case 0xa2:
-            case 0xa3:
-            case 0xa4:
-            case 0xa5:
-            case 0xa6:
-            case 0xa7:
-            case 0xa8:
-            case 0xc6:
-            case 0xc7:
-                a1 = it.s16bitAt(off + 1);
-                b.addArgument(" $");
-                b.addArgument(String.valueOf(a1));
+            case 6:
+                b.addType("float");
                 break;
-            //single one byte CP constant
-            case 0x12:
-                a1 = it.byteAt(off + 1);
-                b.addArgument(" ");
-                writeConstant(b, pool.getLdcValue(a1));
+            case 7:
+                b.addType("double");
                 break;
-            //single two byte CP constant
-            case 0x13:
-            case 0x14:
-                a1 = it.s16bitAt(off + 1);
-                b.addArgument(" ");
-                writeConstant(b, pool.getLdcValue(a1));
+            case 8:
+                b.addType("byte");
                 break;
-            //single 2 byte CP field
-            case 0xb2:
-            case 0xb3:
-            case 0xb4:
-            case 0xb5:
-                a1 = it.s16bitAt(off + 1);
-                b.addArgument(" ");
-                if (op == 0xb2 || op == 0xb3) {
-                    writeFieldRef(b, pool, a1, true);
-                } else {
-                    writeFieldRef(b, pool, a1, false);
-                }
+            case 9:
+                b.addType("short");
                 break;
-            //single 2 byte CP method
-            case 0xb6:
-            case 0xb7:
-            case 0xb8:
-                a1 = it.s16bitAt(off + 1);
-                b.addArgument(" ");
-                if (op == 0xb8) {
-                    writeMethodRef(b, pool, a1, true);
-                } else {
-                    writeMethodRef(b, pool, a1, false);
-                }
+            case 10:
+                b.addType("int");
                 break;
-            //single 2 byte CP class
-            case 0xbb:
-            case 0xbd:
-            case 0xc0:
-            case 0xc1:
-                a1 = it.s16bitAt(off + 1);
-                b.addArgument(" ");
-                writeClassRef(b, pool, a1);
+            case 11:
+                b.addType("long");
                 break;
-            //double one byte values
-            case 0x84:
-                a1 = it.byteAt(off + 1);
-                a2 = it.byteAt(off + 2);
-                b.addArgument(" ");
-                b.addArgument(String.valueOf(a1));
-                b.addArgument(", ");
-                b.addArgument(String.valueOf(a2));
+            default:
+                b.addType("?");
                 break;
-            //tableswitch
-            case 0xaa:
-                b.addArgument(" tableargs");
+        }
+    }
+
+    //the jump table is written one entry per line, so that big switches stay readable
+    protected void writeTableSwitch(CodeBuilder b, ConstPool pool, CodeIterator it, int off, Labels labels, String memberKey) {
+        //the operands start at the next multiple of 4
+        int pos = (off + 4) & ~3;
+        int low = it.s32bitAt(pos + 4);
+        int high = it.s32bitAt(pos + 8);
+        b.addText("{");
+        b.increaseIndent();
+        for (int i = 0; i <= high - low; i++) {
+            writeSwitchCase(b, String.valueOf(low + i));
+            writeBranch(b, pool, labels, memberKey, off + it.s32bitAt(pos + 12 + i * 4));
+        }
+        writeSwitchCase(b, null);
+        writeBranch(b, pool, labels, memberKey, off + it.s32bitAt(pos));
+        b.decreaseIndent();
+        b.newLine();
+        b.addText("}");
+    }
+
+    protected void writeLookupSwitch(CodeBuilder b, ConstPool pool, CodeIterator it, int off, Labels labels, String memberKey) {
+        int pos = (off + 4) & ~3;
+        int pairs = it.s32bitAt(pos + 4);
+        b.addText("{");
+        b.increaseIndent();
+        for (int i = 0; i < pairs; i++) {
+            writeSwitchCase(b, String.valueOf(it.s32bitAt(pos + 8 + i * 8)));
+            writeBranch(b, pool, labels, memberKey, off + it.s32bitAt(pos + 12 + i * 8));
+        }
+        writeSwitchCase(b, null);
+        writeBranch(b, pool, labels, memberKey, off + it.s32bitAt(pos));
+        b.decreaseIndent();
+        b.newLine();
+        b.addText("}");
+    }
+
+    //match is null for the default case
+    protected void writeSwitchCase(CodeBuilder b, String match) {
+        b.newLine();
+        if (match == null) {
+            b.addKeyword("default");
+        } else {
+            b.addPrimitive(match);
+        }
+        b.addText(": ");
+    }
+
+    /**
+     * Writes a constant pool operand according to the kind of constant that it refers to.
+     *
+     * @param isStatic If the constant is a field or method, whether the instruction uses it as static
+     */
+    protected void writeConstantRef(CodeBuilder b, ConstPool pool, int idx, boolean isStatic) {
+        switch (pool.getTag(idx)) {
+            case ConstPool.CONST_Fieldref:
+                writeFieldRef(b, pool, idx, isStatic);
                 break;
-            //lookupswitch
-            case 0xab:
-                b.addArgument(" lookupargs");
+            case ConstPool.CONST_Methodref:
+            case ConstPool.CONST_InterfaceMethodref:
+                writeMethodRef(b, pool, idx, isStatic);
                 break;
-            //one two byte value, 2 one byte values
-            case 0xb9:
-            case 0xba:
-                a1 = it.s16bitAt(off + 1);
-                a2 = it.byteAt(off + 3);
-                a3 = it.byteAt(off + 4);
-                b.addArgument(" ");
-                b.addArgument(String.valueOf(a1));
-                b.addArgument(", ");
-                b.addArgument(String.valueOf(a2));
-                b.addArgument(", ");
-                b.addArgument(String.valueOf(a3));
+            case ConstPool.CONST_Class:
+                writeClassRef(b, pool, idx);
                 break;
-            //wide
-            case 0xc4:
-                b.addArgument(" wideargs");
+            case ConstPool.CONST_InvokeDynamic:
+                writeInvokeDynamic(b, pool, idx);
                 break;
-            //1 two byte CP index, 1 single byte
-            case 0xc5:
-                b.addArgument(" 2b CP, 1b");
+            case ConstPool.CONST_MethodHandle:
+                writeMethodHandle(b, pool, idx);
                 break;
-            //single four byte value
-            case 0xc8:
-            case 0xc9:
-                a1 = it.s32bitAt(off + 1);
-                b.addArgument(" ");
-                b.addArgument(String.valueOf(a1));
+            case ConstPool.CONST_MethodType:
+                writeDescriptor(b, pool.getUtf8Info(pool.getMethodTypeInfo(idx)));
                 break;
             default:
-                //bytecode with no arguments
-                //System.err.print("Unknown opcode: " + op);
+                writeConstant(b, pool.getLdcValue(idx));
                 break;
         }
-        b.addText(";");
     }
 
-    protected void writeClassRef(HTMLBuilder b, ConstPool pool, int a1) {
+    /**
+     * Writes the name and type of an invokedynamic call site, then its bootstrap method and static arguments.
+     */
+    protected void writeInvokeDynamic(CodeBuilder b, ConstPool pool, int idx) {
+        int nameAndType = pool.getInvokeDynamicNameAndType(idx);
+        b.addText(pool.getUtf8Info(pool.getNameAndTypeName(nameAndType)));
+        writeDescriptor(b, pool.getUtf8Info(pool.getNameAndTypeDescriptor(nameAndType)));
+
+        BootstrapMethodsAttribute.BootstrapMethod bootstrap = getBootstrapMethod(pool, pool.getInvokeDynamicBootstrap(idx));
+        b.addKeyword(" bootstrap ");
+        if (bootstrap == null) {
+            b.addType("?");
+            return;
+        }
+        writeMethodHandle(b, pool, bootstrap.methodRef);
+        if (bootstrap.arguments.length > 0) {
+            b.addText(" {");
+            for (int i = 0; i < bootstrap.arguments.length; i++) {
+                if (i > 0) {
+                    b.addText(", ");
+                }
+                writeConstantRef(b, pool, bootstrap.arguments[i], false);
+            }
+            b.addText("}");
+        }
+    }
+
+    /**
+     * Finds a bootstrap method of the class that owns a constant pool.  Returns null if the class can't be found.
+     */
+    protected BootstrapMethodsAttribute.BootstrapMethod getBootstrapMethod(ConstPool pool, int index) {
+        //the attribute belongs to the class, but only the constant pool is passed around
+        CtClass cls = classPool.getOrNull(pool.getClassName());
+        if (cls == null || cls.getClassFile2().getConstPool() != pool) {
+            return null;
+        }
+        BootstrapMethodsAttribute attr = (BootstrapMethodsAttribute) cls.getClassFile2().getAttribute(BootstrapMethodsAttribute.tag);
+        if (attr == null || index >= attr.getMethods().length) {
+            return null;
+        }
+        return attr.getMethods()[index];
+    }
+
+    protected void writeMethodHandle(CodeBuilder b, ConstPool pool, int idx) {
+        int kind = pool.getMethodHandleKind(idx);
+        int ref = pool.getMethodHandleIndex(idx);
+        if (kind < 1 || kind >= METHOD_HANDLE_KINDS.length) {
+            b.addType("?");
+            return;
+        }
+        b.addBytecode(METHOD_HANDLE_KINDS[kind]);
+        b.addText(" ");
+        //getstatic, putstatic and invokestatic
+        boolean isStatic = kind == 2 || kind == 4 || kind == 6;
+        if (kind <= 4) {
+            writeFieldRef(b, pool, ref, isStatic);
+        } else {
+            writeMethodRef(b, pool, ref, isStatic);
+        }
+    }
+
+    protected void writeClassRef(CodeBuilder b, ConstPool pool, int a1) {
         String sig = pool.getClassInfo(a1);
 
         CtClass cls;
@@ -539,13 +930,13 @@ public class HTMLDisassembler implements Disassembler {
             cls =  FakeClass.getOrLoadClass(classPool, sig);
         }
         if (cls != null) {
-            b.addType(cls.getSimpleName());
+            b.addLink(HTMLFormat.TYPE, cls.getSimpleName(), new Reference(getLinkTarget(cls)));
         } else {
             b.addType("?");
         }
     }
 
-    protected void writeFieldRef(HTMLBuilder b, ConstPool pool, int a1, boolean isStatic) {
+    protected void writeFieldRef(CodeBuilder b, ConstPool pool, int a1, boolean isStatic) {
         String clsName = pool.getFieldrefClassName(a1);
         String field = pool.getFieldrefName(a1);
         String typeSig = pool.getFieldrefType(a1);
@@ -554,16 +945,13 @@ public class HTMLDisassembler implements Disassembler {
         CtClass type = makeClassSig(typeSig);
 
         if (cls != null) {
-            b.addType(cls.getSimpleName());
+            b.addLink(HTMLFormat.TYPE, cls.getSimpleName(), new Reference(clsName));
         } else {
             b.addType("?");
         }
         b.addText(".");
-        if (isStatic) {
-            b.addStatic(field);
-        } else {
-            b.addText(field);
-        }
+        Reference fieldRef = new Reference(clsName, Disassembly.memberKey(field, typeSig));
+        b.addLink(isStatic ? HTMLFormat.STATIC_TEXT : HTMLFormat.TEXT, field, fieldRef);
         b.addText(" [");
         if (type != null) {
             writeType(b, type);
@@ -573,7 +961,7 @@ public class HTMLDisassembler implements Disassembler {
         b.addText("]");
     }
 
-    protected void writeMethodRef(HTMLBuilder b, ConstPool pool, int a1, boolean isStatic) {
+    protected void writeMethodRef(CodeBuilder b, ConstPool pool, int a1, boolean isStatic) {
         String clsName = pool.getMethodrefClassName(a1);
         String methodName = pool.getMethodrefName(a1);
         String methodSig = pool.getMethodrefType(a1);
@@ -581,17 +969,21 @@ public class HTMLDisassembler implements Disassembler {
         CtClass cls = FakeClass.getOrLoadClass(classPool, clsName);
 
         if (cls != null) {
-            b.addType(cls.getSimpleName());
+            b.addLink(HTMLFormat.TYPE, cls.getSimpleName(), new Reference(clsName));
         } else {
             b.addType("?");
         }
 
         b.addText(".");
-        if (isStatic) {
-            b.addStatic(methodName);
-        } else {
-            b.addText(methodName);
-        }
+        Reference methodRef = new Reference(clsName, Disassembly.memberKey(methodName, methodSig));
+        b.addLink(isStatic ? HTMLFormat.STATIC_TEXT : HTMLFormat.TEXT, methodName, methodRef);
+        writeDescriptor(b, methodSig);
+    }
+
+    /**
+     * Writes a method descriptor as "(parameters) [return type]".
+     */
+    protected void writeDescriptor(CodeBuilder b, String methodSig) {
         b.addText("(");
         try {
             CtClass[] params = Descriptor.getParameterTypes(methodSig, classPool);
@@ -613,7 +1005,7 @@ public class HTMLDisassembler implements Disassembler {
         b.addText("]");
     }
 
-    protected void writeConstant(HTMLBuilder b, Object obj) {
+    protected void writeConstant(CodeBuilder b, Object obj) {
         if (obj == null) {
             b.addArgument("?");
         } else if (obj instanceof String) {
@@ -625,11 +1017,18 @@ public class HTMLDisassembler implements Disassembler {
         }
     }
 
+    //arrays link to their component type
+    protected String getLinkTarget(CtClass cls) {
+        String name = cls.getName();
+        int arrayStart = name.indexOf('[');
+        return arrayStart == -1 ? name : name.substring(0, arrayStart);
+    }
+
     protected CtClass makeClassSig(String sig) {
         return FakeClass.getOrLoadClass(classPool, Descriptor.toClassName(sig));
     }
 
-    protected void writeFooter(HTMLBuilder b, CtClass cls) {
+    protected void writeFooter(CodeBuilder b, CtClass cls) {
         b.addText("}");
         b.newLine();
     }
@@ -1,22 +1,28 @@
 package net.acomputerdog.ce2.disassembler.html;
 
+import java.awt.*;
+
 public enum HTMLFormat {
-    TEXT("", ""),
-    KEYWORD("<font color=\"blue\">", "</font>"),
-    TYPE("<font color=\"green\">", "</font>"),
-    BYTECODE("<font color=\"red\">", "</font>"),
-    PRIMITIVE("<font color=\"#20B2AA\">", "</font>"),
-    ARGUMENT("<font color=\"#E6B62C\">", "</font>"),
-    VOID("<font color=\"#9733DD\">", "</font>"),
-    STATIC_TEXT("<i>", "</i>")
+    TEXT("", "", Color.BLACK, false),
+    KEYWORD("<font color=\"blue\">", "</font>", Color.BLUE, false),
+    TYPE("<font color=\"green\">", "</font>", new Color(0x008000), false),
+    BYTECODE("<font color=\"red\">", "</font>", Color.RED, false),
+    PRIMITIVE("<font color=\"#20B2AA\">", "</font>", new Color(0x20B2AA), false),
+    ARGUMENT("<font color=\"#E6B62C\">", "</font>", new Color(0xE6B62C), false),
+    VOID("<font color=\"#9733DD\">", "</font>", new Color(0x9733DD), false),
+    STATIC_TEXT("<i>", "</i>", Color.BLACK, true)
     ;
 
     private final String startFormat;
     private final String endFormat;
+    private final Color color;
+    private final boolean italic;
 
-    HTMLFormat(String startFormat, String endFormat) {
+    HTMLFormat(String startFormat, String endFormat, Color color, boolean italic) {
         this.startFormat = startFormat;
         this.endFormat = endFormat;
+        this.color = color;
+        this.italic = italic;
     }
 
     public void writeStart(HTMLBuilder builder) {
@@ -26,4 +32,12 @@ public enum HTMLFormat {
     public void writeEnd(HTMLBuilder builder) {
         builder.appendRawHTML(endFormat);
     }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public boolean isItalic() {
+        return italic;
+    }
 }
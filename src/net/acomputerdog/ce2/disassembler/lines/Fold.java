@@ -0,0 +1,33 @@
+package net.acomputerdog.ce2.disassembler.lines;
+
+/**
+ * A range of lines in a LineStore that can be swapped between a collapsed and an expanded form.
+ */
+public class Fold {
+    private final Object key;
+    int line;
+    int length = 1;
+    boolean expanded = false;
+    LineStore hidden;
+
+    Fold(Object key, int line) {
+        this.key = key;
+        this.line = line;
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public boolean isExpanded() {
+        return expanded;
+    }
+}
@@ -0,0 +1,85 @@
+package net.acomputerdog.ce2.disassembler.lines;
+
+import net.acomputerdog.ce2.disassembler.CodeBuilder;
+import net.acomputerdog.ce2.disassembler.Reference;
+import net.acomputerdog.ce2.disassembler.html.HTMLFormat;
+
+/**
+ * CodeBuilder that writes into a LineStore.  Line numbers are left out, the viewer draws them itself.
+ */
+public class LineBuilder extends CodeBuilder {
+    private static final String SPACES = "                                                                ";
+
+    private final LineStore lines;
+    private boolean deferBodies = false;
+    private Reference currLink = null;
+
+    public LineBuilder() {
+        this(new LineStore());
+    }
+
+    public LineBuilder(LineStore lines) {
+        this.lines = lines;
+    }
+
+    public LineStore getLines() {
+        return lines;
+    }
+
+    public void setDeferBodies(boolean deferBodies) {
+        this.deferBodies = deferBodies;
+    }
+
+    @Override
+    public boolean isDeferringBodies() {
+        return deferBodies;
+    }
+
+    @Override
+    public void addFold(Object key) {
+        lines.addFold(key);
+    }
+
+    @Override
+    protected void formatChanged(HTMLFormat from, HTMLFormat to) {
+
+    }
+
+    @Override
+    protected void writeText(String str) {
+        //String.replace compiles a regex on Java 8, and almost no text has line breaks
+        if (str.indexOf('\n') != -1) {
+            str = str.replace("\n", "\\n");
+        }
+        lines.append(getFormat(), str, currLink);
+    }
+
+    @Override
+    protected void startLink(Reference target) {
+        currLink = target;
+    }
+
+    @Override
+    protected void endLink() {
+        currLink = null;
+    }
+
+    @Override
+    protected void writeLineBreak() {
+        lines.newLine();
+    }
+
+    @Override
+    protected void writeLineNumber(int line) {
+
+    }
+
+    @Override
+    protected void writeIndent(int spaces) {
+        while (spaces > 0) {
+            int count = Math.min(spaces, SPACES.length());
+            lines.append(getFormat(), SPACES.substring(0, count));
+            spaces -= count;
+        }
+    }
+}
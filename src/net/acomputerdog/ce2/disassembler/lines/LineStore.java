@@ -0,0 +1,442 @@
+package net.acomputerdog.ce2.disassembler.lines;
+
+import net.acomputerdog.ce2.disassembler.html.HTMLFormat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Indexed, formatted lines of text.  All characters are kept in one array and lines and formatting
+ * runs are stored as offsets into it, so a line can be found and painted without touching the rest.
+ */
+public class LineStore {
+    private static final HTMLFormat[] FORMATS = HTMLFormat.values();
+
+    private char[] chars = new char[1024];
+    private int numChars = 0;
+
+    //first character of each line
+    private int[] lineStarts = new int[64];
+    //first run of each line
+    private int[] lineRuns = new int[64];
+    private int numLines = 1;
+
+    private int[] runStarts = new int[128];
+    private byte[] runFormats = new byte[128];
+    private int numRuns = 0;
+    //link target of each run, only allocated once a link is added
+    private Object[] runLinks = null;
+
+    private int longestLine = 0;
+
+    //sorted by line
+    private final List<Fold> folds = new ArrayList<>();
+
+    public void append(HTMLFormat format, String str) {
+        append(format, str, null);
+    }
+
+    public void append(HTMLFormat format, String str, Object link) {
+        int len = str.length();
+        if (len == 0) {
+            return;
+        }
+        ensureChars(numChars + len);
+
+        int lineStart = lineStarts[numLines - 1];
+        boolean sameRun = numRuns > lineRuns[numLines - 1] && runFormats[numRuns - 1] == format.ordinal() && getRunLink(numRuns - 1) == link;
+        if (!sameRun) {
+            if (numRuns == runStarts.length) {
+                runStarts = Arrays.copyOf(runStarts, Math.max(16, numRuns * 2));
+                runFormats = Arrays.copyOf(runFormats, runStarts.length);
+                if (runLinks != null) {
+                    runLinks = Arrays.copyOf(runLinks, runStarts.length);
+                }
+            }
+            runStarts[numRuns] = numChars;
+            runFormats[numRuns] = (byte) format.ordinal();
+            if (link != null) {
+                if (runLinks == null) {
+                    runLinks = new Object[runStarts.length];
+                }
+                runLinks[numRuns] = link;
+            }
+            numRuns++;
+        }
+
+        str.getChars(0, len, chars, numChars);
+        for (int i = numChars; i < numChars + len; i++) {
+            if (chars[i] == '\t') {
+                chars[i] = ' ';
+            }
+        }
+        numChars += len;
+
+        longestLine = Math.max(longestLine, numChars - lineStart);
+    }
+
+    public void newLine() {
+        if (numLines == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, Math.max(16, numLines * 2));
+            lineRuns = Arrays.copyOf(lineRuns, Math.max(16, numLines * 2));
+        }
+        lineStarts[numLines] = numChars;
+        lineRuns[numLines] = numRuns;
+        numLines++;
+    }
+
+    /**
+     * Marks the current line as a collapsed fold.
+     */
+    public Fold addFold(Object key) {
+        Fold fold = new Fold(key, numLines - 1);
+        folds.add(fold);
+        return fold;
+    }
+
+    /**
+     * Gets the fold that starts at a line, or null if there is none.
+     */
+    public Fold getFold(int line) {
+        int low = 0;
+        int high = folds.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int foldLine = folds.get(mid).line;
+            if (foldLine < line) {
+                low = mid + 1;
+            } else if (foldLine > line) {
+                high = mid - 1;
+            } else {
+                return folds.get(mid);
+            }
+        }
+        return null;
+    }
+
+    public List<Fold> getFolds() {
+        return Collections.unmodifiableList(folds);
+    }
+
+    /**
+     * Replaces a collapsed fold with the lines of body.
+     */
+    public void expandFold(Fold fold, LineStore body) {
+        expandFolds(Collections.singletonList(fold), Collections.singletonList(body));
+    }
+
+    /**
+     * Replaces several collapsed folds with their bodies in a single rebuild of the store, so expanding every
+     * fold of a class copies the text once instead of once per fold.
+     *
+     * @param folds Folds of this store, in order of their lines
+     * @param bodies The lines of each fold
+     */
+    public void expandFolds(List<Fold> folds, List<LineStore> bodies) {
+        List<Fold> swapped = new ArrayList<>(folds.size());
+        List<LineStore> replacements = new ArrayList<>(folds.size());
+        for (int i = 0; i < folds.size(); i++) {
+            if (!folds.get(i).expanded) {
+                swapped.add(folds.get(i));
+                replacements.add(bodies.get(i));
+            }
+        }
+        swapFolds(swapped, replacements);
+        for (Fold fold : swapped) {
+            fold.expanded = true;
+        }
+    }
+
+    /**
+     * Puts back the lines that a fold had before it was expanded.
+     */
+    public void collapseFold(Fold fold) {
+        collapseFolds(Collections.singletonList(fold));
+    }
+
+    /**
+     * Collapses several folds in a single rebuild of the store.
+     *
+     * @param folds Folds of this store, in order of their lines
+     */
+    public void collapseFolds(List<Fold> folds) {
+        List<Fold> swapped = new ArrayList<>(folds.size());
+        List<LineStore> replacements = new ArrayList<>(folds.size());
+        for (Fold fold : folds) {
+            if (fold.expanded) {
+                swapped.add(fold);
+                replacements.add(fold.hidden);
+            }
+        }
+        swapFolds(swapped, replacements);
+        for (Fold fold : swapped) {
+            fold.expanded = false;
+        }
+    }
+
+    private void swapFolds(List<Fold> folds, List<LineStore> replacements) {
+        int n = folds.size();
+        if (n == 0) {
+            return;
+        }
+        int[] firsts = new int[n];
+        int[] counts = new int[n];
+        LineStore[] srcs = new LineStore[n];
+        int[] srcFirsts = new int[n];
+        int[] srcCounts = new int[n];
+        LineStore[] current = new LineStore[n];
+        for (int i = 0; i < n; i++) {
+            Fold fold = folds.get(i);
+            firsts[i] = fold.line;
+            counts[i] = fold.length;
+            srcs[i] = replacements.get(i);
+            srcCounts[i] = srcs[i].getLineCount();
+            current[i] = copyLines(fold.line, fold.length);
+        }
+        splice(n, firsts, counts, srcs, srcFirsts, srcCounts);
+        for (int i = 0; i < n; i++) {
+            folds.get(i).length = srcCounts[i];
+            folds.get(i).hidden = current[i];
+        }
+    }
+
+    /**
+     * Copies a range of lines into a new LineStore.  Folds are not copied.
+     */
+    public LineStore copyLines(int first, int count) {
+        LineStore copy = new LineStore();
+        copy.replaceLines(0, 1, this, first, count);
+        return copy;
+    }
+
+    /**
+     * Replaces count lines starting at first with srcCount lines from src.  Folds after the replaced
+     * range are moved to match.
+     */
+    public void replaceLines(int first, int count, LineStore src, int srcFirst, int srcCount) {
+        splice(1, new int[]{first}, new int[]{count}, new LineStore[]{src}, new int[]{srcFirst}, new int[]{srcCount});
+    }
+
+    /**
+     * Replaces n ranges of lines at once, each with a range of lines from another store.  The ranges must be
+     * in order and must not overlap.  The text, runs and lines are each copied into a new array once, with the
+     * unchanged parts between the ranges moved by the size of everything replaced before them.
+     */
+    private void splice(int n, int[] firsts, int[] counts, LineStore[] srcs, int[] srcFirsts, int[] srcCounts) {
+        int totalChars = numChars;
+        int totalRuns = numRuns;
+        int totalLines = numLines;
+        boolean hasLinks = runLinks != null;
+        for (int i = 0; i < n; i++) {
+            int last = firsts[i] + counts[i] - 1;
+            LineStore src = srcs[i];
+            int srcLast = srcFirsts[i] + srcCounts[i] - 1;
+            totalChars += src.getLineEnd(srcLast) - src.lineStarts[srcFirsts[i]] - (getLineEnd(last) - lineStarts[firsts[i]]);
+            totalRuns += src.getEndRun(srcLast) - src.lineRuns[srcFirsts[i]] - (getEndRun(last) - lineRuns[firsts[i]]);
+            totalLines += srcCounts[i] - counts[i];
+            hasLinks |= src.runLinks != null;
+        }
+
+        char[] newChars = new char[totalChars];
+        int[] newRunStarts = new int[totalRuns];
+        byte[] newRunFormats = new byte[totalRuns];
+        Object[] newRunLinks = hasLinks ? new Object[totalRuns] : null;
+        int[] newLineStarts = new int[totalLines];
+        int[] newLineRuns = new int[totalLines];
+
+        //read positions in this store, and write positions in the new arrays
+        int readChar = 0;
+        int readRun = 0;
+        int readLine = 0;
+        int writeChar = 0;
+        int writeRun = 0;
+        int writeLine = 0;
+        for (int i = 0; i <= n; i++) {
+            //the unchanged lines before the next range, or after the last one
+            int endLine = i < n ? firsts[i] : numLines;
+            int endChar = i < n ? lineStarts[endLine] : numChars;
+            int endRun = i < n ? lineRuns[endLine] : numRuns;
+            writeChar = copyRange(this, readChar, endChar, readRun, endRun, readLine, endLine,
+                    newChars, newRunStarts, newRunFormats, newRunLinks, newLineStarts, newLineRuns, writeChar, writeRun, writeLine);
+            writeRun += endRun - readRun;
+            writeLine += endLine - readLine;
+            if (i == n) {
+                break;
+            }
+
+            LineStore src = srcs[i];
+            int srcEndLine = srcFirsts[i] + srcCounts[i];
+            int srcEndChar = src.getLineEnd(srcEndLine - 1);
+            int srcEndRun = src.getEndRun(srcEndLine - 1);
+            int srcChar = src.lineStarts[srcFirsts[i]];
+            int srcRun = src.lineRuns[srcFirsts[i]];
+            writeChar = copyRange(src, srcChar, srcEndChar, srcRun, srcEndRun, srcFirsts[i], srcEndLine,
+                    newChars, newRunStarts, newRunFormats, newRunLinks, newLineStarts, newLineRuns, writeChar, writeRun, writeLine);
+            writeRun += srcEndRun - srcRun;
+            writeLine += srcCounts[i];
+            longestLine = Math.max(longestLine, src.longestLine);
+
+            readLine = firsts[i] + counts[i];
+            readChar = getLineEnd(readLine - 1);
+            readRun = getEndRun(readLine - 1);
+        }
+
+        //folds after a range move by the lines added or removed before them
+        int range = 0;
+        int lineDelta = 0;
+        for (Fold fold : folds) {
+            while (range < n && firsts[range] + counts[range] <= fold.line) {
+                lineDelta += srcCounts[range] - counts[range];
+                range++;
+            }
+            fold.line += lineDelta;
+        }
+
+        chars = newChars;
+        numChars = totalChars;
+        runStarts = newRunStarts;
+        runFormats = newRunFormats;
+        runLinks = newRunLinks;
+        numRuns = totalRuns;
+        lineStarts = newLineStarts;
+        lineRuns = newLineRuns;
+        numLines = totalLines;
+    }
+
+    /**
+     * Copies the characters, runs and lines of a range of a store into new arrays, moving their offsets to
+     * where they are written.
+     *
+     * @return The write position in the characters after the range
+     */
+    private static int copyRange(LineStore from, int charStart, int charEnd, int runStart, int runEnd, int lineStart, int lineEnd,
+                                 char[] chars, int[] runStarts, byte[] runFormats, Object[] runLinks, int[] lineStarts, int[] lineRuns,
+                                 int writeChar, int writeRun, int writeLine) {
+        int charDelta = writeChar - charStart;
+        int runDelta = writeRun - runStart;
+        System.arraycopy(from.chars, charStart, chars, writeChar, charEnd - charStart);
+        for (int run = runStart; run < runEnd; run++) {
+            runStarts[run + runDelta] = from.runStarts[run] + charDelta;
+        }
+        System.arraycopy(from.runFormats, runStart, runFormats, writeRun, runEnd - runStart);
+        if (runLinks != null && from.runLinks != null) {
+            System.arraycopy(from.runLinks, runStart, runLinks, writeRun, runEnd - runStart);
+        }
+        int lineDelta = writeLine - lineStart;
+        for (int line = lineStart; line < lineEnd; line++) {
+            lineStarts[line + lineDelta] = from.lineStarts[line] + charDelta;
+            lineRuns[line + lineDelta] = from.lineRuns[line] + runDelta;
+        }
+        return writeChar + charEnd - charStart;
+    }
+
+    /**
+     * Releases the spare capacity left over from building.
+     */
+    public void trim() {
+        chars = Arrays.copyOf(chars, numChars);
+        lineStarts = Arrays.copyOf(lineStarts, numLines);
+        lineRuns = Arrays.copyOf(lineRuns, numLines);
+        runStarts = Arrays.copyOf(runStarts, numRuns);
+        runFormats = Arrays.copyOf(runFormats, numRuns);
+        if (runLinks != null) {
+            runLinks = Arrays.copyOf(runLinks, numRuns);
+        }
+    }
+
+    public int getLineCount() {
+        return numLines;
+    }
+
+    public int getLongestLine() {
+        return longestLine;
+    }
+
+    public int getLineStart(int line) {
+        return lineStarts[line];
+    }
+
+    public int getLineEnd(int line) {
+        return line + 1 < numLines ? lineStarts[line + 1] : numChars;
+    }
+
+    public String getLine(int line) {
+        int start = getLineStart(line);
+        return new String(chars, start, getLineEnd(line) - start);
+    }
+
+    public int getFirstRun(int line) {
+        return lineRuns[line];
+    }
+
+    public int getEndRun(int line) {
+        return line + 1 < numLines ? lineRuns[line + 1] : numRuns;
+    }
+
+    public int getRunStart(int run) {
+        return runStarts[run];
+    }
+
+    public int getRunEnd(int run) {
+        return run + 1 < numRuns ? runStarts[run + 1] : numChars;
+    }
+
+    public HTMLFormat getRunFormat(int run) {
+        return FORMATS[runFormats[run]];
+    }
+
+    /**
+     * Gets the link target of a run, or null if it isn't a link.
+     */
+    public Object getRunLink(int run) {
+        return runLinks == null ? null : runLinks[run];
+    }
+
+    /**
+     * Gets the link at a column of a line, or null if there is none.
+     */
+    public Object getLinkAt(int line, int column) {
+        if (runLinks == null || line < 0 || line >= numLines || column < 0) {
+            return null;
+        }
+        int offset = lineStarts[line] + column;
+        int endRun = getEndRun(line);
+        for (int run = lineRuns[line]; run < endRun; run++) {
+            if (offset >= runStarts[run] && offset < getRunEnd(run)) {
+                return runLinks[run];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the backing character array.  Must not be modified.
+     */
+    public char[] getChars() {
+        return chars;
+    }
+
+    /**
+     * Gets a rough estimate of the memory used by this store, in bytes.
+     */
+    public long estimateSize() {
+        long size = chars.length * 2L + lineStarts.length * 8L + runStarts.length * 5L;
+        if (runLinks != null) {
+            size += runLinks.length * 4L;
+        }
+        for (Fold fold : folds) {
+            if (fold.hidden != null) {
+                size += fold.hidden.estimateSize();
+            }
+        }
+        return size;
+    }
+
+    private void ensureChars(int size) {
+        if (size > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(size, chars.length * 2));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package net.acomputerdog.ce2.disassembler.styled;
+
+import net.acomputerdog.ce2.disassembler.CodeBuilder;
+import net.acomputerdog.ce2.disassembler.Reference;
+import net.acomputerdog.ce2.disassembler.html.HTMLFormat;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.DefaultStyledDocument.ElementSpec;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CodeBuilder that produces a StyledDocument directly.  Runs are collected as element specs and loaded
+ * into the document in one go, so there is no HTML to generate or parse.
+ */
+public class StyledBuilder extends CodeBuilder {
+    /**
+     * Attribute holding the Reference of a link.
+     */
+    public static final Object LINK_ATTRIBUTE = new Object() {
+        @Override
+        public String toString() {
+            return "link";
+        }
+    };
+
+    private static final Map<HTMLFormat, AttributeSet> FORMAT_ATTRIBUTES = new EnumMap<>(HTMLFormat.class);
+    private static final AttributeSet PARAGRAPH_ATTRIBUTES;
+
+    static {
+        for (HTMLFormat format : HTMLFormat.values()) {
+            SimpleAttributeSet attrs = new SimpleAttributeSet();
+            StyleConstants.setForeground(attrs, format.getColor());
+            StyleConstants.setItalic(attrs, format.isItalic());
+            FORMAT_ATTRIBUTES.put(format, attrs.copyAttributes());
+        }
+        SimpleAttributeSet paragraph = new SimpleAttributeSet();
+        StyleConstants.setFontFamily(paragraph, Font.MONOSPACED);
+        StyleConstants.setFontSize(paragraph, 12);
+        PARAGRAPH_ATTRIBUTES = paragraph.copyAttributes();
+    }
+
+    private final StringBuilder text = new StringBuilder();
+    //format ordinal and end offset of each run, a format of -1 marks a line break
+    private int[] runFormats = new int[256];
+    private int[] runEnds = new int[256];
+    private int numRuns = 0;
+    private Reference[] runLinks = new Reference[256];
+    private Reference currLink = null;
+
+    public static AttributeSet getAttributes(HTMLFormat format) {
+        return FORMAT_ATTRIBUTES.get(format);
+    }
+
+    @Override
+    protected void formatChanged(HTMLFormat from, HTMLFormat to) {
+        endRun(from);
+    }
+
+    @Override
+    protected void writeText(String str) {
+        text.append(str.replace("\n", "\\n"));
+    }
+
+    @Override
+    protected void startLink(Reference target) {
+        endRun(getFormat());
+        currLink = target;
+    }
+
+    @Override
+    protected void endLink() {
+        endRun(getFormat());
+        currLink = null;
+    }
+
+    @Override
+    protected void writeLineBreak() {
+        endRun(getFormat());
+        text.append('\n');
+        addRun(-1);
+    }
+
+    private void endRun(HTMLFormat format) {
+        int start = numRuns == 0 ? 0 : runEnds[numRuns - 1];
+        if (text.length() > start) {
+            addRun(format.ordinal());
+        }
+    }
+
+    private void addRun(int format) {
+        if (numRuns == runEnds.length) {
+            runFormats = Arrays.copyOf(runFormats, numRuns * 2);
+            runEnds = Arrays.copyOf(runEnds, numRuns * 2);
+            runLinks = Arrays.copyOf(runLinks, numRuns * 2);
+        }
+        runLinks[numRuns] = format == -1 ? null : currLink;
+        runFormats[numRuns] = format;
+        runEnds[numRuns] = text.length();
+        numRuns++;
+    }
+
+    public DefaultStyledDocument createDocument() {
+        endRun(getFormat());
+
+        char[] chars = new char[text.length()];
+        text.getChars(0, chars.length, chars, 0);
+        HTMLFormat[] formats = HTMLFormat.values();
+
+        List<ElementSpec> specs = new ArrayList<>(numRuns * 2 + 3);
+        //the first spec describes the root element, everything after it is added below the root
+        specs.add(new ElementSpec(SimpleAttributeSet.EMPTY, ElementSpec.StartTagType));
+        specs.add(new ElementSpec(PARAGRAPH_ATTRIBUTES, ElementSpec.StartTagType));
+        int start = 0;
+        for (int run = 0; run < numRuns; run++) {
+            int end = runEnds[run];
+            if (runFormats[run] == -1) {
+                specs.add(new ElementSpec(FORMAT_ATTRIBUTES.get(HTMLFormat.TEXT), ElementSpec.ContentType, chars, start, end - start));
+                specs.add(new ElementSpec(PARAGRAPH_ATTRIBUTES, ElementSpec.EndTagType));
+                specs.add(new ElementSpec(PARAGRAPH_ATTRIBUTES, ElementSpec.StartTagType));
+            } else if (runLinks[run] != null) {
+                specs.add(new ElementSpec(createLinkAttributes(formats[runFormats[run]], runLinks[run]), ElementSpec.ContentType, chars, start, end - start));
+            } else {
+                specs.add(new ElementSpec(FORMAT_ATTRIBUTES.get(formats[runFormats[run]]), ElementSpec.ContentType, chars, start, end - start));
+            }
+            start = end;
+        }
+        specs.add(new ElementSpec(PARAGRAPH_ATTRIBUTES, ElementSpec.EndTagType));
+
+        DisassemblyDocument doc = new DisassemblyDocument();
+        doc.load(specs.toArray(new ElementSpec[specs.size()]));
+        return doc;
+    }
+
+    private static AttributeSet createLinkAttributes(HTMLFormat format, Reference link) {
+        SimpleAttributeSet attrs = new SimpleAttributeSet(FORMAT_ATTRIBUTES.get(format));
+        StyleConstants.setUnderline(attrs, true);
+        attrs.addAttribute(LINK_ATTRIBUTE, link);
+        return attrs;
+    }
+
+    private static class DisassemblyDocument extends DefaultStyledDocument {
+        private void load(ElementSpec[] specs) {
+            create(specs);
+        }
+    }
+}
@@ -1,28 +1,70 @@
 package net.acomputerdog.ce2.gui;
 
 import javassist.*;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.MethodInfo;
+import net.acomputerdog.ce2.disassembler.CodeBuilder;
 import net.acomputerdog.ce2.disassembler.Disassembler;
+import net.acomputerdog.ce2.disassembler.Disassembly;
+import net.acomputerdog.ce2.disassembler.Reference;
+import net.acomputerdog.ce2.disassembler.lines.Fold;
+import net.acomputerdog.ce2.disassembler.lines.LineBuilder;
+import net.acomputerdog.ce2.disassembler.lines.LineStore;
+import net.acomputerdog.ce2.disassembler.styled.StyledBuilder;
+import net.acomputerdog.ce2.index.ClassPathIndex;
+import net.acomputerdog.ce2.index.HierarchyIndex;
+import net.acomputerdog.ce2.index.XRefIndex;
+import net.acomputerdog.ce2.metrics.Metrics;
 
 import javax.swing.*;
-import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.StyledDocument;
 import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreePath;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
 
 public class ClassViewPanel extends JSplitPane {
+    //classes estimated to have more lines than this are shown in the virtualized viewer instead of a text pane
+    private static final int MAX_STYLED_LINES = 10000;
+
     private final CtClass cls;
 
     private final JTree structureTree;
     private final DefaultTreeModel structureModel;
     private final DefaultMutableTreeNode structureRoot;
 
-    private final JEditorPane disPane;
+    private final JScrollPane disScroll;
+    private final JTextPane disPane;
+    private final LineViewer disView;
     private final Disassembler disassembler;
-    //private Disassembly lastDisassembly;
+    private final ClassPathIndex index;
+    private final Consumer<Reference> linkHandler;
+    //decoded method bodies for the outline view
+    private final Map<MethodInfo, Body> bodyCache = new WeakHashMap<>();
+    private Disassembly disassembly = new Disassembly();
+    private boolean loaded = false;
 
-    public ClassViewPanel(CtClass cls, Disassembler disassembler) {
+    public ClassViewPanel(CtClass cls, Disassembler disassembler, ClassPathIndex index, Consumer<Reference> linkHandler) {
         super();
         this.cls = cls;
         this.disassembler = disassembler;
+        this.index = index;
+        this.linkHandler = linkHandler;
 
         super.setDividerSize(7);
 
@@ -30,12 +72,100 @@ public class ClassViewPanel extends JSplitPane {
         structureModel = new DefaultTreeModel(structureRoot);
         structureTree = new JTree();
         structureTree.setModel(structureModel);
-        disPane = new JEditorPane();
+        structureTree.addTreeWillExpandListener(new TreeWillExpandListener() {
+            @Override
+            public void treeWillExpand(TreeExpansionEvent event) {
+                Object node = event.getPath().getLastPathComponent();
+                if (node instanceof LazyNode) {
+                    LazyNode lazy = (LazyNode) node;
+                    if (!lazy.loaded) {
+                        lazy.removeAllChildren();
+                        lazy.loaded = lazy.load();
+                        structureModel.nodeStructureChanged(lazy);
+                    }
+                }
+            }
+
+            @Override
+            public void treeWillCollapse(TreeExpansionEvent event) {
+
+            }
+        });
+        structureTree.addTreeSelectionListener(e -> {
+            DefaultMutableTreeNode node = (DefaultMutableTreeNode) structureTree.getLastSelectedPathComponent();
+            if (node != null && node.getUserObject() instanceof MemberItem) {
+                MemberItem item = (MemberItem) node.getUserObject();
+                if (item.className.equals(this.cls.getName())) {
+                    showMember(item.key);
+                }
+            }
+        });
+        structureTree.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                showStructurePopup(e);
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && SwingUtilities.isLeftMouseButton(e)) {
+                    TreePath path = structureTree.getPathForLocation(e.getX(), e.getY());
+                    Object node = path == null ? null : path.getLastPathComponent();
+                    if (node instanceof SubtypesNode && ((SubtypesNode) node).getParent() instanceof SubtypesNode) {
+                        linkHandler.accept(new Reference(((SubtypesNode) node).className));
+                    }
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                showStructurePopup(e);
+            }
+        });
+        disPane = new JTextPane() {
+            @Override
+            public boolean getScrollableTracksViewportWidth() {
+                //don't wrap lines
+                return getParent().getWidth() > getUI().getPreferredSize(this).width;
+            }
+        };
         disPane.setEditable(false);
-        disPane.setEditorKit(new HTMLEditorKit());
+        disPane.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                Reference link = getLinkAt(e.getPoint());
+                if (link != null && SwingUtilities.isLeftMouseButton(e)) {
+                    linkHandler.accept(link);
+                }
+            }
+        });
+        disPane.addMouseMotionListener(new MouseAdapter() {
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                boolean overLink = getLinkAt(e.getPoint()) != null;
+                disPane.setCursor(Cursor.getPredefinedCursor(overLink ? Cursor.HAND_CURSOR : Cursor.TEXT_CURSOR));
+            }
+        });
+        disView = new LineViewer();
+        disView.setLinkHandler(linkHandler);
+        disView.setFoldHandler(new LineViewer.FoldHandler() {
+            @Override
+            public LineStore expand(Object key) {
+                MethodInfo info = (MethodInfo) key;
+                Body body = decodeBody(info);
+                disassembly.copyInstructions(Disassembly.memberKey(info), body.offsets);
+                return body.lines;
+            }
+
+            @Override
+            public void foldChanged(Fold fold, int oldLength) {
+                disassembly.moveLines(fold.getLine(), fold.getLength() - oldLength);
+            }
+        });
+        disScroll = new JScrollPane();
 
         super.setLeftComponent(new JScrollPane(structureTree));
-        super.setRightComponent(new JScrollPane(disPane));
+        super.setRightComponent(disScroll);
 
         rebuildStructure();
         disassemble();
@@ -85,18 +215,24 @@ public class ClassViewPanel extends JSplitPane {
         root.add(methods);
         root.add(classes);
 
-        for (CtField field : cls.getFields()) {
-            fields.add(new DefaultMutableTreeNode(field.getName()));
+        //only declared members, so that opening a class doesn't resolve the whole hierarchy
+        for (CtField field : cls.getDeclaredFields()) {
+            fields.add(new DefaultMutableTreeNode(new MemberItem(cls, field)));
         }
 
-        for (CtConstructor con : cls.getConstructors()) {
-            cons.add(new DefaultMutableTreeNode(con.getName()));
+        for (CtConstructor con : cls.getDeclaredConstructors()) {
+            cons.add(new DefaultMutableTreeNode(new MemberItem(cls, con)));
         }
 
-        for (CtMethod method : cls.getMethods()) {
-            methods.add(new DefaultMutableTreeNode(method.getName()));
+        for (CtMethod method : cls.getDeclaredMethods()) {
+            methods.add(new DefaultMutableTreeNode(new MemberItem(cls, method)));
         }
 
+        //inherited members are only looked up when the node is expanded
+        root.add(new InheritedNode(cls));
+        //subclasses and implementors come from the classpath index
+        root.add(new SubtypesNode("subtypes", cls.getName()));
+
         try {
             for (CtClass inner : cls.getNestedClasses()) {
                 DefaultMutableTreeNode node = new DefaultMutableTreeNode(inner.getSimpleName());
@@ -120,25 +256,415 @@ public class ClassViewPanel extends JSplitPane {
     }
 
     private void disassemble() {
+        boolean large = estimateLines(cls) > MAX_STYLED_LINES;
+        CodeBuilder builder = large ? createOutlineBuilder() : new StyledBuilder();
         try {
-            disPane.setText(disassembler.disassembleClass(cls));
+            disassembler.disassembleClass(cls, builder);
         } catch (Exception e) {
             System.err.println("Exception disassembling!");
             e.printStackTrace();
 
-            StringBuilder builder = new StringBuilder();
-            builder.append("<font color='red'>An internal exception occurred while disassembling this class!");
-            builder.append("<br>");
-            builder.append(e.getClass().getName());
-            builder.append(": ");
-            builder.append(e.getMessage());
+            builder = large ? new LineBuilder() : new StyledBuilder();
+            builder.addBytecode("An internal exception occurred while disassembling this class!");
+            builder.newLine();
+            builder.addBytecode(e.getClass().getName());
+            builder.addBytecode(": ");
+            builder.addBytecode(String.valueOf(e.getMessage()));
             for (StackTraceElement el : e.getStackTrace()) {
-                builder.append("<br>");
-                builder.append(el.toString());
+                builder.newLine();
+                builder.addBytecode(el.toString());
+            }
+        }
+
+        disassembly = builder.getDisassembly();
+        loaded = true;
+        if (large) {
+            LineBuilder lines = (LineBuilder) builder;
+            lines.getLines().trim();
+            disView.setLines(lines.getLines());
+            disScroll.setViewportView(disView);
+        } else {
+            disPane.setDocument(((StyledBuilder) builder).createDocument());
+            disPane.setCaretPosition(0);
+            disScroll.setViewportView(disPane);
+        }
+    }
+
+    //large classes only get their method signatures, bodies are decoded when expanded
+    private static LineBuilder createOutlineBuilder() {
+        LineBuilder builder = new LineBuilder();
+        builder.setDeferBodies(true);
+        return builder;
+    }
+
+    private Body decodeBody(MethodInfo info) {
+        Body body = bodyCache.get(info);
+        Metrics.get().recordCache(Metrics.Cache.BODY, body != null);
+        if (body == null) {
+            LineBuilder builder = new LineBuilder();
+            try {
+                disassembler.disassembleBody(info, builder);
+            } catch (Exception e) {
+                System.err.println("Exception disassembling method: " + info.getName());
+                e.printStackTrace();
+                builder.newLine();
+                builder.addBytecode("Exception occurred disassembling this method!");
+                builder.newLine();
+            }
+            LineStore lines = builder.getLines();
+            //the first and last lines are part of the method declaration, which is already shown
+            body = new Body(lines.copyLines(1, Math.max(1, lines.getLineCount() - 2)), builder.getDisassembly());
+            bodyCache.put(info, body);
+        }
+        return body;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Disassembles the class again if the rendered content was dropped by unload().
+     */
+    public void ensureLoaded() {
+        if (!loaded) {
+            disassemble();
+        }
+    }
+
+    /**
+     * Drops the rendered disassembly to free memory.  The structure tree is kept.
+     */
+    public void unload() {
+        loaded = false;
+        bodyCache.clear();
+        disassembly = new Disassembly();
+        disView.setLines(new LineStore());
+        disPane.setDocument(new DefaultStyledDocument());
+        disScroll.setViewportView(null);
+    }
+
+    /**
+     * Gets a rough estimate of the memory used by the rendered disassembly, in bytes.
+     */
+    public long estimateSize() {
+        if (!loaded) {
+            return 0;
+        }
+        if (disScroll.getViewport().getView() == disView) {
+            long size = disView.getLines().estimateSize();
+            for (Body body : bodyCache.values()) {
+                size += body.lines.estimateSize();
+            }
+            return size;
+        }
+        //characters plus element and attribute overhead for each line
+        Document doc = disPane.getDocument();
+        return doc.getLength() * 2L + doc.getDefaultRootElement().getElementCount() * 512L;
+    }
+
+    public CtClass getCtClass() {
+        return cls;
+    }
+
+    private Reference getLinkAt(Point point) {
+        int pos = disPane.viewToModel(point);
+        if (pos < 0) {
+            return null;
+        }
+        try {
+            //viewToModel() gives the closest position, make sure the point is actually on that character
+            Rectangle start = disPane.modelToView(pos);
+            Rectangle end = disPane.modelToView(Math.min(pos + 1, disPane.getDocument().getLength()));
+            if (start == null || end == null || point.x < start.x || (end.y == start.y && point.x > end.x)) {
+                return null;
+            }
+        } catch (BadLocationException e) {
+            return null;
+        }
+        Element element = ((StyledDocument) disPane.getDocument()).getCharacterElement(pos);
+        Object link = element.getAttributes().getAttribute(StyledBuilder.LINK_ATTRIBUTE);
+        return link instanceof Reference ? (Reference) link : null;
+    }
+
+    private void showStructurePopup(MouseEvent e) {
+        if (!e.isPopupTrigger()) {
+            return;
+        }
+        TreePath path = structureTree.getPathForLocation(e.getX(), e.getY());
+        if (path == null) {
+            return;
+        }
+        structureTree.setSelectionPath(path);
+        DefaultMutableTreeNode node = (DefaultMutableTreeNode) path.getLastPathComponent();
+
+        JPopupMenu popup = new JPopupMenu();
+        if (node.getUserObject() instanceof MemberItem) {
+            MemberItem item = (MemberItem) node.getUserObject();
+            JMenuItem usages = new JMenuItem("Find usages");
+            usages.addActionListener(e2 -> findUsages(item.className, item.key, "Usages of " + item.display));
+            popup.add(usages);
+            if (item.method != null && item.method.getCodeAttribute() != null) {
+                JMenuItem controlFlow = new JMenuItem("Show control flow");
+                controlFlow.addActionListener(e2 -> ControlFlowFrame.show(this,
+                        item.className.substring(item.className.lastIndexOf('.') + 1) + "." + item.display,
+                        item.method, disassembler, linkHandler));
+                popup.add(controlFlow);
+            }
+        } else if (node == structureRoot) {
+            JMenuItem instantiations = new JMenuItem("Find instantiations");
+            instantiations.addActionListener(e2 -> findUsages(cls.getName(), null, "Instantiations of " + cls.getSimpleName()));
+            popup.add(instantiations);
+            JMenuItem subtypes = new JMenuItem("Find all subtypes");
+            subtypes.addActionListener(e2 -> findSubtypes());
+            popup.add(subtypes);
+        } else {
+            return;
+        }
+        popup.show(structureTree, e.getX(), e.getY());
+    }
+
+    private void findUsages(String className, String memberKey, String title) {
+        XRefIndex xrefs = index.getXRefs();
+        if (xrefs == null) {
+            JOptionPane.showMessageDialog(this, "The classpath is still being indexed, try again in a moment.");
+            return;
+        }
+        List<XRefIndex.XRef> refs = memberKey == null ? xrefs.findInstantiations(className) : xrefs.findReferences(className, memberKey);
+
+        SearchResultsDialog dialog = new SearchResultsDialog(SwingUtilities.getWindowAncestor(this), title, linkHandler);
+        for (XRefIndex.XRef ref : refs) {
+            dialog.addResult(ref.toString(), ref.toReference());
+        }
+        dialog.setStatus(refs.size() + " results.");
+        dialog.setVisible(true);
+    }
+
+    private void findSubtypes() {
+        HierarchyIndex hierarchy = index.getHierarchy();
+        if (hierarchy == null) {
+            JOptionPane.showMessageDialog(this, "The classpath is still being indexed, try again in a moment.");
+            return;
+        }
+        List<HierarchyIndex.Subtype> subtypes = hierarchy.getAllSubtypes(cls.getName());
+
+        SearchResultsDialog dialog = new SearchResultsDialog(SwingUtilities.getWindowAncestor(this), "Subtypes of " + cls.getSimpleName(), linkHandler);
+        for (HierarchyIndex.Subtype subtype : subtypes) {
+            StringBuilder display = new StringBuilder();
+            for (int i = 1; i < subtype.getDepth(); i++) {
+                display.append("    ");
+            }
+            display.append(subtype);
+            dialog.addResult(display.toString(), new Reference(subtype.getName()));
+        }
+        dialog.setStatus(subtypes.size() + " results.");
+        dialog.setVisible(true);
+    }
+
+    /**
+     * Scrolls the disassembly to a member.  Does nothing if the member isn't part of this class.
+     */
+    public void showMember(String key) {
+        int line = disassembly.getMemberLine(key);
+        if (line != -1) {
+            if (disScroll.getViewport().getView() == disView) {
+                //body starts on the line after the declaration
+                Fold fold = disView.getLines().getFold(line + 1);
+                if (fold != null && !fold.isExpanded()) {
+                    disView.toggleFold(fold);
+                }
+            }
+            showLine(line);
+        }
+    }
+
+    /**
+     * Scrolls the disassembly to the instruction at a bytecode offset in a member.
+     */
+    public void showInstruction(String key, int offset) {
+        showMember(key);
+        int line = disassembly.getInstructionLine(key, offset);
+        if (line != -1) {
+            showLine(line);
+        }
+    }
+
+    public void showLine(int line) {
+        if (disScroll.getViewport().getView() == disView) {
+            disView.scrollToLine(line);
+        } else {
+            Element root = disPane.getDocument().getDefaultRootElement();
+            if (line < root.getElementCount()) {
+                int offset = root.getElement(line).getStartOffset();
+                try {
+                    Rectangle start = disPane.modelToView(offset);
+                    if (start != null) {
+                        Rectangle visible = disPane.getVisibleRect();
+                        disPane.scrollRectToVisible(new Rectangle(0, start.y, 1, Math.max(start.height, visible.height - start.height)));
+                    }
+                    disPane.setCaretPosition(offset);
+                } catch (BadLocationException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Estimates the number of lines in the disassembly of a class, counting members as well as code, since a
+     * class with many fields or abstract methods can be long without having much code.
+     */
+    private static long estimateLines(CtClass cls) {
+        ClassFile file = cls.getClassFile2();
+        //a line per field, and a declaration, closing brace and blank line per method
+        long lines = file.getFields().size() + file.getMethods().size() * 3L;
+        for (Object obj : file.getMethods()) {
+            CodeAttribute code = ((MethodInfo) obj).getCodeAttribute();
+            if (code != null) {
+                //about a line per two bytes of code, counting labels
+                lines += code.getCodeLength() / 2;
+            }
+        }
+        return lines;
+    }
+
+    private static class Body {
+        private final LineStore lines;
+        private final Disassembly offsets;
+
+        private Body(LineStore lines, Disassembly offsets) {
+            this.lines = lines;
+            this.offsets = offsets;
+        }
+    }
+
+    private static class MemberItem {
+        private final String className;
+        private final String key;
+        private final String display;
+        //null for fields
+        private final MethodInfo method;
+
+        private MemberItem(CtClass owner, CtField field) {
+            this.className = owner.getName();
+            this.key = Disassembly.memberKey(field.getName(), field.getFieldInfo2().getDescriptor());
+            this.display = field.getName();
+            this.method = null;
+        }
+
+        private MemberItem(CtClass owner, CtBehavior behavior) {
+            this.className = owner.getName();
+            this.key = Disassembly.memberKey(behavior.getMethodInfo2());
+            this.display = behavior.getName();
+            this.method = behavior.getMethodInfo2();
+        }
+
+        @Override
+        public String toString() {
+            return display;
+        }
+    }
+
+    /**
+     * A tree node whose children are only looked up the first time it is expanded.
+     */
+    private static abstract class LazyNode extends DefaultMutableTreeNode {
+        private boolean loaded = false;
+
+        private LazyNode(Object userObject) {
+            super(userObject);
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return loaded && getChildCount() == 0;
+        }
+
+        /**
+         * Adds this node's children.  Returns false if they couldn't be found yet, so that the next expansion tries again.
+         */
+        protected abstract boolean load();
+    }
+
+    private class SubtypesNode extends LazyNode {
+        private final String className;
+
+        private SubtypesNode(String display, String className) {
+            super(display);
+            this.className = className;
+        }
+
+        @Override
+        protected boolean load() {
+            HierarchyIndex hierarchy = index.getHierarchy();
+            if (hierarchy == null) {
+                add(new DefaultMutableTreeNode("(classpath is still being indexed)"));
+                return false;
+            }
+            for (HierarchyIndex.Subtype subtype : hierarchy.getDirectSubtypes(className)) {
+                String display = subtype.isImplementor() ? subtype.getName() + " (implements)" : subtype.getName();
+                add(new SubtypesNode(display, subtype.getName()));
+            }
+            return true;
+        }
+    }
+
+    private static class InheritedNode extends LazyNode {
+        private final CtClass cls;
+
+        private InheritedNode(CtClass cls) {
+            super("inherited");
+            this.cls = cls;
+        }
+
+        @Override
+        protected boolean load() {
+            Set<String> seen = new HashSet<>();
+            for (CtField field : cls.getDeclaredFields()) {
+                seen.add(field.getName());
+            }
+            for (CtMethod method : cls.getDeclaredMethods()) {
+                seen.add(method.getName() + method.getSignature());
+            }
+
+            Set<String> visited = new HashSet<>();
+            try {
+                addSuperclass(cls.getSuperclass(), seen, visited);
+            } catch (NotFoundException ignored) {}
+            try {
+                for (CtClass face : cls.getInterfaces()) {
+                    addSuperclass(face, seen, visited);
+                }
+            } catch (NotFoundException ignored) {}
+            return true;
+        }
+
+        private void addSuperclass(CtClass parent, Set<String> seen, Set<String> visited) {
+            if (parent == null || !visited.add(parent.getName())) {
+                return;
+            }
+
+            DefaultMutableTreeNode node = new DefaultMutableTreeNode(parent.getName());
+            for (CtField field : parent.getDeclaredFields()) {
+                if (!Modifier.isPrivate(field.getModifiers()) && seen.add(field.getName())) {
+                    node.add(new DefaultMutableTreeNode(new MemberItem(parent, field)));
+                }
+            }
+            for (CtMethod method : parent.getDeclaredMethods()) {
+                if (!Modifier.isPrivate(method.getModifiers()) && seen.add(method.getName() + method.getSignature())) {
+                    node.add(new DefaultMutableTreeNode(new MemberItem(parent, method)));
+                }
+            }
+            if (node.getChildCount() > 0) {
+                add(node);
             }
-            builder.append("</font>");
 
-            disPane.setText(builder.toString());
+            try {
+                addSuperclass(parent.getSuperclass(), seen, visited);
+            } catch (NotFoundException ignored) {}
+            try {
+                for (CtClass face : parent.getInterfaces()) {
+                    addSuperclass(face, seen, visited);
+                }
+            } catch (NotFoundException ignored) {}
         }
     }
 }
@@ -0,0 +1,94 @@
+package net.acomputerdog.ce2.gui;
+
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.MethodInfo;
+import net.acomputerdog.ce2.cfg.ControlFlowGraph;
+import net.acomputerdog.ce2.disassembler.Disassembler;
+import net.acomputerdog.ce2.disassembler.Reference;
+import net.acomputerdog.ce2.disassembler.lines.LineBuilder;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.Consumer;
+
+/**
+ * Shows the code of a method split into its basic blocks, with the edges and loop of each block, and exports
+ * the control flow graph as a DOT file.
+ */
+public class ControlFlowFrame extends JFrame {
+    private final String name;
+    private final ControlFlowGraph cfg;
+
+    private ControlFlowFrame(String name, MethodInfo info, ControlFlowGraph cfg, long time, Disassembler disassembler, Consumer<Reference> linkHandler) {
+        super("Control flow of " + name);
+        super.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        super.setMinimumSize(new Dimension(800, 500));
+        this.name = name;
+        this.cfg = cfg;
+
+        LineBuilder builder = new LineBuilder();
+        disassembler.disassembleBlocks(info, cfg, builder);
+        LineViewer view = new LineViewer();
+        view.setLinkHandler(linkHandler);
+        view.setLines(builder.getLines());
+
+        JButton export = new JButton("Export DOT...");
+        export.addActionListener(e -> exportDot());
+        JLabel statusLabel = new JLabel(cfg.getBlockCount() + " blocks, " + cfg.getEdgeCount() + " edges, "
+                + cfg.getLoopCount() + " loops, " + cfg.getCodeLength() + " bytes (built in " + time + " ms).");
+
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.add(statusLabel, BorderLayout.CENTER);
+        bottom.add(export, BorderLayout.EAST);
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(new JScrollPane(view), BorderLayout.CENTER);
+        panel.add(bottom, BorderLayout.SOUTH);
+        super.setContentPane(panel);
+        super.pack();
+    }
+
+    /**
+     * Builds the control flow graph of a method and opens a window with it.
+     *
+     * @param name Name of the method to show in the title and DOT file
+     */
+    public static void show(Component parent, String name, MethodInfo info, Disassembler disassembler, Consumer<Reference> linkHandler) {
+        long start = System.nanoTime();
+        ControlFlowGraph cfg;
+        try {
+            cfg = ControlFlowGraph.build(info);
+        } catch (BadBytecode e) {
+            JOptionPane.showMessageDialog(parent, "Unable to build the control flow graph: " + e.getMessage());
+            return;
+        }
+        if (cfg == null) {
+            JOptionPane.showMessageDialog(parent, name + " has no code.");
+            return;
+        }
+        long time = (System.nanoTime() - start) / 1000000;
+        ControlFlowFrame frame = new ControlFlowFrame(name, info, cfg, time, disassembler, linkHandler);
+        frame.setLocationRelativeTo(parent);
+        frame.setVisible(true);
+    }
+
+    private void exportDot() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export DOT graph");
+        chooser.setFileFilter(new FileNameExtensionFilter("DOT files", "dot", "gv"));
+        chooser.setSelectedFile(new File(name.replaceAll("[^A-Za-z0-9_.$-]", "_") + ".dot"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        try {
+            Files.write(file.toPath(), cfg.toDot(name).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Unable to write " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package net.acomputerdog.ce2.gui;
+
+import net.acomputerdog.ce2.diff.ClassDiff;
+import net.acomputerdog.ce2.diff.JarDiff;
+import net.acomputerdog.ce2.diff.LineDiff;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Shows the result of a JarDiff: the added, removed and changed classes, and the disassembly of the selected
+ * class side by side.  Classes are listed as they are diffed.
+ */
+public class DiffFrame extends JFrame {
+    private static final Color REMOVED_COLOR = new Color(255, 220, 220);
+    private static final Color ADDED_COLOR = new Color(220, 255, 220);
+    private static final Color CHANGED_COLOR = new Color(255, 245, 200);
+    private static final Color GAP_COLOR = new Color(235, 235, 235);
+
+    private final JarDiff diff;
+    private final DefaultListModel<ClassDiff> classesModel;
+    private final JTable linesTable;
+    private final JLabel statusLabel;
+    //diffs the selected class in the background
+    private SwingWorker<LineDiff, Void> linesWorker;
+
+    public DiffFrame(File left, File right, boolean ignoreDebug) {
+        super("Diff: " + left.getName() + " -> " + right.getName());
+        super.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        super.setMinimumSize(new Dimension(900, 600));
+
+        diff = new JarDiff(left, right, ignoreDebug);
+
+        classesModel = new DefaultListModel<>();
+        JList<ClassDiff> classesList = new JList<>(classesModel);
+        classesList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        classesList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting() && classesList.getSelectedValue() != null) {
+                showClass(classesList.getSelectedValue());
+            }
+        });
+
+        linesTable = new JTable(new LinesModel(null));
+        linesTable.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        linesTable.setShowGrid(false);
+        linesTable.setIntercellSpacing(new Dimension(0, 0));
+        linesTable.setDefaultRenderer(Object.class, new LineRenderer());
+        linesTable.setAutoResizeMode(JTable.AUTO_RESIZE_ALL_COLUMNS);
+
+        statusLabel = new JLabel("Comparing...");
+
+        JSplitPane split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, new JScrollPane(classesList), new JScrollPane(linesTable));
+        split.setDividerSize(7);
+        split.setDividerLocation(250);
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(split, BorderLayout.CENTER);
+        panel.add(statusLabel, BorderLayout.SOUTH);
+        super.setContentPane(panel);
+
+        super.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                diff.cancel();
+            }
+        });
+        super.pack();
+    }
+
+    /**
+     * Runs the diff in the background.
+     */
+    public void start() {
+        Thread thread = new Thread(() -> {
+            diff.run(cls -> SwingUtilities.invokeLater(() -> classesModel.addElement(cls)));
+            SwingUtilities.invokeLater(() -> statusLabel.setText(classesModel.getSize() + " classes differ, "
+                    + diff.getIdenticalCount() + " are the same (" + diff.getComparedCount() + " disassembled)."));
+        }, "CE2 diff");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void showClass(ClassDiff cls) {
+        if (linesWorker != null) {
+            linesWorker.cancel(false);
+        }
+        setLines(null);
+        SwingWorker<LineDiff, Void> worker = new SwingWorker<LineDiff, Void>() {
+            @Override
+            protected LineDiff doInBackground() {
+                return diff.getLines(cls);
+            }
+
+            @Override
+            protected void done() {
+                //a newer selection replaced this one
+                if (isCancelled() || linesWorker != this) {
+                    return;
+                }
+                try {
+                    setLines(get());
+                } catch (InterruptedException | ExecutionException e) {
+                    JOptionPane.showMessageDialog(DiffFrame.this, "Unable to diff " + cls.getClassName() + ": " + e.getCause());
+                }
+            }
+        };
+        linesWorker = worker;
+        worker.execute();
+    }
+
+    private void setLines(LineDiff lines) {
+        linesTable.setModel(new LinesModel(lines));
+        //line number columns
+        for (int col = 0; col < 4; col += 2) {
+            linesTable.getColumnModel().getColumn(col).setMaxWidth(60);
+            linesTable.getColumnModel().getColumn(col).setPreferredWidth(50);
+        }
+    }
+
+    private static class LinesModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"", "Old", "", "New"};
+
+        private final LineDiff lines;
+
+        private LinesModel(LineDiff lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public int getRowCount() {
+            return lines == null ? 0 : lines.getRowCount();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            switch (column) {
+                case 0:
+                    return lines.getLeftLine(row) == -1 ? "" : String.valueOf(lines.getLeftLine(row) + 1);
+                case 1:
+                    return lines.getLeft(row);
+                case 2:
+                    return lines.getRightLine(row) == -1 ? "" : String.valueOf(lines.getRightLine(row) + 1);
+                default:
+                    return lines.getRight(row);
+            }
+        }
+    }
+
+    private static class LineRenderer extends DefaultTableCellRenderer {
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
+            super.getTableCellRendererComponent(table, value, isSelected, false, row, column);
+            LineDiff lines = ((LinesModel) table.getModel()).lines;
+            boolean leftSide = column < 2;
+            if (!isSelected) {
+                if (lines.isSame(row)) {
+                    setBackground(table.getBackground());
+                } else if ((leftSide ? lines.getLeftLine(row) : lines.getRightLine(row)) == -1) {
+                    setBackground(GAP_COLOR);
+                } else if (lines.getLeftLine(row) == -1) {
+                    setBackground(ADDED_COLOR);
+                } else if (lines.getRightLine(row) == -1) {
+                    setBackground(REMOVED_COLOR);
+                } else {
+                    setBackground(CHANGED_COLOR);
+                }
+            }
+            setForeground(column % 2 == 0 ? Color.GRAY : table.getForeground());
+            return this;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package net.acomputerdog.ce2.gui;
+
+import net.acomputerdog.ce2.disassembler.Reference;
+import net.acomputerdog.ce2.index.NameIndex;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Turns a text field into a "go to class or member" box.  Matches are listed in a popup under the field as the
+ * name is typed, and each keystroke narrows down the previous matches instead of searching again.
+ */
+public class GoToPopup {
+    private static final int MAX_SHOWN = 50;
+
+    private final JTextField field;
+    private final Supplier<NameIndex> names;
+    private final Consumer<Reference> linkHandler;
+
+    private final JPopupMenu popup;
+    private final DefaultListModel<Object> listModel;
+    private final JList<Object> list;
+
+    private NameIndex lastIndex;
+    private NameIndex.Query lastQuery;
+
+    public GoToPopup(JTextField field, Supplier<NameIndex> names, Consumer<Reference> linkHandler) {
+        this.field = field;
+        this.names = names;
+        this.linkHandler = linkHandler;
+
+        listModel = new DefaultListModel<>();
+        list = new JList<>(listModel);
+        list.setFocusable(false);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                openSelected();
+            }
+        });
+        JScrollPane scroll = new JScrollPane(list);
+        scroll.setPreferredSize(new Dimension(600, 300));
+        scroll.setFocusable(false);
+
+        popup = new JPopupMenu();
+        popup.setFocusable(false);
+        popup.add(scroll);
+
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                update();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                update();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+
+            }
+        });
+        field.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN:
+                        moveSelection(1);
+                        break;
+                    case KeyEvent.VK_UP:
+                        moveSelection(-1);
+                        break;
+                    case KeyEvent.VK_ENTER:
+                        openSelected();
+                        break;
+                    case KeyEvent.VK_ESCAPE:
+                        popup.setVisible(false);
+                        break;
+                    default:
+                        return;
+                }
+                e.consume();
+            }
+        });
+    }
+
+    private void update() {
+        String text = field.getText().trim();
+        listModel.clear();
+        if (text.isEmpty()) {
+            lastQuery = null;
+            popup.setVisible(false);
+            return;
+        }
+
+        NameIndex index = names.get();
+        if (index == null) {
+            listModel.addElement("(classpath is still being indexed)");
+        } else {
+            //a new index means the old matches are out of date
+            if (index != lastIndex || lastQuery == null) {
+                lastQuery = index.query(text);
+            } else {
+                lastQuery = lastQuery.refine(text);
+            }
+            lastIndex = index;
+
+            for (NameIndex.Match match : lastQuery.getTop(MAX_SHOWN)) {
+                listModel.addElement(match);
+            }
+            if (lastQuery.getMatchCount() > MAX_SHOWN) {
+                listModel.addElement("(" + (lastQuery.getMatchCount() - MAX_SHOWN) + " more)");
+            }
+            list.setSelectedIndex(0);
+        }
+
+        if (!popup.isVisible()) {
+            popup.show(field, 0, field.getHeight());
+            field.requestFocusInWindow();
+        }
+    }
+
+    private void moveSelection(int delta) {
+        int size = listModel.getSize();
+        if (size > 0) {
+            int idx = Math.max(0, Math.min(size - 1, list.getSelectedIndex() + delta));
+            list.setSelectedIndex(idx);
+            list.ensureIndexIsVisible(idx);
+        }
+    }
+
+    private void openSelected() {
+        Object selected = list.getSelectedValue();
+        if (selected instanceof NameIndex.Match) {
+            popup.setVisible(false);
+            linkHandler.accept(((NameIndex.Match) selected).toReference());
+        }
+    }
+}
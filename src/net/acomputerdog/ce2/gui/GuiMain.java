@@ -4,12 +4,19 @@ import javassist.ClassPool;
 import javassist.CtClass;
 import net.acomputerdog.ce2.CEClassPath;
 import net.acomputerdog.ce2.disassembler.Disassembler;
+import net.acomputerdog.ce2.disassembler.Reference;
+import net.acomputerdog.ce2.index.ClassPathIndex;
+import net.acomputerdog.ce2.index.StringIndex;
+import net.acomputerdog.ce2.metrics.Metrics;
+import net.acomputerdog.ce2.search.BytecodePattern;
+import net.acomputerdog.ce2.search.BytecodeSearch;
 import net.acomputerdog.ce2.util.FileUtils;
 import net.acomputerdog.ce2.util.IterableEnumeration;
 
 import javax.swing.*;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreePath;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
@@ -20,6 +27,10 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -27,15 +38,36 @@ import java.util.zip.ZipFile;
 public class GuiMain extends JFrame {
     private static final String PATTERN_DOT = Pattern.quote(".");
 
+    //limits for rendered tabs, least recently viewed tabs are unloaded past these
+    private static final int MAX_RENDERED_TABS = Integer.getInteger("ce2.maxRenderedTabs", 20);
+    private static final long MAX_RENDERED_BYTES = Long.getLong("ce2.maxRenderedMB", 512) * 1024 * 1024;
+    //string searches stop after this many results
+    private static final int MAX_STRING_RESULTS = Integer.getInteger("ce2.maxStringResults", 10000);
+    //bytecode searches stop after this many matches
+    private static final int MAX_BYTECODE_RESULTS = Integer.getInteger("ce2.maxBytecodeResults", 10000);
+    //how often the metrics in the status bar are refreshed, in ms
+    private static final int METRICS_INTERVAL = 1000;
+
     private JPanel mainPanel;
     private JToolBar toolbar;
     private JButton editCPButton;
+    private JButton searchStringsButton;
+    private JButton searchBytecodeButton;
+    private JButton diffButton;
+    private JButton statsButton;
+    private JTextField goToField;
 
     private JTree classTree;
     private JTabbedPane classTabs;
     private JLabel statusLabel;
+    private JLabel metricsLabel;
     private DefaultTreeModel classModel;
     private DefaultMutableTreeNode classRoot;
+    //class name -> tree node, for following links
+    private final Map<String, DefaultMutableTreeNode> classNodes = new HashMap<>();
+    private ClassPathIndex index = new ClassPathIndex();
+    //rendered tabs, least recently viewed first
+    private final Map<ClassViewPanel, Boolean> renderedTabs = new LinkedHashMap<>(16, 0.75f, true);
 
     private final CEClassPath classPath;
     private final ClassPool classPool;
@@ -65,10 +97,12 @@ public class GuiMain extends JFrame {
                 public void windowClosed(WindowEvent e) {
                     statusLabel.setText("Indexing...");
                     classTabs.removeAll();
+                    renderedTabs.clear();
 
                     buildClassTree();
                     classModel.reload();
                     statusLabel.setText("Ready.");
+                    startIndexing();
                 }
             });
 
@@ -76,42 +110,38 @@ public class GuiMain extends JFrame {
             gcp.setVisible(true);
             statusLabel.setText("Ready.");
         });
+        searchStringsButton.addActionListener(e -> searchStrings());
+        searchBytecodeButton.addActionListener(e -> searchBytecode());
+        diffButton.addActionListener(e -> compareJars());
+        statsButton.addActionListener(e -> {
+            StatsFrame frame = new StatsFrame(this.classPath);
+            frame.setLocationRelativeTo(this);
+            frame.setVisible(true);
+            frame.start();
+        });
+        new GoToPopup(goToField, () -> index.getNames(), this::openReference);
+        new Timer(METRICS_INTERVAL, e -> metricsLabel.setText(Metrics.get().getSummary())).start();
+        classTabs.addChangeListener(e -> {
+            Component selected = classTabs.getSelectedComponent();
+            if (selected instanceof ClassViewPanel) {
+                ClassViewPanel panel = (ClassViewPanel) selected;
+                Metrics.get().recordCache(Metrics.Cache.TAB, panel.isLoaded());
+                if (!panel.isLoaded()) {
+                    statusLabel.setText("Decompiling...");
+                    panel.ensureLoaded();
+                    statusLabel.setText("Ready.");
+                }
+                renderedTabs.put(panel, Boolean.TRUE);
+                enforceTabBudget(panel);
+            }
+        });
         classTree.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
                 if (e.getClickCount() == 2) {
                     DefaultMutableTreeNode node = (DefaultMutableTreeNode)classTree.getLastSelectedPathComponent();
                     if (node != null) {
-                        ClassTreeItem item = (ClassTreeItem) node.getUserObject();
-                        if (item.cls != null) {
-                            String name = item.display;
-                            int tabIdx = classTabs.indexOfTab(name);
-                            if (tabIdx != -1) {
-                                classTabs.setSelectedIndex(tabIdx);
-                            } else {
-                                statusLabel.setText("Decompiling...");
-                                classTabs.addTab(name, new ClassViewPanel(item.cls, disassembler));
-
-                                JPanel tabTitlePane = new JPanel(new FlowLayout());
-                                tabTitlePane.add(new JLabel(name));
-
-                                JButton close = new JButton();
-                                close.setText("x");
-                                close.setMargin(new Insets(0, 0, 0, 0));
-                                close.setBorder(BorderFactory.createEmptyBorder());
-                                close.addActionListener(e2 -> {
-                                    //must be separate in case tabs are rearranged
-                                    classTabs.removeTabAt(classTabs.indexOfTab(name));
-                                });
-                                tabTitlePane.add(close);
-
-                                int idx = classTabs.indexOfTab(name);
-                                classTabs.setTabComponentAt(idx, tabTitlePane);
-                                classTabs.setSelectedIndex(idx);
-
-                                statusLabel.setText("Ready.");
-                            }
-                        }
+                        openClass((ClassTreeItem) node.getUserObject());
                     }
                 }
             }
@@ -122,8 +152,225 @@ public class GuiMain extends JFrame {
         super.setVisible(true);
     }
 
+    /**
+     * Opens a tab for a class, or selects it if it is already open.
+     */
+    private ClassViewPanel openClass(ClassTreeItem item) {
+        if (item.cls == null) {
+            return null;
+        }
+        for (int i = 0; i < classTabs.getTabCount(); i++) {
+            ClassViewPanel panel = (ClassViewPanel) classTabs.getComponentAt(i);
+            if (panel.getCtClass() == item.cls) {
+                classTabs.setSelectedIndex(i);
+                return panel;
+            }
+        }
+
+        String name = item.display;
+        statusLabel.setText("Decompiling...");
+        ClassViewPanel panel = new ClassViewPanel(item.cls, disassembler, index, this::openReference);
+        classTabs.addTab(name, panel);
+
+        JPanel tabTitlePane = new JPanel(new FlowLayout());
+        tabTitlePane.add(new JLabel(name));
+
+        JButton close = new JButton();
+        close.setText("x");
+        close.setMargin(new Insets(0, 0, 0, 0));
+        close.setBorder(BorderFactory.createEmptyBorder());
+        close.addActionListener(e2 -> {
+            //must be separate in case tabs are rearranged
+            classTabs.remove(panel);
+            renderedTabs.remove(panel);
+        });
+        tabTitlePane.add(close);
+
+        int idx = classTabs.indexOfComponent(panel);
+        classTabs.setTabComponentAt(idx, tabTitlePane);
+        classTabs.setSelectedIndex(idx);
+
+        statusLabel.setText("Ready.");
+        return panel;
+    }
+
+    /**
+     * Unloads the least recently viewed tabs until the rendered tabs fit in the budget.
+     */
+    private void enforceTabBudget(ClassViewPanel current) {
+        long totalBytes = 0;
+        for (ClassViewPanel panel : renderedTabs.keySet()) {
+            totalBytes += panel.estimateSize();
+        }
+
+        Iterator<ClassViewPanel> iterator = renderedTabs.keySet().iterator();
+        while (iterator.hasNext() && (renderedTabs.size() > MAX_RENDERED_TABS || totalBytes > MAX_RENDERED_BYTES)) {
+            ClassViewPanel panel = iterator.next();
+            if (panel != current) {
+                totalBytes -= panel.estimateSize();
+                panel.unload();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Opens the class that a link points to and scrolls to the linked member.
+     */
+    private void openReference(Reference ref) {
+        DefaultMutableTreeNode node = classNodes.get(ref.getClassName());
+        if (node == null) {
+            statusLabel.setText("Class not on classpath: " + ref.getClassName());
+            return;
+        }
+
+        TreePath path = new TreePath(node.getPath());
+        classTree.setSelectionPath(path);
+        classTree.scrollPathToVisible(path);
+
+        ClassViewPanel panel = openClass((ClassTreeItem) node.getUserObject());
+        if (panel != null && ref.getMemberKey() != null) {
+            //let the new tab lay out before scrolling it
+            if (ref.getOffset() != -1) {
+                SwingUtilities.invokeLater(() -> panel.showInstruction(ref.getMemberKey(), ref.getOffset()));
+            } else {
+                SwingUtilities.invokeLater(() -> panel.showMember(ref.getMemberKey()));
+            }
+        }
+    }
+
+    /**
+     * Asks for a string and lists every literal that contains it.  Results are added as they are found.
+     */
+    private void searchStrings() {
+        StringIndex strings = index.getStrings();
+        if (strings == null) {
+            JOptionPane.showMessageDialog(this, "The classpath is still being indexed, try again in a moment.");
+            return;
+        }
+
+        JTextField queryField = new JTextField(30);
+        JCheckBox prefixBox = new JCheckBox("Only match the start of literals");
+        JPanel queryPanel = new JPanel(new BorderLayout());
+        queryPanel.add(queryField, BorderLayout.CENTER);
+        queryPanel.add(prefixBox, BorderLayout.SOUTH);
+        int option = JOptionPane.showConfirmDialog(this, queryPanel, "Search strings", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        String query = queryField.getText();
+        if (option != JOptionPane.OK_OPTION || query.isEmpty()) {
+            return;
+        }
+        boolean prefix = prefixBox.isSelected();
+
+        SearchResultsDialog dialog = new SearchResultsDialog(this, "Strings matching \"" + query + "\"", this::openReference);
+        dialog.setVisible(true);
+        Thread thread = new Thread(() -> {
+            int found = strings.search(query, prefix, MAX_STRING_RESULTS, match -> dialog.addResult(match.toString(), match.toReference()));
+            dialog.setStatus(found >= MAX_STRING_RESULTS ? "Showing the first " + found + " results." : found + " results.");
+        }, "CE2 string search");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Asks for an instruction pattern and searches every method on the classpath for it.  Closing the results
+     * stops the search.
+     */
+    private void searchBytecode() {
+        String text = JOptionPane.showInputDialog(this,
+                "Instructions separated by ';', each optionally followed by text its operand contains.\n" +
+                        "For example: ldc \"...\" ; invokestatic javax.crypto.Cipher.getInstance",
+                "Search bytecode", JOptionPane.PLAIN_MESSAGE);
+        if (text == null || text.trim().isEmpty()) {
+            return;
+        }
+        BytecodePattern pattern;
+        try {
+            pattern = BytecodePattern.parse(text);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Invalid pattern", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        BytecodeSearch search = new BytecodeSearch(pattern, MAX_BYTECODE_RESULTS);
+        SearchResultsDialog dialog = new SearchResultsDialog(this, "Bytecode matching " + pattern, this::openReference);
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                search.cancel();
+            }
+        });
+        dialog.setVisible(true);
+        Thread thread = new Thread(() -> {
+            search.run(classPath, match -> dialog.addResult(match.toString(), match.toReference()));
+            String more = search.isLimitReached() ? " (stopped at the limit)" : "";
+            dialog.setStatus(search.getMatchCount() + " results in " + search.getClassCount() + " classes" + more + ".");
+        }, "CE2 bytecode search");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Asks for two jars or directories and opens a diff of their classes.
+     */
+    private void compareJars() {
+        File left = chooseDiffSide("Old jar or directory");
+        if (left == null) {
+            return;
+        }
+        File right = chooseDiffSide("New jar or directory");
+        if (right == null) {
+            return;
+        }
+        int option = JOptionPane.showConfirmDialog(this, "Ignore debug information (line numbers, local variable names)?",
+                "Diff", JOptionPane.YES_NO_CANCEL_OPTION);
+        if (option == JOptionPane.CANCEL_OPTION || option == JOptionPane.CLOSED_OPTION) {
+            return;
+        }
+
+        DiffFrame frame = new DiffFrame(left, right, option == JOptionPane.YES_OPTION);
+        frame.setLocationRelativeTo(this);
+        frame.setVisible(true);
+        frame.start();
+    }
+
+    private File chooseDiffSide(String title) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle(title);
+        chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return null;
+        }
+        return chooser.getSelectedFile();
+    }
+
+    /**
+     * Builds the classpath index in the background, replacing any build that is still running.
+     */
+    private void startIndexing() {
+        index.cancel();
+        ClassPathIndex newIndex = new ClassPathIndex();
+        index = newIndex;
+
+        Thread thread = new Thread(() -> {
+            newIndex.build(classPath, count -> SwingUtilities.invokeLater(() -> {
+                if (index == newIndex) {
+                    statusLabel.setText("Indexing... (" + count + " classes)");
+                }
+            }));
+            SwingUtilities.invokeLater(() -> {
+                if (index == newIndex && newIndex.isReady()) {
+                    statusLabel.setText("Ready. (" + newIndex.getXRefs().getReferenceCount() + " references, "
+                            + newIndex.getStrings().getLiteralCount() + " strings indexed)");
+                }
+            });
+        }, "CE2 indexer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     private void buildClassTree() {
         classRoot.removeAllChildren();
+        classNodes.clear();
         for (File file : classPath.getPaths()) {
             addFileToTree(file);
         }
@@ -209,6 +456,7 @@ public class GuiMain extends JFrame {
             }
         }
         ((ClassTreeItem)currNode.getUserObject()).cls = cls;
+        classNodes.put(name, currNode);
     }
 
     private static class ClassTreeItem {
@@ -0,0 +1,336 @@
+package net.acomputerdog.ce2.gui;
+
+import net.acomputerdog.ce2.disassembler.Reference;
+import net.acomputerdog.ce2.disassembler.html.HTMLFormat;
+import net.acomputerdog.ce2.disassembler.lines.Fold;
+import net.acomputerdog.ce2.disassembler.lines.LineStore;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Displays a LineStore.  Only the lines that intersect the visible area are painted, so the cost of
+ * scrolling does not depend on the size of the disassembly.
+ */
+public class LineViewer extends JComponent implements Scrollable {
+    private static final Color GUTTER_COLOR = Color.GRAY;
+
+    private LineStore lines = new LineStore();
+    private FoldHandler foldHandler;
+    private Consumer<Reference> linkHandler;
+    private boolean expandOnScroll = false;
+    private boolean expandQueued = false;
+
+    private Font italicFont;
+    private int lineHeight;
+    private int ascent;
+    private int charWidth;
+
+    public LineViewer() {
+        super();
+        setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        setBackground(Color.WHITE);
+        setOpaque(true);
+
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (SwingUtilities.isLeftMouseButton(e)) {
+                    Reference link = getLinkAt(e.getPoint());
+                    if (link != null) {
+                        if (linkHandler != null) {
+                            linkHandler.accept(link);
+                        }
+                        return;
+                    }
+
+                    Fold fold = lines.getFold(getLineAt(e.getY()));
+                    //expanded folds can only be collapsed from the gutter, so that clicking code does nothing
+                    if (fold != null && (!fold.isExpanded() || e.getX() < getGutterWidth())) {
+                        toggleFold(fold);
+                    }
+                }
+            }
+        });
+
+        addMouseMotionListener(new MouseAdapter() {
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                boolean overLink = linkHandler != null && getLinkAt(e.getPoint()) != null;
+                setCursor(overLink ? Cursor.getPredefinedCursor(Cursor.HAND_CURSOR) : null);
+            }
+        });
+
+        JPopupMenu popup = new JPopupMenu();
+        JMenuItem expandAll = new JMenuItem("Expand all");
+        expandAll.addActionListener(e -> expandFolds(0, lines.getLineCount() - 1));
+        popup.add(expandAll);
+        JMenuItem collapseAll = new JMenuItem("Collapse all");
+        collapseAll.addActionListener(e -> collapseAll());
+        popup.add(collapseAll);
+        JCheckBoxMenuItem scrollExpand = new JCheckBoxMenuItem("Decode bodies while scrolling");
+        scrollExpand.addActionListener(e -> setExpandOnScroll(scrollExpand.isSelected()));
+        popup.add(scrollExpand);
+        setComponentPopupMenu(popup);
+    }
+
+    public void setFoldHandler(FoldHandler foldHandler) {
+        this.foldHandler = foldHandler;
+    }
+
+    public void setLinkHandler(Consumer<Reference> linkHandler) {
+        this.linkHandler = linkHandler;
+    }
+
+    public Reference getLinkAt(Point point) {
+        int x = point.x - getGutterWidth();
+        if (x < 0 || point.y >= lines.getLineCount() * lineHeight) {
+            return null;
+        }
+        Object link = lines.getLinkAt(getLineAt(point.y), x / charWidth);
+        return link instanceof Reference ? (Reference) link : null;
+    }
+
+    /**
+     * If enabled, collapsed folds are expanded as soon as they are painted.
+     */
+    public void setExpandOnScroll(boolean expandOnScroll) {
+        this.expandOnScroll = expandOnScroll;
+        repaint();
+    }
+
+    public void toggleFold(Fold fold) {
+        if (fold.isExpanded()) {
+            collapseFold(fold);
+        } else {
+            expandFold(fold);
+        }
+        revalidate();
+        repaint();
+    }
+
+    private void expandFold(Fold fold) {
+        if (foldHandler != null && !fold.isExpanded()) {
+            int oldLength = fold.getLength();
+            lines.expandFold(fold, foldHandler.expand(fold.getKey()));
+            foldHandler.foldChanged(fold, oldLength);
+        }
+    }
+
+    private void collapseFold(Fold fold) {
+        if (fold.isExpanded()) {
+            int oldLength = fold.getLength();
+            lines.collapseFold(fold);
+            if (foldHandler != null) {
+                foldHandler.foldChanged(fold, oldLength);
+            }
+        }
+    }
+
+    /**
+     * Expands every collapsed fold that starts between two lines.  The folds are decoded first and then
+     * swapped in together, so the lines are only rebuilt once.
+     */
+    public void expandFolds(int firstLine, int lastLine) {
+        if (foldHandler == null) {
+            return;
+        }
+        List<Fold> toExpand = new ArrayList<>();
+        List<LineStore> bodies = new ArrayList<>();
+        for (Fold fold : lines.getFolds()) {
+            if (!fold.isExpanded() && fold.getLine() >= firstLine && fold.getLine() <= lastLine) {
+                toExpand.add(fold);
+                bodies.add(foldHandler.expand(fold.getKey()));
+            }
+        }
+        int[] oldLengths = lengths(toExpand);
+        lines.expandFolds(toExpand, bodies);
+        foldsChanged(toExpand, oldLengths);
+        revalidate();
+        repaint();
+    }
+
+    public void collapseAll() {
+        List<Fold> toCollapse = new ArrayList<>();
+        for (Fold fold : lines.getFolds()) {
+            if (fold.isExpanded()) {
+                toCollapse.add(fold);
+            }
+        }
+        int[] oldLengths = lengths(toCollapse);
+        lines.collapseFolds(toCollapse);
+        if (foldHandler != null) {
+            foldsChanged(toCollapse, oldLengths);
+        }
+        revalidate();
+        repaint();
+    }
+
+    private static int[] lengths(List<Fold> folds) {
+        int[] lengths = new int[folds.size()];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = folds.get(i).getLength();
+        }
+        return lengths;
+    }
+
+    //from the top down, so each fold is reported at its line after the folds above it changed, like single changes
+    private void foldsChanged(List<Fold> folds, int[] oldLengths) {
+        for (int i = 0; i < oldLengths.length; i++) {
+            foldHandler.foldChanged(folds.get(i), oldLengths[i]);
+        }
+    }
+
+    public void setLines(LineStore lines) {
+        this.lines = lines;
+        revalidate();
+        repaint();
+    }
+
+    public LineStore getLines() {
+        return lines;
+    }
+
+    @Override
+    public void setFont(Font font) {
+        super.setFont(font);
+        FontMetrics metrics = getFontMetrics(font);
+        italicFont = font.deriveFont(Font.ITALIC);
+        lineHeight = metrics.getHeight();
+        ascent = metrics.getAscent();
+        charWidth = metrics.charWidth('m');
+        revalidate();
+    }
+
+    public int getLineHeight() {
+        return lineHeight;
+    }
+
+    public int getLineAt(int y) {
+        return Math.max(0, Math.min(lines.getLineCount() - 1, y / lineHeight));
+    }
+
+    public void scrollToLine(int line) {
+        Rectangle visible = getVisibleRect();
+        int y = line * lineHeight;
+        //put the line near the top rather than at the very edge of the view
+        scrollRectToVisible(new Rectangle(0, y, 1, Math.max(lineHeight, visible.height - lineHeight)));
+    }
+
+    private int getGutterWidth() {
+        //line number, fold marker and a space
+        return (String.valueOf(lines.getLineCount()).length() + 3) * charWidth;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        int width = getGutterWidth() + (lines.getLongestLine() + 1) * charWidth;
+        int height = lines.getLineCount() * lineHeight;
+        return new Dimension(width, height);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        int first = Math.max(0, clip.y / lineHeight);
+        int last = Math.min(lines.getLineCount() - 1, (clip.y + clip.height) / lineHeight);
+        int gutter = getGutterWidth();
+        char[] chars = lines.getChars();
+        Font font = getFont();
+
+        for (int line = first; line <= last; line++) {
+            int y = line * lineHeight + ascent;
+
+            g.setFont(font);
+            g.setColor(GUTTER_COLOR);
+            g.drawString(String.valueOf(line), 0, y);
+            Fold fold = lines.getFold(line);
+            if (fold != null) {
+                g.drawString(fold.isExpanded() ? "-" : "+", gutter - charWidth * 2, y);
+                if (!fold.isExpanded() && expandOnScroll) {
+                    queueExpand(first, last);
+                }
+            }
+
+            int lineStart = lines.getLineStart(line);
+            int endRun = lines.getEndRun(line);
+            for (int run = lines.getFirstRun(line); run < endRun; run++) {
+                int start = lines.getRunStart(run);
+                int len = lines.getRunEnd(run) - start;
+                int x = gutter + (start - lineStart) * charWidth;
+                if (x > clip.x + clip.width) {
+                    break;
+                }
+                HTMLFormat format = lines.getRunFormat(run);
+                g.setFont(format.isItalic() ? italicFont : font);
+                g.setColor(format.getColor());
+                g.drawChars(chars, start, len, x, y);
+                if (lines.getRunLink(run) != null) {
+                    g.drawLine(x, y + 1, x + len * charWidth - 1, y + 1);
+                }
+            }
+        }
+    }
+
+    private void queueExpand(int first, int last) {
+        //can't change the lines while painting them
+        if (!expandQueued) {
+            expandQueued = true;
+            SwingUtilities.invokeLater(() -> {
+                expandQueued = false;
+                expandFolds(first, last);
+            });
+        }
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return new Dimension(600, 400);
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? lineHeight : charWidth;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        if (orientation == SwingConstants.VERTICAL) {
+            return Math.max(lineHeight, visibleRect.height - lineHeight);
+        }
+        return Math.max(charWidth, visibleRect.width - charWidth);
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return getParent() instanceof JViewport && getParent().getWidth() > getPreferredSize().width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
+    }
+
+    public interface FoldHandler {
+        /**
+         * Gets the lines to show in place of a collapsed fold.
+         */
+        LineStore expand(Object key);
+
+        /**
+         * Called after a fold is expanded or collapsed.
+         */
+        void foldChanged(Fold fold, int oldLength);
+    }
+}
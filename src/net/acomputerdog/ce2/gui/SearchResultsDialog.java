@@ -0,0 +1,78 @@
+package net.acomputerdog.ce2.gui;
+
+import net.acomputerdog.ce2.disassembler.Reference;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.function.Consumer;
+
+/**
+ * Lists search results.  Results can be added from any thread while the dialog is open, and double
+ * clicking one follows its Reference.
+ */
+public class SearchResultsDialog extends JDialog {
+    private final DefaultListModel<Result> resultsModel;
+    private final JLabel statusLabel;
+
+    public SearchResultsDialog(Window parent, String title, Consumer<Reference> linkHandler) {
+        super(parent, title, ModalityType.MODELESS);
+        super.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        super.setMinimumSize(new Dimension(500, 300));
+
+        resultsModel = new DefaultListModel<>();
+        JList<Result> resultsList = new JList<>(resultsModel);
+        resultsList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    Result result = resultsList.getSelectedValue();
+                    if (result != null && result.target != null) {
+                        linkHandler.accept(result.target);
+                    }
+                }
+            }
+        });
+        statusLabel = new JLabel("Searching...");
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(new JScrollPane(resultsList), BorderLayout.CENTER);
+        panel.add(statusLabel, BorderLayout.SOUTH);
+        super.setContentPane(panel);
+        super.pack();
+        super.setLocationRelativeTo(parent);
+    }
+
+    public void addResult(String display, Reference target) {
+        Result result = new Result(display, target);
+        if (SwingUtilities.isEventDispatchThread()) {
+            resultsModel.addElement(result);
+        } else {
+            SwingUtilities.invokeLater(() -> resultsModel.addElement(result));
+        }
+    }
+
+    public void setStatus(String status) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            statusLabel.setText(status);
+        } else {
+            SwingUtilities.invokeLater(() -> statusLabel.setText(status));
+        }
+    }
+
+    private static class Result {
+        private final String display;
+        private final Reference target;
+
+        private Result(String display, Reference target) {
+            this.display = display;
+            this.target = target;
+        }
+
+        @Override
+        public String toString() {
+            return display;
+        }
+    }
+}
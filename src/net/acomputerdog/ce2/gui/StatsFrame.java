@@ -0,0 +1,157 @@
+package net.acomputerdog.ce2.gui;
+
+import javassist.bytecode.Mnemonic;
+import net.acomputerdog.ce2.CEClassPath;
+import net.acomputerdog.ce2.stats.BytecodeStats;
+import net.acomputerdog.ce2.stats.StatsScanner;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shows the BytecodeStats of a classpath as sortable tables: per package counters, the opcode histogram, and
+ * the methods that are too big to be JIT compiled.
+ */
+public class StatsFrame extends JFrame {
+    private final CEClassPath classPath;
+    private final StatsScanner scanner = new StatsScanner();
+    private final JTable packagesTable;
+    private final JTable opcodesTable;
+    private final JTable hugeTable;
+    private final JLabel statusLabel;
+
+    public StatsFrame(CEClassPath classPath) {
+        super("Bytecode statistics");
+        super.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        super.setMinimumSize(new Dimension(800, 500));
+        this.classPath = classPath;
+
+        packagesTable = createTable();
+        opcodesTable = createTable();
+        hugeTable = createTable();
+        statusLabel = new JLabel("Scanning...");
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Packages", new JScrollPane(packagesTable));
+        tabs.addTab("Opcodes", new JScrollPane(opcodesTable));
+        tabs.addTab("Over " + BytecodeStats.HUGE_METHOD_LIMIT + " bytes", new JScrollPane(hugeTable));
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(tabs, BorderLayout.CENTER);
+        panel.add(statusLabel, BorderLayout.SOUTH);
+        super.setContentPane(panel);
+
+        super.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                scanner.cancel();
+            }
+        });
+        super.pack();
+    }
+
+    private static JTable createTable() {
+        JTable table = new JTable();
+        table.setAutoCreateRowSorter(true);
+        return table;
+    }
+
+    /**
+     * Scans the classpath in the background.
+     */
+    public void start() {
+        Thread thread = new Thread(() -> {
+            long start = System.currentTimeMillis();
+            BytecodeStats stats = scanner.scan(classPath, count -> SwingUtilities.invokeLater(() ->
+                    statusLabel.setText("Scanning... (" + count + " classes)")));
+            long time = System.currentTimeMillis() - start;
+            if (stats != null) {
+                SwingUtilities.invokeLater(() -> show(stats, time));
+            }
+        }, "CE2 stats");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void show(BytecodeStats stats, long time) {
+        List<Object[]> packages = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : stats.getPackages().entrySet()) {
+            packages.add(row(entry.getKey().isEmpty() ? "(default)" : entry.getKey(), entry.getValue()));
+        }
+        String[] packageColumns = new String[BytecodeStats.COLUMN_NAMES.length + 1];
+        packageColumns[0] = "package";
+        System.arraycopy(BytecodeStats.COLUMN_NAMES, 0, packageColumns, 1, BytecodeStats.COLUMN_NAMES.length);
+        packagesTable.setModel(new RowsModel(packageColumns, packages));
+
+        List<Object[]> opcodes = new ArrayList<>();
+        long[] counts = stats.getOpcodeCounts();
+        for (int op = 0; op < counts.length; op++) {
+            if (counts[op] > 0) {
+                opcodes.add(new Object[]{op, Mnemonic.OPCODE[op], counts[op]});
+            }
+        }
+        opcodesTable.setModel(new RowsModel(new String[]{"opcode", "mnemonic", "count"}, opcodes));
+
+        List<Object[]> huge = new ArrayList<>();
+        for (BytecodeStats.HugeMethod method : stats.getHugeMethods()) {
+            huge.add(new Object[]{method.getClassName(), method.getMethod(), method.getLength()});
+        }
+        hugeTable.setModel(new RowsModel(new String[]{"class", "method", "length"}, huge));
+
+        long[] totals = stats.getTotals();
+        statusLabel.setText(totals[BytecodeStats.CLASSES] + " classes, " + totals[BytecodeStats.METHODS] + " methods, "
+                + totals[BytecodeStats.OVER_FREQ_INLINE] + " over " + BytecodeStats.FREQ_INLINE_SIZE + " bytes, "
+                + totals[BytecodeStats.HUGE] + " over " + BytecodeStats.HUGE_METHOD_LIMIT + " bytes, "
+                + totals[BytecodeStats.INVOKEDYNAMIC] + " invokedynamic (" + time + " ms).");
+    }
+
+    private static Object[] row(String name, long[] values) {
+        Object[] row = new Object[values.length + 1];
+        row[0] = name;
+        for (int i = 0; i < values.length; i++) {
+            row[i + 1] = values[i];
+        }
+        return row;
+    }
+
+    private static class RowsModel extends AbstractTableModel {
+        private final String[] columns;
+        private final List<Object[]> rows;
+
+        private RowsModel(String[] columns, List<Object[]> rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        //numbers sort as numbers
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return rows.isEmpty() ? Object.class : rows.get(0)[column].getClass();
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            return rows.get(row)[column];
+        }
+    }
+}
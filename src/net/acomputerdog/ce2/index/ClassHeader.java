@@ -0,0 +1,46 @@
+package net.acomputerdog.ce2.index;
+
+import net.acomputerdog.ce2.classfile.ClassReader;
+
+/**
+ * The name, superclass and interfaces of a class.
+ */
+public class ClassHeader {
+    private final String name;
+    private final String superName;
+    private final String[] interfaces;
+    private final int accessFlags;
+
+    private ClassHeader(String name, String superName, String[] interfaces, int accessFlags) {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+        this.accessFlags = accessFlags;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the name of the superclass, or null for java.lang.Object and module-info.
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    public String[] getInterfaces() {
+        return interfaces;
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    /**
+     * Reads the header of a class file.
+     */
+    public static ClassHeader read(ClassReader cls) {
+        return new ClassHeader(cls.getName(), cls.getSuperName(), cls.getInterfaces(), cls.getAccessFlags());
+    }
+}
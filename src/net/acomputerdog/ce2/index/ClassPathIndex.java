@@ -0,0 +1,209 @@
+package net.acomputerdog.ce2.index;
+
+import net.acomputerdog.ce2.CEClassPath;
+import net.acomputerdog.ce2.classfile.ClassReader;
+import net.acomputerdog.ce2.jfr.IndexEntryEvent;
+import net.acomputerdog.ce2.jfr.Jfr;
+import net.acomputerdog.ce2.metrics.Metrics;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * Indexes built over every class in a CEClassPath.  Building is slow, so it is meant to be done on a
+ * background thread, and the indexes are only published once they are complete.  Class files are read and
+ * parsed on a pool with one thread per core.  String literals of jars that haven't changed since the last
+ * build are loaded from disk instead of being scanned again.
+ */
+public class ClassPathIndex {
+    //shared by all of the indexes
+    private final SymbolTable symbols = new SymbolTable();
+
+    private volatile XRefIndex xrefs;
+    private volatile HierarchyIndex hierarchy;
+    private volatile StringIndex strings;
+    private volatile NameIndex names;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Scans the classpath and builds the indexes.
+     *
+     * @param classPath Classpath to index
+     * @param progress Called with the number of classes scanned so far, may be null
+     */
+    public void build(CEClassPath classPath, IntConsumer progress) {
+        XRefIndex newXRefs = new XRefIndex(symbols);
+        HierarchyIndex newHierarchy = new HierarchyIndex(symbols);
+        NameIndex newNames = new NameIndex(symbols);
+        //string segments by classpath entry, either loaded from disk or being built
+        Map<File, StringIndex.Segment> savedSegments = new LinkedHashMap<>();
+        //read by the workers while entries are still being added
+        Map<File, StringIndex.SegmentBuilder> newSegments = Collections.synchronizedMap(new LinkedHashMap<>());
+        AtomicInteger count = new AtomicInteger();
+        EntryTracker tracker = new EntryTracker();
+
+        try {
+            classPath.visitClassFilesParallel(new CEClassPath.ParallelClassFileVisitor() {
+                @Override
+                public void startEntry(File entry) {
+                    tracker.start(entry);
+                    if (!savedSegments.containsKey(entry) && !newSegments.containsKey(entry)) {
+                        StringIndex.Segment saved = StringIndex.loadSegment(entry);
+                        Metrics.get().recordCache(Metrics.Cache.INDEX_SEGMENT, saved != null);
+                        if (saved != null) {
+                            savedSegments.put(entry, saved);
+                        } else {
+                            newSegments.put(entry, new StringIndex.SegmentBuilder());
+                        }
+                    }
+                }
+
+                @Override
+                public boolean visitClass(File entry, String path, byte[] bytes) {
+                    if (cancelled) {
+                        return false;
+                    }
+                    tracker.visit(entry, bytes.length);
+                    try {
+                        ClassReader cls = ClassReader.read(bytes);
+                        newHierarchy.addClass(ClassHeader.read(cls));
+                        newXRefs.addClass(cls);
+                        newNames.addClass(cls);
+                        StringIndex.SegmentBuilder segment = newSegments.get(entry);
+                        if (segment != null) {
+                            segment.addClass(cls);
+                        }
+                    } catch (RuntimeException e) {
+                        System.err.println("Unable to index class " + path + ": " + e);
+                    }
+                    int done = count.incrementAndGet();
+                    if (progress != null && done % 500 == 0) {
+                        progress.accept(done);
+                    }
+                    return true;
+                }
+
+                @Override
+                public void finishEntry(File entry) {
+                    tracker.finish(entry);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (!cancelled) {
+            newXRefs.finish();
+            newHierarchy.finish();
+            newNames.finish();
+            StringIndex newStrings = new StringIndex();
+            for (StringIndex.Segment segment : savedSegments.values()) {
+                newStrings.addSegment(segment);
+            }
+            for (Map.Entry<File, StringIndex.SegmentBuilder> entry : newSegments.entrySet()) {
+                StringIndex.Segment segment = entry.getValue().finish();
+                StringIndex.saveSegment(entry.getKey(), segment);
+                newStrings.addSegment(segment);
+            }
+            xrefs = newXRefs;
+            hierarchy = newHierarchy;
+            strings = newStrings;
+            names = newNames;
+            if (progress != null) {
+                progress.accept(count.get());
+            }
+        }
+    }
+
+    /**
+     * Stops a build that is in progress.  The indexes will not be published.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    public boolean isReady() {
+        return xrefs != null;
+    }
+
+    /**
+     * Gets the cross-reference index, or null if it hasn't been built yet.
+     */
+    public XRefIndex getXRefs() {
+        return xrefs;
+    }
+
+    /**
+     * Gets the type hierarchy index, or null if it hasn't been built yet.
+     */
+    public HierarchyIndex getHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * Gets the string literal index, or null if it hasn't been built yet.
+     */
+    public StringIndex getStrings() {
+        return strings;
+    }
+
+    /**
+     * Gets the class and member name index, or null if it hasn't been built yet.
+     */
+    public NameIndex getNames() {
+        return names;
+    }
+
+    /**
+     * Times the classpath entries, for Metrics and JFR, from queueing their first class until their last class
+     * is parsed.
+     */
+    private static class EntryTracker {
+        private final Map<File, EntryStats> entries = new ConcurrentHashMap<>();
+
+        private void start(File entry) {
+            EntryStats stats = new EntryStats();
+            stats.start = System.nanoTime();
+            if (Jfr.ENABLED) {
+                stats.event = new IndexEntryEvent();
+                stats.event.begin();
+            }
+            entries.put(entry, stats);
+        }
+
+        private void visit(File entry, int bytes) {
+            EntryStats stats = entries.get(entry);
+            stats.classes.incrementAndGet();
+            stats.bytes.addAndGet(bytes);
+        }
+
+        private void finish(File entry) {
+            EntryStats stats = entries.remove(entry);
+            Metrics.get().recordIndexedEntry(entry, stats.classes.get(), System.nanoTime() - stats.start);
+            if (stats.event != null) {
+                stats.event.entry = entry.getPath();
+                stats.event.classes = stats.classes.get();
+                stats.event.bytes = stats.bytes.get();
+                stats.event.commit();
+            }
+        }
+    }
+
+    private static class EntryStats {
+        private final AtomicInteger classes = new AtomicInteger();
+        private final AtomicLong bytes = new AtomicLong();
+        private long start;
+        private IndexEntryEvent event;
+    }
+}
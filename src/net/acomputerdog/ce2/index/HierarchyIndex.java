@@ -0,0 +1,165 @@
+package net.acomputerdog.ce2.index;
+
+import net.acomputerdog.ce2.util.IntList;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Reverse type hierarchy: the subclasses and implementors of every type on the classpath.  Edges are
+ * collected as int pairs and grouped by supertype in finish(), so walking the subtypes of a type only
+ * touches the types that are returned.
+ */
+public class HierarchyIndex {
+    private final SymbolTable symbols;
+
+    private final IntList edgeParents = new IntList(1024);
+    //child id shifted left once, with the low bit set for implementors
+    private final IntList edgeChildren = new IntList(1024);
+
+    private int[] childStarts;
+    private int[] children;
+
+    public HierarchyIndex(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    public void addClass(ClassHeader header) {
+        int cls = symbols.intern(header.getName());
+        int parent = header.getSuperName() == null ? -1 : symbols.intern(header.getSuperName());
+        int[] interfaces = new int[header.getInterfaces().length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = symbols.intern(header.getInterfaces()[i]);
+        }
+
+        synchronized (this) {
+            if (parent != -1) {
+                edgeParents.add(parent);
+                edgeChildren.add(cls << 1);
+            }
+            for (int face : interfaces) {
+                edgeParents.add(face);
+                edgeChildren.add(cls << 1 | 1);
+            }
+        }
+    }
+
+    /**
+     * Groups the edges by supertype.  Must be called once all classes are added and before any queries.
+     */
+    public synchronized void finish() {
+        int numEdges = edgeParents.size();
+        int[] starts = new int[symbols.size() + 1];
+        for (int i = 0; i < numEdges; i++) {
+            starts[edgeParents.get(i) + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        int[] sorted = new int[numEdges];
+        int[] next = starts.clone();
+        for (int i = 0; i < numEdges; i++) {
+            sorted[next[edgeParents.get(i)]++] = edgeChildren.get(i);
+        }
+        childStarts = starts;
+        children = sorted;
+    }
+
+    /**
+     * Gets the classes that directly extend or implement a type.
+     */
+    public List<Subtype> getDirectSubtypes(String name) {
+        List<Subtype> results = new ArrayList<>();
+        int id = symbols.lookup(name);
+        if (id != -1 && childStarts != null && id + 1 < childStarts.length) {
+            for (int i = childStarts[id]; i < childStarts[id + 1]; i++) {
+                results.add(new Subtype(symbols.get(children[i] >>> 1), (children[i] & 1) != 0, 1));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Gets every class that extends or implements a type, directly or through other types.  Results are in
+     * depth-first preorder, so each result follows the type it was reached through and its depth can be shown
+     * as a tree.  A type reachable through several paths is only listed under the first.
+     */
+    public List<Subtype> getAllSubtypes(String name) {
+        List<Subtype> results = new ArrayList<>();
+        int id = symbols.lookup(name);
+        if (id == -1 || childStarts == null || id + 1 >= childStarts.length) {
+            return results;
+        }
+
+        BitSet visited = new BitSet(childStarts.length);
+        visited.set(id);
+        //explicit stack of types and the next child edge of each, hierarchies can be too deep to recurse
+        IntList stack = new IntList();
+        IntList edges = new IntList();
+        stack.add(id);
+        edges.add(childStarts[id]);
+        int depth = 1;
+        while (depth > 0) {
+            int curr = stack.get(depth - 1);
+            int edge = edges.get(depth - 1);
+            if (curr + 1 >= childStarts.length || edge >= childStarts[curr + 1]) {
+                depth--;
+                continue;
+            }
+            edges.set(depth - 1, edge + 1);
+            int child = children[edge] >>> 1;
+            if (visited.get(child)) {
+                continue;
+            }
+            visited.set(child);
+            results.add(new Subtype(symbols.get(child), (children[edge] & 1) != 0, depth));
+            int firstEdge = child + 1 < childStarts.length ? childStarts[child] : 0;
+            if (depth < stack.size()) {
+                stack.set(depth, child);
+                edges.set(depth, firstEdge);
+            } else {
+                stack.add(child);
+                edges.add(firstEdge);
+            }
+            depth++;
+        }
+        return results;
+    }
+
+    public static class Subtype {
+        private final String name;
+        private final boolean implementor;
+        private final int depth;
+
+        private Subtype(String name, boolean implementor, int depth) {
+            this.name = name;
+            this.implementor = implementor;
+            this.depth = depth;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * True if the class is linked to the type above it by "implements" (or an interface extending
+         * another) rather than by "extends".
+         */
+        public boolean isImplementor() {
+            return implementor;
+        }
+
+        /**
+         * Gets the number of steps from the queried type, 1 for direct subtypes.
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,597 @@
+package net.acomputerdog.ce2.index;
+
+import net.acomputerdog.ce2.classfile.ClassReader;
+import net.acomputerdog.ce2.disassembler.Disassembly;
+import net.acomputerdog.ce2.disassembler.Reference;
+import net.acomputerdog.ce2.util.IntList;
+import net.acomputerdog.ce2.util.LongList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds classes and members by name.  Names are matched without case against the simple name, either as a
+ * substring, or camel case style where every hump of the query starts a hump of the name ("HTMLDis" finds
+ * "HTMLDisassembler", "CPIndex" finds "ClassPathIndex").  Substrings are found through a trigram index, and
+ * camel case matches through the names sorted by their first hump, so a query never scans every name.
+ * <p>
+ * A query can also be qualified with a package or outer class ("java.util.Lis", "Map.Entry", "HashMap#put").
+ * The part after the last '.' or '#' is matched against the simple name as above, and the part before it
+ * must be whole consecutive segments of the package and outer classes of a class, or of the class of a member.
+ * Entries only keep the id of their qualifier (the lower case package and outer classes, or the class of a
+ * member), and each query tests every distinct qualifier at most once.
+ */
+public class NameIndex {
+    //score of each kind of match, lower is better
+    private static final int EXACT = 0;
+    private static final int PREFIX = 1;
+    private static final int CAMEL = 2;
+    private static final int SUBSTRING = 3;
+    private static final int NO_MATCH = 4;
+
+    private final SymbolTable symbols;
+
+    //symbol of the class name, or of class#memberKey for members
+    private final IntList entrySymbols = new IntList(1024);
+    private final List<String> entryNames = new ArrayList<>(1024);
+    private final IntList entryKinds = new IntList(1024);
+    private final List<String> entryQualifiers = new ArrayList<>(1024);
+
+    //built by finish()
+    private String[] names;
+    private String[] lowerNames;
+    private boolean[] isMember;
+    //distinct ".package.outer." strings in lower case, and the one of each entry
+    private String[] qualifiers;
+    private int[] entryQualifierIds;
+    //entries of each qualifier
+    private int[] qualifierStarts;
+    private int[] qualifierEntries;
+    //entries sorted by lower case name
+    private int[] sorted;
+    private long[] trigramKeys;
+    private int[] trigramIds;
+    private int[] postingStarts;
+    private int[] postings;
+
+    public NameIndex(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Adds a class and its declared members.  Can be called from several threads.
+     */
+    public void addClass(ClassReader cls) {
+        String className = cls.getName();
+        List<String> simpleNames = new ArrayList<>();
+        IntList ids = new IntList();
+
+        ids.add(symbols.intern(className));
+        simpleNames.add(getSimpleName(className));
+        int numMembers = 0;
+        for (ClassReader.Member field : cls.getFields()) {
+            ids.add(symbols.intern(className + '#' + Disassembly.memberKey(field.getName(), field.getDescriptor())));
+            simpleNames.add(field.getName());
+            numMembers++;
+        }
+        for (ClassReader.Member method : cls.getMethods()) {
+            //constructors are found through their class
+            if (!method.isInitializer()) {
+                ids.add(symbols.intern(className + '#' + Disassembly.memberKey(method.getName(), method.getDescriptor())));
+                simpleNames.add(method.getName());
+                numMembers++;
+            }
+        }
+
+        String dotted = className.replace('$', '.').toLowerCase();
+        String classQualifier = "." + dotted.substring(0, Math.max(dotted.lastIndexOf('.'), 0)) + ".";
+        String memberQualifier = "." + dotted + ".";
+        synchronized (this) {
+            entrySymbols.addAll(ids);
+            entryNames.addAll(simpleNames);
+            entryKinds.add(0);
+            entryQualifiers.add(classQualifier);
+            for (int i = 0; i < numMembers; i++) {
+                entryKinds.add(1);
+                entryQualifiers.add(memberQualifier);
+            }
+        }
+    }
+
+    private static String getSimpleName(String className) {
+        int cut = Math.max(className.lastIndexOf('.'), className.lastIndexOf('$'));
+        return cut == -1 || cut == className.length() - 1 ? className : className.substring(cut + 1);
+    }
+
+    /**
+     * Builds the lookup tables.  Must be called once all classes are added and before any queries.
+     */
+    public synchronized void finish() {
+        int numEntries = entryNames.size();
+        names = entryNames.toArray(new String[numEntries]);
+        lowerNames = new String[numEntries];
+        isMember = new boolean[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            lowerNames[i] = names[i].toLowerCase();
+            isMember[i] = entryKinds.get(i) != 0;
+        }
+        groupQualifiers();
+        entryNames.clear();
+        entryKinds.clear();
+        entryQualifiers.clear();
+
+        Integer[] order = new Integer[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> lowerNames[a].compareTo(lowerNames[b]));
+        sorted = new int[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            sorted[i] = order[i];
+        }
+
+        buildTrigrams();
+    }
+
+    private void groupQualifiers() {
+        int numEntries = entryQualifiers.size();
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> distinct = new ArrayList<>();
+        entryQualifierIds = new int[numEntries];
+        IntList counts = new IntList();
+        for (int i = 0; i < numEntries; i++) {
+            Integer id = ids.get(entryQualifiers.get(i));
+            if (id == null) {
+                id = distinct.size();
+                ids.put(entryQualifiers.get(i), id);
+                distinct.add(entryQualifiers.get(i));
+                counts.add(0);
+            }
+            entryQualifierIds[i] = id;
+            counts.set(id, counts.get(id) + 1);
+        }
+        qualifiers = distinct.toArray(new String[distinct.size()]);
+        qualifierStarts = new int[qualifiers.length + 1];
+        for (int i = 0; i < qualifiers.length; i++) {
+            qualifierStarts[i + 1] = qualifierStarts[i] + counts.get(i);
+        }
+        int[] next = Arrays.copyOf(qualifierStarts, qualifiers.length);
+        qualifierEntries = new int[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            qualifierEntries[next[entryQualifierIds[i]]++] = i;
+        }
+    }
+
+    private void buildTrigrams() {
+        trigramKeys = new long[1024];
+        trigramIds = new int[1024];
+        IntList counts = new IntList(1024);
+        //last entry counted for each trigram, so that repeats within a name only count once
+        IntList lastEntry = new IntList(1024);
+
+        for (int entry = 0; entry < lowerNames.length; entry++) {
+            String name = lowerNames[entry];
+            for (int i = 0; i + 3 <= name.length(); i++) {
+                long key = trigram(name, i);
+                int id = findTrigram(key);
+                if (id == -1) {
+                    id = counts.size();
+                    addTrigram(key, id);
+                    counts.add(0);
+                    lastEntry.add(-1);
+                }
+                if (lastEntry.get(id) != entry) {
+                    lastEntry.set(id, entry);
+                    counts.set(id, counts.get(id) + 1);
+                }
+            }
+        }
+
+        int numTrigrams = counts.size();
+        int[] starts = new int[numTrigrams + 1];
+        for (int i = 0; i < numTrigrams; i++) {
+            starts[i + 1] = starts[i] + counts.get(i);
+            lastEntry.set(i, -1);
+        }
+        int[] next = Arrays.copyOf(starts, numTrigrams);
+        int[] lists = new int[starts[numTrigrams]];
+        //entries are visited in order, so every posting list comes out sorted
+        for (int entry = 0; entry < lowerNames.length; entry++) {
+            String name = lowerNames[entry];
+            for (int i = 0; i + 3 <= name.length(); i++) {
+                int id = findTrigram(trigram(name, i));
+                if (lastEntry.get(id) != entry) {
+                    lastEntry.set(id, entry);
+                    lists[next[id]++] = entry;
+                }
+            }
+        }
+        postingStarts = starts;
+        postings = lists;
+    }
+
+    private static long trigram(String str, int start) {
+        return (long) str.charAt(start) << 32 | (long) str.charAt(start + 1) << 16 | str.charAt(start + 2);
+    }
+
+    private int findTrigram(long key) {
+        int mask = trigramKeys.length - 1;
+        int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+        while (trigramIds[slot] != 0) {
+            if (trigramKeys[slot] == key) {
+                return trigramIds[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void addTrigram(long key, int id) {
+        //keep the table at most half full
+        if ((id + 1) * 2 > trigramKeys.length) {
+            long[] oldKeys = trigramKeys;
+            int[] oldIds = trigramIds;
+            trigramKeys = new long[oldKeys.length * 2];
+            trigramIds = new int[oldIds.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldIds[i] != 0) {
+                    insertTrigram(oldKeys[i], oldIds[i]);
+                }
+            }
+        }
+        insertTrigram(key, id + 1);
+    }
+
+    private void insertTrigram(long key, int storedId) {
+        int mask = trigramKeys.length - 1;
+        int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+        while (trigramIds[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        trigramKeys[slot] = key;
+        trigramIds[slot] = storedId;
+    }
+
+    public int getEntryCount() {
+        return names == null ? 0 : names.length;
+    }
+
+    /**
+     * Starts a search.  The returned Query can be refined as more of the name is typed.
+     */
+    public Query query(String text) {
+        int cut = lastSeparator(text);
+        if (cut == -1) {
+            return new Query(text, findCandidates(text, null));
+        }
+        return new Query(text, findCandidates(text.substring(cut + 1), qualifierOf(text, cut)));
+    }
+
+    private static int lastSeparator(String text) {
+        return Math.max(text.lastIndexOf('.'), text.lastIndexOf('#'));
+    }
+
+    //in the same form as qualifiers, so that whole segments are matched with contains()
+    private static String qualifierOf(String text, int cut) {
+        return "." + text.substring(0, cut).replace('#', '.').replace('$', '.').toLowerCase() + ".";
+    }
+
+    /**
+     * Finds the entries whose simple name matches text.
+     *
+     * @param qualifier If not null, only entries whose qualifier contains this are kept
+     */
+    private long[] findCandidates(String text, String qualifier) {
+        String lower = text.toLowerCase();
+        LongList candidates = new LongList();
+        QualifierFilter filter = qualifier == null ? null : new QualifierFilter(qualifier);
+        if (filter != null && text.isEmpty()) {
+            //everything in the matching classes and packages
+            for (int id = 0; id < qualifiers.length; id++) {
+                if (filter.matchesQualifier(id)) {
+                    for (int i = qualifierStarts[id]; i < qualifierStarts[id + 1]; i++) {
+                        candidates.add(rank(qualifierEntries[i], PREFIX));
+                    }
+                }
+            }
+            return candidates.toArray();
+        }
+
+        //camel case and prefix matches all start with the first hump of the query
+        String firstHump = lower.substring(0, firstHumpLength(text));
+        int start = lowerBound(firstHump);
+        for (int i = start; i < sorted.length && lowerNames[sorted[i]].startsWith(firstHump); i++) {
+            int score = score(sorted[i], text, lower);
+            if (score != NO_MATCH && (filter == null || filter.matches(sorted[i]))) {
+                candidates.add(rank(sorted[i], score));
+            }
+        }
+
+        //substrings need at least one trigram, shorter queries only get prefix matches
+        if (lower.length() >= 3) {
+            for (int entry : intersectTrigrams(lower)) {
+                //prefix matches were already found
+                if (!lowerNames[entry].startsWith(firstHump) && lowerNames[entry].contains(lower)
+                        && (filter == null || filter.matches(entry))) {
+                    candidates.add(rank(entry, SUBSTRING));
+                }
+            }
+        }
+        return candidates.toArray();
+    }
+
+    /**
+     * Packs the sort order of a match above its entry, so that sorting the longs sorts the matches.  Classes come
+     * before members, and shorter names before longer ones.
+     */
+    private long rank(int entry, int score) {
+        long rank = (long) score << 13 | (isMember[entry] ? 1 << 12 : 0) | Math.min(names[entry].length(), 0xFFF);
+        return rank << 32 | entry;
+    }
+
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lowerNames[sorted[mid]].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int[] intersectTrigrams(String lower) {
+        int[] result = null;
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            int id = findTrigram(trigram(lower, i));
+            if (id == -1) {
+                return new int[0];
+            }
+            int from = postingStarts[id];
+            int to = postingStarts[id + 1];
+            if (result == null) {
+                result = Arrays.copyOfRange(postings, from, to);
+            } else {
+                result = intersect(result, postings, from, to);
+            }
+            if (result.length == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b, int from, int to) {
+        int[] out = new int[Math.min(a.length, to - from)];
+        int count = 0;
+        int i = 0;
+        int j = from;
+        while (i < a.length && j < to) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    private int score(int entry, String text, String lower) {
+        if (lower.isEmpty()) {
+            return PREFIX;
+        }
+        String lowerName = lowerNames[entry];
+        if (lowerName.equals(lower)) {
+            return EXACT;
+        }
+        if (lowerName.startsWith(lower)) {
+            return PREFIX;
+        }
+        if (matchesCamelCase(names[entry], text)) {
+            return CAMEL;
+        }
+        if (lowerName.contains(lower)) {
+            return SUBSTRING;
+        }
+        return NO_MATCH;
+    }
+
+    private static int firstHumpLength(String text) {
+        int end = 1;
+        while (end < text.length() && !isHumpStart(text, end, false)) {
+            end++;
+        }
+        return Math.min(end, text.length());
+    }
+
+    /**
+     * Checks if a character starts a hump.  In constant style names ("MAX_VALUE"), only words start humps.
+     */
+    private static boolean isHumpStart(String str, int idx, boolean constant) {
+        char c = str.charAt(idx);
+        char prev = str.charAt(idx - 1);
+        if (prev == '_' || (Character.isDigit(c) && !Character.isDigit(prev))) {
+            return true;
+        }
+        return !constant && Character.isUpperCase(c);
+    }
+
+    private static boolean isConstantName(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.isLowerCase(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if every hump of a query is the start of a hump of a name, in order, starting with the first.
+     */
+    private static boolean matchesCamelCase(String name, String query) {
+        boolean constant = isConstantName(name);
+        int q = 0;
+        int n = 0;
+        while (q < query.length()) {
+            int humpEnd = q + 1;
+            while (humpEnd < query.length() && !isHumpStart(query, humpEnd, false)) {
+                humpEnd++;
+            }
+            //find the next hump of the name that starts with this hump of the query
+            while (n < name.length() && !name.regionMatches(true, n, query, q, humpEnd - q)) {
+                if (q == 0) {
+                    return false;
+                }
+                n++;
+                while (n < name.length() && !isHumpStart(name, n, constant)) {
+                    n++;
+                }
+            }
+            if (n >= name.length()) {
+                return false;
+            }
+            n += humpEnd - q;
+            //the next query hump has to start a new hump of the name
+            while (n < name.length() && !isHumpStart(name, n, constant)) {
+                n++;
+            }
+            q = humpEnd;
+        }
+        return true;
+    }
+
+    /**
+     * Checks the qualifiers of entries against the qualifier of a query, remembering the answer for each distinct
+     * qualifier since most matches share a few of them.
+     */
+    private class QualifierFilter {
+        private final String qualifier;
+        //0 if not checked yet, 1 if it matches, 2 if not
+        private final byte[] results = new byte[qualifiers.length];
+
+        private QualifierFilter(String qualifier) {
+            this.qualifier = qualifier;
+        }
+
+        private boolean matches(int entry) {
+            return matchesQualifier(entryQualifierIds[entry]);
+        }
+
+        private boolean matchesQualifier(int id) {
+            if (results[id] == 0) {
+                results[id] = (byte) (qualifiers[id].contains(qualifier) ? 1 : 2);
+            }
+            return results[id] == 1;
+        }
+    }
+
+    /**
+     * The matches for some text.
+     */
+    public class Query {
+        private final String text;
+        //sorted by rank()
+        private final long[] matches;
+
+        private Query(String text, long[] matches) {
+            this.text = text;
+            this.matches = matches;
+            Arrays.sort(matches);
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Gets the matches for a new query.  If the new text extends this query's text, the new matches are
+         * filtered from this query's matches instead of being looked up again.
+         */
+        public Query refine(String newText) {
+            //short queries don't include substring matches, so they can't be narrowed down, and a new separator
+            //starts a new simple name that the old matches don't cover
+            int cut = lastSeparator(text);
+            if (text.length() - cut - 1 < 3 || !newText.startsWith(text) || lastSeparator(newText) != cut) {
+                return query(newText);
+            }
+            String simple = newText.substring(cut + 1);
+            String lower = simple.toLowerCase();
+            QualifierFilter filter = cut == -1 ? null : new QualifierFilter(qualifierOf(newText, cut));
+            LongList refined = new LongList();
+            for (long match : matches) {
+                int entry = (int) match;
+                int score = score(entry, simple, lower);
+                if (score != NO_MATCH && (filter == null || filter.matches(entry))) {
+                    refined.add(rank(entry, score));
+                }
+            }
+            return new Query(newText, refined.toArray());
+        }
+
+        public int getMatchCount() {
+            return matches.length;
+        }
+
+        /**
+         * Gets the best matches.  Exact matches come first, then prefixes, camel case and substrings.
+         */
+        public List<Match> getTop(int limit) {
+            List<Match> top = new ArrayList<>(Math.min(limit, matches.length));
+            for (int i = 0; i < matches.length && i < limit; i++) {
+                int entry = (int) matches[i];
+                top.add(new Match(names[entry], symbols.get(entrySymbols.get(entry))));
+            }
+            return top;
+        }
+    }
+
+    public static class Match {
+        private final String name;
+        private final String className;
+        private final String memberKey;
+
+        private Match(String name, String symbol) {
+            this.name = name;
+            int cut = symbol.indexOf('#');
+            this.className = cut == -1 ? symbol : symbol.substring(0, cut);
+            this.memberKey = cut == -1 ? null : symbol.substring(cut + 1);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * Gets the member key, or null if this is a class.
+         */
+        public String getMemberKey() {
+            return memberKey;
+        }
+
+        public Reference toReference() {
+            return memberKey == null ? new Reference(className) : new Reference(className, memberKey);
+        }
+
+        @Override
+        public String toString() {
+            if (memberKey == null) {
+                return name + " - " + className;
+            }
+            return name + " " + memberKey.substring(name.length()) + " - " + className;
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package net.acomputerdog.ce2.index;
+
+import javassist.bytecode.Opcode;
+import net.acomputerdog.ce2.classfile.ClassReader;
+import net.acomputerdog.ce2.classfile.CodeReader;
+import net.acomputerdog.ce2.disassembler.Disassembly;
+import net.acomputerdog.ce2.disassembler.Reference;
+import net.acomputerdog.ce2.util.FileUtils;
+import net.acomputerdog.ce2.util.IntList;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Inverted index from string literals to the places that load them.  The index is split into one segment
+ * per classpath entry, so that the segments of unchanged jars can be loaded from disk instead of being
+ * rebuilt.  Each segment keeps its distinct literals sorted, with the uses of every literal grouped together.
+ */
+public class StringIndex {
+    private static final int MAGIC = 0xCE25781D;
+    private static final int VERSION = 1;
+
+    //where segments for jars are saved, override with -Dce2.indexDir
+    private static final File INDEX_DIR = new File(System.getProperty("ce2.indexDir",
+            System.getProperty("user.home") + File.separator + ".ce2" + File.separator + "index"));
+
+    private final List<Segment> segments = new ArrayList<>();
+
+    public synchronized void addSegment(Segment segment) {
+        segments.add(segment);
+    }
+
+    public synchronized int getLiteralCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            count += segment.literals.length;
+        }
+        return count;
+    }
+
+    /**
+     * Finds the uses of every literal that contains a string, passing each one to a consumer as soon as it is found.
+     *
+     * @param query String to search for
+     * @param prefix If true, only match literals that start with the query
+     * @param limit Maximum number of results to find
+     * @param results Receives every result, on the calling thread
+     * @return The number of results found
+     */
+    public int search(String query, boolean prefix, int limit, Consumer<Match> results) {
+        List<Segment> searched;
+        synchronized (this) {
+            searched = new ArrayList<>(segments);
+        }
+
+        int found = 0;
+        for (Segment segment : searched) {
+            String[] literals = segment.literals;
+            int start = 0;
+            if (prefix) {
+                //literals are sorted, so the matches are one run starting at the query's insertion point
+                start = Arrays.binarySearch(literals, query);
+                if (start < 0) {
+                    start = -start - 1;
+                }
+            }
+            for (int lit = start; lit < literals.length; lit++) {
+                if (prefix && !literals[lit].startsWith(query)) {
+                    break;
+                }
+                if (prefix || literals[lit].contains(query)) {
+                    for (int use = segment.useStarts[lit]; use < segment.useStarts[lit + 1]; use++) {
+                        if (found >= limit) {
+                            return found;
+                        }
+                        results.accept(segment.getMatch(lit, use));
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private static File getSegmentFile(File entry) {
+        String path = entry.getAbsolutePath();
+        return new File(INDEX_DIR, entry.getName() + "-" + Integer.toHexString(path.hashCode()) + ".strings");
+    }
+
+    /**
+     * Loads the saved segment for a classpath entry.  Returns null if it was never saved, or if the entry has
+     * changed since then.  Only jars are saved.
+     */
+    public static Segment loadSegment(File entry) {
+        if (!entry.isFile() || !FileUtils.isJar(entry)) {
+            return null;
+        }
+        File file = getSegmentFile(entry);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            if (!in.readUTF().equals(entry.getAbsolutePath()) || in.readLong() != entry.length() || in.readLong() != entry.lastModified()) {
+                return null;
+            }
+            return Segment.read(in);
+        } catch (IOException e) {
+            System.err.println("Unable to read string index " + file.getPath() + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the segment for a classpath entry so that it can be loaded next time.  Does nothing unless the entry is a jar.
+     */
+    public static void saveSegment(File entry, Segment segment) {
+        if (!entry.isFile() || !FileUtils.isJar(entry)) {
+            return;
+        }
+        File file = getSegmentFile(entry);
+        if (!INDEX_DIR.isDirectory() && !INDEX_DIR.mkdirs()) {
+            System.err.println("Unable to create index directory: " + INDEX_DIR.getPath());
+            return;
+        }
+        //written to a temporary file first, so that a crash can't leave a broken segment behind
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(entry.getAbsolutePath());
+            out.writeLong(entry.length());
+            out.writeLong(entry.lastModified());
+            segment.write(out);
+        } catch (IOException e) {
+            System.err.println("Unable to write string index " + file.getPath() + ": " + e);
+            return;
+        }
+        if (!file.delete() && file.exists() || !temp.renameTo(file)) {
+            System.err.println("Unable to replace string index " + file.getPath());
+            temp.delete();
+        }
+    }
+
+    /**
+     * The string literals of one classpath entry.
+     */
+    public static class Segment {
+        //class names and member keys
+        private final String[] names;
+        //sorted
+        private final String[] literals;
+        //start of each literal's uses, with one extra entry at the end
+        private final int[] useStarts;
+        private final int[] useClasses;
+        private final int[] useMembers;
+        //-1 for the ConstantValue of a field
+        private final int[] useOffsets;
+
+        private Segment(String[] names, String[] literals, int[] useStarts, int[] useClasses, int[] useMembers, int[] useOffsets) {
+            this.names = names;
+            this.literals = literals;
+            this.useStarts = useStarts;
+            this.useClasses = useClasses;
+            this.useMembers = useMembers;
+            this.useOffsets = useOffsets;
+        }
+
+        private Match getMatch(int lit, int use) {
+            return new Match(literals[lit], names[useClasses[use]], names[useMembers[use]], useOffsets[use]);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            writeStrings(out, names);
+            writeStrings(out, literals);
+            writeInts(out, useStarts);
+            writeInts(out, useClasses);
+            writeInts(out, useMembers);
+            writeInts(out, useOffsets);
+        }
+
+        private static Segment read(DataInputStream in) throws IOException {
+            return new Segment(readStrings(in), readStrings(in), readInts(in), readInts(in), readInts(in), readInts(in));
+        }
+
+        //constant pool strings are limited to 65535 bytes of modified UTF-8, the same as writeUTF()
+        private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+            out.writeInt(strings.length);
+            for (String str : strings) {
+                out.writeUTF(str);
+            }
+        }
+
+        private static String[] readStrings(DataInputStream in) throws IOException {
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+            return strings;
+        }
+
+        private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+            out.writeInt(ints.length);
+            for (int value : ints) {
+                out.writeInt(value);
+            }
+        }
+
+        private static int[] readInts(DataInputStream in) throws IOException {
+            int[] ints = new int[in.readInt()];
+            for (int i = 0; i < ints.length; i++) {
+                ints[i] = in.readInt();
+            }
+            return ints;
+        }
+    }
+
+    /**
+     * Collects the string literals of the classes in one classpath entry.  Classes can be added from several threads.
+     */
+    public static class SegmentBuilder {
+        private final Map<String, Integer> nameIds = new HashMap<>();
+        private final Map<String, Integer> literalIds = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private final List<String> literals = new ArrayList<>();
+
+        private final IntList useLiterals = new IntList(256);
+        private final IntList useClasses = new IntList(256);
+        private final IntList useMembers = new IntList(256);
+        private final IntList useOffsets = new IntList(256);
+
+        /**
+         * Records every ldc of a string constant, and every string ConstantValue of a field.
+         */
+        public void addClass(ClassReader cls) {
+            if (!hasStrings(cls)) {
+                return;
+            }
+
+            List<String[]> uses = new ArrayList<>();
+            List<Integer> offsets = new ArrayList<>();
+            for (ClassReader.Member field : cls.getFields()) {
+                int idx = field.getConstantValue();
+                if (idx != 0 && cls.getTag(idx) == ClassReader.CONST_String) {
+                    uses.add(new String[]{cls.getString(idx), Disassembly.memberKey(field.getName(), field.getDescriptor())});
+                    offsets.add(-1);
+                }
+            }
+            for (ClassReader.Member method : cls.getMethods()) {
+                CodeReader code = method.getCode();
+                if (code != null) {
+                    String key = Disassembly.memberKey(method.getName(), method.getDescriptor());
+                    try {
+                        scanCode(cls, code, key, uses, offsets);
+                    } catch (RuntimeException e) {
+                        System.err.println("Unable to index strings in " + cls.getName() + "." + method.getName() + ": " + e);
+                    }
+                }
+            }
+
+            synchronized (this) {
+                int clsId = nameId(cls.getName());
+                for (int i = 0; i < uses.size(); i++) {
+                    useLiterals.add(literalId(uses.get(i)[0]));
+                    useClasses.add(clsId);
+                    useMembers.add(nameId(uses.get(i)[1]));
+                    useOffsets.add(offsets.get(i));
+                }
+            }
+        }
+
+        private static boolean hasStrings(ClassReader cls) {
+            for (int i = 1; i < cls.getConstantCount(); i++) {
+                if (cls.getTag(i) == ClassReader.CONST_String) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static void scanCode(ClassReader cls, CodeReader it, String key, List<String[]> uses, List<Integer> offsets) {
+            while (it.hasNext()) {
+                int off = it.next();
+                int op = it.byteAt(off);
+                int idx;
+                if (op == Opcode.LDC) {
+                    idx = it.byteAt(off + 1);
+                } else if (op == Opcode.LDC_W) {
+                    idx = it.u16bitAt(off + 1);
+                } else {
+                    continue;
+                }
+                if (cls.getTag(idx) == ClassReader.CONST_String) {
+                    uses.add(new String[]{cls.getString(idx), key});
+                    offsets.add(off);
+                }
+            }
+        }
+
+        private int nameId(String name) {
+            Integer id = nameIds.get(name);
+            if (id == null) {
+                id = names.size();
+                names.add(name);
+                nameIds.put(name, id);
+            }
+            return id;
+        }
+
+        private int literalId(String literal) {
+            Integer id = literalIds.get(literal);
+            if (id == null) {
+                id = literals.size();
+                literals.add(literal);
+                literalIds.put(literal, id);
+            }
+            return id;
+        }
+
+        /**
+         * Sorts the literals and groups the uses by literal.  Must be called once all classes are added.
+         */
+        public synchronized Segment finish() {
+            int numLiterals = literals.size();
+            String[] sorted = literals.toArray(new String[numLiterals]);
+            Arrays.sort(sorted);
+            //old literal id -> sorted position
+            int[] rank = new int[numLiterals];
+            for (int i = 0; i < numLiterals; i++) {
+                rank[literalIds.get(sorted[i])] = i;
+            }
+
+            int numUses = useLiterals.size();
+            int[] starts = new int[numLiterals + 1];
+            for (int i = 0; i < numUses; i++) {
+                starts[rank[useLiterals.get(i)] + 1]++;
+            }
+            for (int i = 1; i < starts.length; i++) {
+                starts[i] += starts[i - 1];
+            }
+            int[] next = Arrays.copyOf(starts, numLiterals);
+            int[] classes = new int[numUses];
+            int[] members = new int[numUses];
+            int[] offs = new int[numUses];
+            for (int i = 0; i < numUses; i++) {
+                int pos = next[rank[useLiterals.get(i)]]++;
+                classes[pos] = useClasses.get(i);
+                members[pos] = useMembers.get(i);
+                offs[pos] = useOffsets.get(i);
+            }
+            return new Segment(names.toArray(new String[names.size()]), sorted, starts, classes, members, offs);
+        }
+    }
+
+    public static class Match {
+        private final String literal;
+        private final String className;
+        private final String memberKey;
+        private final int offset;
+
+        private Match(String literal, String className, String memberKey, int offset) {
+            this.literal = literal;
+            this.className = className;
+            this.memberKey = memberKey;
+            this.offset = offset;
+        }
+
+        public String getLiteral() {
+            return literal;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getMemberKey() {
+            return memberKey;
+        }
+
+        /**
+         * Gets the bytecode offset of the ldc, or -1 if the literal is the constant value of a field.
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        public Reference toReference() {
+            return new Reference(className, memberKey, offset);
+        }
+
+        @Override
+        public String toString() {
+            String display = literal.length() > 80 ? literal.substring(0, 80) + "..." : literal;
+            display = display.replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+            String location = className + "." + memberKey + (offset == -1 ? "" : " @" + offset);
+            return "\"" + display + "\" in " + location;
+        }
+    }
+}
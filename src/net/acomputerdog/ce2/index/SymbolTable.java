@@ -0,0 +1,276 @@
+package net.acomputerdog.ce2.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Maps names to int ids.  Each name is split at its last '#' (member of a class) or '.' (package), and
+ * stored as the id of the part before it plus the remaining bytes, so a package or class name is only
+ * stored once no matter how many names start with it.  Names are kept as UTF-8 in byte arrays and looked
+ * up through open-addressing hash tables of ids, so there is no String or Map.Entry per name.
+ * <p>
+ * The index workers intern names from every thread at once, so the table is split into stripes by hash,
+ * each with its own lock and storage, and threads only wait for each other when their names land in the
+ * same stripe.  Ids are still handed out densely from a shared counter, and a paged directory maps each id
+ * back to its stripe.  Pages are never moved once created, so the directory can be read without a lock.
+ */
+public class SymbolTable {
+    /**
+     * Id of the empty prefix.  Names without a separator use this as their prefix.
+     */
+    public static final int NO_PREFIX = -1;
+
+    private static final int STRIPE_BITS = 6;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int MAX_PAGES = 1 << 14;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicInteger nextId = new AtomicInteger();
+    //index in its stripe << STRIPE_BITS | stripe, of every id
+    private final AtomicReferenceArray<int[]> pages = new AtomicReferenceArray<>(MAX_PAGES);
+
+    public SymbolTable() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Gets the id of a name, adding it if it isn't in the table yet.
+     */
+    public int intern(String name) {
+        int cut = findCut(name);
+        //the prefix is interned first, so no thread holds two stripe locks at once
+        int prefix = cut <= 0 ? NO_PREFIX : intern(name.substring(0, cut));
+        byte[] suffix = name.substring(Math.max(cut, 0)).getBytes(StandardCharsets.UTF_8);
+
+        int hash = hash(prefix, suffix, 0, suffix.length);
+        int stripeIdx = hash & (STRIPES - 1);
+        Stripe stripe = stripes[stripeIdx];
+        synchronized (stripe) {
+            int slot = stripe.findSlot(hash >>> STRIPE_BITS, prefix, suffix);
+            if (stripe.table[slot] != 0) {
+                return stripe.ids[stripe.table[slot] - 1];
+            }
+            int id = nextId.getAndIncrement();
+            int local = stripe.add(slot, hash >>> STRIPE_BITS, id, prefix, suffix);
+            //written before the lock is released, so any thread that finds the id can also look it up
+            setEntry(id, local << STRIPE_BITS | stripeIdx);
+            return id;
+        }
+    }
+
+    /**
+     * Gets the id of a name, or -1 if it was never interned.
+     */
+    public int lookup(String name) {
+        int cut = findCut(name);
+        int prefix = NO_PREFIX;
+        if (cut > 0) {
+            prefix = lookup(name.substring(0, cut));
+            if (prefix == -1) {
+                return -1;
+            }
+        }
+        byte[] suffix = name.substring(Math.max(cut, 0)).getBytes(StandardCharsets.UTF_8);
+        int hash = hash(prefix, suffix, 0, suffix.length);
+        Stripe stripe = stripes[hash & (STRIPES - 1)];
+        synchronized (stripe) {
+            int local = stripe.table[stripe.findSlot(hash >>> STRIPE_BITS, prefix, suffix)] - 1;
+            return local == -1 ? -1 : stripe.ids[local];
+        }
+    }
+
+    /**
+     * Gets the name for an id.
+     */
+    public String get(int id) {
+        if (id < 0 || id >= size()) {
+            throw new IndexOutOfBoundsException("No symbol with id " + id);
+        }
+        //suffixes from the last to the first, since each only knows its prefix
+        byte[][] parts = new byte[8][];
+        int numParts = 0;
+        int length = 0;
+        for (int curr = id; curr != NO_PREFIX; ) {
+            int entry = getEntry(curr);
+            Stripe stripe = stripes[entry & (STRIPES - 1)];
+            int local = entry >>> STRIPE_BITS;
+            synchronized (stripe) {
+                int start = stripe.suffixStarts[local];
+                byte[] part = Arrays.copyOfRange(stripe.data, start, stripe.suffixStarts[local + 1]);
+                if (numParts == parts.length) {
+                    parts = Arrays.copyOf(parts, numParts * 2);
+                }
+                parts[numParts++] = part;
+                length += part.length;
+                curr = stripe.prefixes[local];
+            }
+        }
+        byte[] bytes = new byte[length];
+        int pos = 0;
+        for (int i = numParts - 1; i >= 0; i--) {
+            System.arraycopy(parts[i], 0, bytes, pos, parts[i].length);
+            pos += parts[i].length;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the id of the part of a name before its last separator, or NO_PREFIX.
+     */
+    public int getPrefix(int id) {
+        int entry = getEntry(id);
+        Stripe stripe = stripes[entry & (STRIPES - 1)];
+        synchronized (stripe) {
+            return stripe.prefixes[entry >>> STRIPE_BITS];
+        }
+    }
+
+    /**
+     * Gets the number of ids handed out.  Ids are numbered from 0, so arrays indexed by id can use this as
+     * their length once all names are interned.
+     */
+    public int size() {
+        return nextId.get();
+    }
+
+    /**
+     * Gets a rough estimate of the memory used by this table, in bytes.
+     */
+    public long estimateSize() {
+        long size = MAX_PAGES * 4L;
+        for (int page = 0; page < MAX_PAGES && pages.get(page) != null; page++) {
+            size += PAGE_SIZE * 4L;
+        }
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.data.length + stripe.prefixes.length * 16L + stripe.table.length * 4L;
+            }
+        }
+        return size;
+    }
+
+    private void setEntry(int id, int entry) {
+        int page = id >>> PAGE_BITS;
+        if (page >= MAX_PAGES) {
+            throw new IllegalStateException("Symbol table is full");
+        }
+        int[] ids = pages.get(page);
+        if (ids == null) {
+            pages.compareAndSet(page, null, new int[PAGE_SIZE]);
+            ids = pages.get(page);
+        }
+        ids[id & (PAGE_SIZE - 1)] = entry;
+    }
+
+    private int getEntry(int id) {
+        return pages.get(id >>> PAGE_BITS)[id & (PAGE_SIZE - 1)];
+    }
+
+    private static int findCut(String name) {
+        int cut = name.lastIndexOf('#');
+        if (cut == -1) {
+            //ignore dots in descriptors
+            int paren = name.indexOf('(');
+            cut = name.lastIndexOf('.', paren == -1 ? name.length() - 1 : paren);
+        }
+        return cut;
+    }
+
+    private static int hash(int prefix, byte[] bytes, int start, int len) {
+        int hash = prefix * 31;
+        for (int i = start; i < start + len; i++) {
+            hash = hash * 31 + bytes[i];
+        }
+        //spread the bits, since the stripe and slot are taken from the low bits
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * The names whose hash selects one stripe.  Only accessed while holding its lock.
+     */
+    private static class Stripe {
+        private byte[] data = new byte[1024];
+        private int dataSize = 0;
+
+        private int[] prefixes = new int[64];
+        //start of each suffix in data, the end is the start of the next one
+        private int[] suffixStarts = new int[65];
+        //id of each entry
+        private int[] ids = new int[64];
+        private int[] hashes = new int[64];
+        private int size = 0;
+
+        //index + 1 of each entry, 0 for empty slots
+        private int[] table = new int[128];
+
+        private int findSlot(int hash, int prefix, byte[] suffix) {
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            while (table[slot] != 0 && !matches(table[slot] - 1, prefix, suffix)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private boolean matches(int local, int prefix, byte[] suffix) {
+            int start = suffixStarts[local];
+            int len = suffixStarts[local + 1] - start;
+            if (prefixes[local] != prefix || len != suffix.length) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (data[start + i] != suffix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int add(int slot, int hash, int id, int prefix, byte[] suffix) {
+            if (size + 1 >= prefixes.length) {
+                prefixes = Arrays.copyOf(prefixes, prefixes.length * 2);
+                suffixStarts = Arrays.copyOf(suffixStarts, prefixes.length + 1);
+                ids = Arrays.copyOf(ids, prefixes.length);
+                hashes = Arrays.copyOf(hashes, prefixes.length);
+            }
+            if (dataSize + suffix.length > data.length) {
+                data = Arrays.copyOf(data, Math.max(dataSize + suffix.length, data.length * 2));
+            }
+
+            int local = size++;
+            System.arraycopy(suffix, 0, data, dataSize, suffix.length);
+            prefixes[local] = prefix;
+            ids[local] = id;
+            hashes[local] = hash;
+            suffixStarts[local] = dataSize;
+            dataSize += suffix.length;
+            suffixStarts[local + 1] = dataSize;
+            table[slot] = local + 1;
+
+            //keep the load factor under 1/2
+            if (size * 2 > table.length) {
+                rehash();
+            }
+            return local;
+        }
+
+        private void rehash() {
+            int[] newTable = new int[table.length * 2];
+            int mask = newTable.length - 1;
+            for (int local = 0; local < size; local++) {
+                int slot = hashes[local] & mask;
+                while (newTable[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                newTable[slot] = local + 1;
+            }
+            table = newTable;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package net.acomputerdog.ce2.index;
+
+import javassist.bytecode.Opcode;
+import net.acomputerdog.ce2.classfile.ClassReader;
+import net.acomputerdog.ce2.classfile.CodeReader;
+import net.acomputerdog.ce2.disassembler.Disassembly;
+import net.acomputerdog.ce2.disassembler.Reference;
+import net.acomputerdog.ce2.util.IntList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cross-reference index of method calls, field accesses and instantiations.  Every reference is stored as
+ * four ints: source class, source member, target, and kind packed with the bytecode offset.  After finish()
+ * the references are grouped by target so that a lookup is a single array access.
+ */
+public class XRefIndex {
+    public static final int CALL = 0;
+    public static final int READ = 1;
+    public static final int WRITE = 2;
+    public static final int NEW = 3;
+
+    private static final String[] KIND_NAMES = {"call", "read", "write", "new"};
+
+    private final SymbolTable symbols;
+
+    private final IntList sourceClasses = new IntList(1024);
+    private final IntList sourceMembers = new IntList(1024);
+    private final IntList targets = new IntList(1024);
+    //kind in the high 16 bits, bytecode offset in the low 16 bits
+    private final IntList kindOffsets = new IntList(1024);
+
+    //reference indexes sorted by target, and the start of each target's range
+    private int[] byTarget;
+    private int[] targetStarts;
+
+    public XRefIndex(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    private int intern(String str) {
+        return symbols.intern(str);
+    }
+
+    private static String targetKey(String className, String memberKey) {
+        return memberKey == null ? className : className + '#' + memberKey;
+    }
+
+    /**
+     * Scans the code of every method in a class file for references.  Can be called from several threads.
+     */
+    public void addClass(ClassReader cls) {
+        Batch batch = new Batch();
+        int clsId = intern(cls.getName());
+        for (ClassReader.Member method : cls.getMethods()) {
+            CodeReader code = method.getCode();
+            if (code != null) {
+                //stored without the class, so that it doesn't repeat the whole class name
+                int memberId = intern(Disassembly.memberKey(method.getName(), method.getDescriptor()));
+                try {
+                    scanCode(batch, clsId, memberId, cls, code);
+                } catch (RuntimeException e) {
+                    System.err.println("Unable to index method " + cls.getName() + "." + method.getName() + ": " + e);
+                }
+            }
+        }
+
+        synchronized (this) {
+            sourceClasses.addAll(batch.sourceClasses);
+            sourceMembers.addAll(batch.sourceMembers);
+            targets.addAll(batch.targets);
+            kindOffsets.addAll(batch.kindOffsets);
+        }
+    }
+
+    private void scanCode(Batch batch, int clsId, int memberId, ClassReader cls, CodeReader it) {
+        while (it.hasNext()) {
+            int off = it.next();
+            int op = it.byteAt(off);
+            switch (op) {
+                case Opcode.GETSTATIC:
+                case Opcode.GETFIELD:
+                    batch.add(clsId, memberId, refTarget(cls, it.u16bitAt(off + 1)), READ, off);
+                    break;
+                case Opcode.PUTSTATIC:
+                case Opcode.PUTFIELD:
+                    batch.add(clsId, memberId, refTarget(cls, it.u16bitAt(off + 1)), WRITE, off);
+                    break;
+                case Opcode.INVOKEVIRTUAL:
+                case Opcode.INVOKESPECIAL:
+                case Opcode.INVOKESTATIC:
+                case Opcode.INVOKEINTERFACE:
+                    batch.add(clsId, memberId, refTarget(cls, it.u16bitAt(off + 1)), CALL, off);
+                    break;
+                case Opcode.NEW:
+                    batch.add(clsId, memberId, intern(cls.getClassName(it.u16bitAt(off + 1))), NEW, off);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    //fields, methods and interface methods are all read the same way
+    private int refTarget(ClassReader cls, int idx) {
+        String key = Disassembly.memberKey(cls.getRefName(idx), cls.getRefType(idx));
+        return intern(targetKey(cls.getRefClassName(idx), key));
+    }
+
+    /**
+     * Groups the references by target.  Must be called once all classes are added and before any queries.
+     */
+    public synchronized void finish() {
+        int numRefs = targets.size();
+        int[] starts = new int[symbols.size() + 1];
+        for (int i = 0; i < numRefs; i++) {
+            starts[targets.get(i) + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        int[] refs = new int[numRefs];
+        int[] next = Arrays.copyOf(starts, starts.length);
+        for (int i = 0; i < numRefs; i++) {
+            refs[next[targets.get(i)]++] = i;
+        }
+        byTarget = refs;
+        targetStarts = starts;
+    }
+
+    public int getReferenceCount() {
+        return targets.size();
+    }
+
+    /**
+     * Finds every call to a method or access to a field.
+     */
+    public List<XRef> findReferences(String className, String memberKey) {
+        return find(targetKey(className, memberKey));
+    }
+
+    /**
+     * Finds every "new" of a class.
+     */
+    public List<XRef> findInstantiations(String className) {
+        return find(targetKey(className, null));
+    }
+
+    private List<XRef> find(String target) {
+        int id = symbols.lookup(target);
+        //symbols added after finish() can't have any references
+        if (id == -1 || targetStarts == null || id + 1 >= targetStarts.length) {
+            return new ArrayList<>();
+        }
+        List<XRef> results = new ArrayList<>(targetStarts[id + 1] - targetStarts[id]);
+        for (int i = targetStarts[id]; i < targetStarts[id + 1]; i++) {
+            int ref = byTarget[i];
+            int kindOffset = kindOffsets.get(ref);
+            results.add(new XRef(symbols.get(sourceClasses.get(ref)), symbols.get(sourceMembers.get(ref)), kindOffset >>> 16, kindOffset & 0xFFFF));
+        }
+        return results;
+    }
+
+    //references from one class, added to the index all at once
+    private static class Batch {
+        private final IntList sourceClasses = new IntList();
+        private final IntList sourceMembers = new IntList();
+        private final IntList targets = new IntList();
+        private final IntList kindOffsets = new IntList();
+
+        private void add(int clsId, int memberId, int target, int kind, int off) {
+            sourceClasses.add(clsId);
+            sourceMembers.add(memberId);
+            targets.add(target);
+            kindOffsets.add(kind << 16 | off);
+        }
+    }
+
+    public static class XRef {
+        private final String className;
+        private final String memberKey;
+        private final int kind;
+        private final int offset;
+
+        private XRef(String className, String memberKey, int kind, int offset) {
+            this.className = className;
+            this.memberKey = memberKey;
+            this.kind = kind;
+            this.offset = offset;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getMemberKey() {
+            return memberKey;
+        }
+
+        public int getKind() {
+            return kind;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Gets a Reference to the instruction that makes this reference.
+         */
+        public Reference toReference() {
+            return new Reference(className, memberKey, offset);
+        }
+
+        @Override
+        public String toString() {
+            return KIND_NAMES[kind] + " in " + className + "." + memberKey + " @" + offset;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package net.acomputerdog.ce2.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A class being looked up on the classpath by CEClassPath.find.
+ */
+@Name("net.acomputerdog.ce2.ClassLookup")
+@Label("Class Lookup")
+@Category({"Class Explorer 2", "Classpath"})
+public class ClassLookupEvent extends Event {
+    @Label("Class")
+    public String className;
+
+    @Label("Location")
+    @Description("URL the class was found at, or null if it wasn't found")
+    public String location;
+
+    @Label("Bytes")
+    @Description("Size of the class file, or -1 if it wasn't found or the size isn't known")
+    @DataAmount
+    public long bytes;
+}
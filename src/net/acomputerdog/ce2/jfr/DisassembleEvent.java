@@ -0,0 +1,33 @@
+package net.acomputerdog.ce2.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Disassembly of a whole class.
+ */
+@Name("net.acomputerdog.ce2.Disassemble")
+@Label("Disassemble Class")
+@Category({"Class Explorer 2", "Disassembly"})
+public class DisassembleEvent extends Event {
+    @Label("Class")
+    public String className;
+
+    @Label("Location")
+    @Description("URL of the class file, or null if it wasn't loaded through the classpath")
+    public String location;
+
+    @Label("Code Bytes")
+    @Description("Bytecode length of every method of the class")
+    @DataAmount
+    public long codeBytes;
+
+    @Label("Instructions")
+    @Description("Instructions in the code of every method of the class")
+    public int instructions;
+
+    @Label("Methods")
+    public int methods;
+
+    @Label("Lines")
+    public int lines;
+}
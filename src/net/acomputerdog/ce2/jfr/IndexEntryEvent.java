@@ -0,0 +1,21 @@
+package net.acomputerdog.ce2.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Indexing of one classpath entry, from reading its first class until its classes are parsed.
+ */
+@Name("net.acomputerdog.ce2.IndexEntry")
+@Label("Index Classpath Entry")
+@Category({"Class Explorer 2", "Indexing"})
+public class IndexEntryEvent extends Event {
+    @Label("Entry")
+    public String entry;
+
+    @Label("Classes")
+    public int classes;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
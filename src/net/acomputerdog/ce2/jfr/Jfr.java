@@ -0,0 +1,21 @@
+package net.acomputerdog.ce2.jfr;
+
+/**
+ * Java Flight Recorder support.  The event classes extend jdk.jfr.Event, which older Java 8 runtimes don't
+ * have, so code must only create events if ENABLED is true.  -Dce2.jfr=false turns the events off.
+ */
+public class Jfr {
+    public static final boolean ENABLED = isAvailable();
+
+    private static boolean isAvailable() {
+        if (!Boolean.parseBoolean(System.getProperty("ce2.jfr", "true"))) {
+            return false;
+        }
+        try {
+            Class.forName("jdk.jfr.Event", false, Jfr.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package net.acomputerdog.ce2.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Decoding the bytecode of one method.
+ */
+@Name("net.acomputerdog.ce2.MethodDecode")
+@Label("Decode Method")
+@Category({"Class Explorer 2", "Disassembly"})
+public class MethodDecodeEvent extends Event {
+    @Label("Class")
+    public String className;
+
+    @Label("Location")
+    @Description("URL of the class file, or null if it wasn't loaded through the classpath")
+    public String location;
+
+    @Label("Method")
+    @Description("Name and descriptor")
+    public String method;
+
+    @Label("Code Bytes")
+    @DataAmount
+    public int codeBytes;
+
+    @Label("Instructions")
+    public int instructions;
+}
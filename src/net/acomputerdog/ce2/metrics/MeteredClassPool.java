@@ -0,0 +1,27 @@
+package net.acomputerdog.ce2.metrics;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+/**
+ * ClassPool that reports its cache hit rate to Metrics, and can count the CtClasses it holds.
+ */
+public class MeteredClassPool extends ClassPool {
+    public MeteredClassPool(boolean useDefaultPath) {
+        super(useDefaultPath);
+    }
+
+    @Override
+    protected CtClass getCached(String classname) {
+        CtClass cls = super.getCached(classname);
+        Metrics.get().recordCache(Metrics.Cache.CLASS_POOL, cls != null);
+        return cls;
+    }
+
+    /**
+     * Gets the number of CtClasses in this pool, including the primitive types.
+     */
+    public int getCachedClassCount() {
+        return classes.size();
+    }
+}
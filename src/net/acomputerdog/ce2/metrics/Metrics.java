@@ -0,0 +1,297 @@
+package net.acomputerdog.ce2.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Counters and timers for classpath lookups, indexing, disassembly and the caches.  Recording is a few
+ * LongAdder increments, so it is always on.  There is one instance, which is also the JMX MBean.
+ */
+public class Metrics implements MetricsMBean {
+    private static final Metrics INSTANCE = new Metrics();
+
+    /**
+     * Parts of HTMLDisassembler.disassembleClass that are timed separately.
+     */
+    public enum Phase {
+        //creating fake classes for references that aren't on the classpath
+        RESOLVE,
+        HEADER,
+        FIELDS,
+        CONSTRUCTORS,
+        METHODS
+    }
+
+    /**
+     * Caches that count hits and misses.
+     */
+    public enum Cache {
+        //rendered class tabs
+        TAB,
+        //decoded method bodies of large classes
+        BODY,
+        //saved string index segments
+        INDEX_SEGMENT,
+        //CtClasses in the ClassPool
+        CLASS_POOL
+    }
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder lookupMisses = new LongAdder();
+    private final LongAdder lookupNanos = new LongAdder();
+    private final LongAdder filesOpened = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+
+    private final LongAdder indexedClasses = new LongAdder();
+    private final LongAdder indexNanos = new LongAdder();
+    //entry path -> {classes, nanos} of the last build that included it
+    private final Map<String, long[]> entryRates = new ConcurrentHashMap<>();
+
+    private final LongAdder disassemblies = new LongAdder();
+    private final LongAdder disassembledLines = new LongAdder();
+    private final LongAdder[] phaseNanos = newAdders(Phase.values().length);
+
+    private final LongAdder[] cacheHits = newAdders(Cache.values().length);
+    private final LongAdder[] cacheMisses = newAdders(Cache.values().length);
+
+    private volatile IntSupplier liveClasses = () -> 0;
+
+    private Metrics() {
+    }
+
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Registers the MBean with the platform MBean server.  Failures are only logged, the metrics still work.
+     */
+    public static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName("net.acomputerdog.ce2:type=Metrics"));
+        } catch (JMException e) {
+            System.err.println("Unable to register metrics MBean: " + e);
+        }
+    }
+
+    public void recordLookup(boolean hit, long nanos) {
+        lookups.increment();
+        if (!hit) {
+            lookupMisses.increment();
+        }
+        lookupNanos.add(nanos);
+    }
+
+    /**
+     * Wraps a class file stream so that the bytes read from it are counted.
+     */
+    public InputStream countBytes(InputStream in) {
+        filesOpened.increment();
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    bytesRead.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    bytesRead.add(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    public void recordIndexedEntry(File entry, long classes, long nanos) {
+        indexedClasses.add(classes);
+        indexNanos.add(nanos);
+        entryRates.put(entry.getPath(), new long[]{classes, nanos});
+    }
+
+    public void recordPhase(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()].add(nanos);
+    }
+
+    public void recordDisassembly(int lines) {
+        disassemblies.increment();
+        disassembledLines.add(lines);
+    }
+
+    public void recordCache(Cache cache, boolean hit) {
+        (hit ? cacheHits : cacheMisses)[cache.ordinal()].increment();
+    }
+
+    /**
+     * Sets where the live CtClass count comes from.
+     */
+    public void setLiveClassCount(IntSupplier liveClasses) {
+        this.liveClasses = liveClasses;
+    }
+
+    /**
+     * Gets a one line summary for the status bar.
+     */
+    public String getSummary() {
+        return String.format("%d lookups (%.0f%% hit), %d KB read, %d classes live, %d disassembled (%.1f ms avg), tab cache %.0f%%",
+                getLookupCount(), getLookupHitRate() * 100, getClassBytesRead() / 1024, getLiveClassCount(),
+                getDisassemblyCount(), getAverageDisassemblyMillis(), getTabCacheHitRate() * 100);
+    }
+
+    @Override
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    @Override
+    public long getLookupMissCount() {
+        return lookupMisses.sum();
+    }
+
+    @Override
+    public double getLookupHitRate() {
+        long count = lookups.sum();
+        return count == 0 ? 0 : (count - lookupMisses.sum()) / (double) count;
+    }
+
+    @Override
+    public double getAverageLookupMicros() {
+        long count = lookups.sum();
+        return count == 0 ? 0 : lookupNanos.sum() / 1000.0 / count;
+    }
+
+    @Override
+    public long getClassFilesOpened() {
+        return filesOpened.sum();
+    }
+
+    @Override
+    public long getClassBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getIndexedClassCount() {
+        return indexedClasses.sum();
+    }
+
+    @Override
+    public double getIndexClassesPerSecond() {
+        return rate(indexedClasses.sum(), indexNanos.sum());
+    }
+
+    @Override
+    public String[] getIndexEntryRates() {
+        List<String> rates = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : entryRates.entrySet()) {
+            long[] value = entry.getValue();
+            rates.add(String.format("%s: %.0f classes/s (%d classes)", entry.getKey(), rate(value[0], value[1]), value[0]));
+        }
+        return rates.toArray(new String[rates.size()]);
+    }
+
+    private static double rate(long count, long nanos) {
+        return nanos == 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    @Override
+    public long getDisassemblyCount() {
+        return disassemblies.sum();
+    }
+
+    @Override
+    public double getAverageDisassemblyMillis() {
+        long count = disassemblies.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (LongAdder nanos : phaseNanos) {
+            total += nanos.sum();
+        }
+        return total / 1e6 / count;
+    }
+
+    @Override
+    public long getDisassembledLines() {
+        return disassembledLines.sum();
+    }
+
+    @Override
+    public String[] getDisassemblyPhaseMillis() {
+        String[] phases = new String[phaseNanos.length];
+        for (Phase phase : Phase.values()) {
+            phases[phase.ordinal()] = String.format("%s: %.1f", phase.name().toLowerCase(), phaseNanos[phase.ordinal()].sum() / 1e6);
+        }
+        return phases;
+    }
+
+    private double hitRate(Cache cache) {
+        long hits = cacheHits[cache.ordinal()].sum();
+        long total = hits + cacheMisses[cache.ordinal()].sum();
+        return total == 0 ? 0 : hits / (double) total;
+    }
+
+    @Override
+    public double getTabCacheHitRate() {
+        return hitRate(Cache.TAB);
+    }
+
+    @Override
+    public double getBodyCacheHitRate() {
+        return hitRate(Cache.BODY);
+    }
+
+    @Override
+    public double getIndexSegmentCacheHitRate() {
+        return hitRate(Cache.INDEX_SEGMENT);
+    }
+
+    @Override
+    public double getClassPoolHitRate() {
+        return hitRate(Cache.CLASS_POOL);
+    }
+
+    @Override
+    public int getLiveClassCount() {
+        return liveClasses.getAsInt();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[]{lookups, lookupMisses, lookupNanos, filesOpened, bytesRead,
+                indexedClasses, indexNanos, disassemblies, disassembledLines}) {
+            adder.reset();
+        }
+        for (LongAdder[] adders : new LongAdder[][]{phaseNanos, cacheHits, cacheMisses}) {
+            for (LongAdder adder : adders) {
+                adder.reset();
+            }
+        }
+        entryRates.clear();
+    }
+}
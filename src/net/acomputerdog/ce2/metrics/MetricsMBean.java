@@ -0,0 +1,51 @@
+package net.acomputerdog.ce2.metrics;
+
+/**
+ * JMX view of Metrics, registered as net.acomputerdog.ce2:type=Metrics.  Times are totals since the last
+ * reset unless they say they are averages.
+ */
+public interface MetricsMBean {
+    long getLookupCount();
+
+    long getLookupMissCount();
+
+    double getLookupHitRate();
+
+    double getAverageLookupMicros();
+
+    long getClassFilesOpened();
+
+    long getClassBytesRead();
+
+    long getIndexedClassCount();
+
+    double getIndexClassesPerSecond();
+
+    /**
+     * Gets the indexing rate of each classpath entry in the last build, as "path: classes/s (classes)".
+     */
+    String[] getIndexEntryRates();
+
+    long getDisassemblyCount();
+
+    double getAverageDisassemblyMillis();
+
+    long getDisassembledLines();
+
+    /**
+     * Gets the total time of each disassembly phase, as "phase: ms".
+     */
+    String[] getDisassemblyPhaseMillis();
+
+    double getTabCacheHitRate();
+
+    double getBodyCacheHitRate();
+
+    double getIndexSegmentCacheHitRate();
+
+    double getClassPoolHitRate();
+
+    int getLiveClassCount();
+
+    void reset();
+}
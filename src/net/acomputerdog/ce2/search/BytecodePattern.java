@@ -0,0 +1,161 @@
+package net.acomputerdog.ce2.search;
+
+import javassist.bytecode.Mnemonic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A sequence of instructions to search for, written as instructions separated by ';'.  Each instruction is
+ * a mnemonic, optionally followed by text that its operand must contain:
+ * <pre>
+ *     ldc "..." ; invokestatic javax.crypto.Cipher.getInstance
+ *     invokevirtual java.io.File.
+ *     new ; dup ; invoke* StringBuilder.&lt;init&gt;
+ * </pre>
+ * '*' matches any text in mnemonics and operands, as do "..." and an ellipsis character in operands.  Operands are written
+ * as owner.name for fields, owner.name(descriptor) for methods, the class name for class constants, and
+ * quoted for strings.
+ */
+public class BytecodePattern {
+    private final String text;
+    //allowed opcodes of each instruction
+    private final boolean[][] opcodes;
+    //null if any operand matches
+    private final Pattern[] operands;
+
+    private BytecodePattern(String text, boolean[][] opcodes, Pattern[] operands) {
+        this.text = text;
+        this.opcodes = opcodes;
+        this.operands = operands;
+    }
+
+    /**
+     * Parses a pattern.
+     *
+     * @throws IllegalArgumentException If the pattern is empty, or a mnemonic doesn't match any instruction
+     */
+    public static BytecodePattern parse(String text) {
+        List<String> parts = splitInstructions(text);
+        if (parts.isEmpty()) {
+            throw new IllegalArgumentException("Pattern is empty");
+        }
+
+        boolean[][] opcodes = new boolean[parts.size()][];
+        Pattern[] operands = new Pattern[parts.size()];
+        for (int i = 0; i < parts.size(); i++) {
+            String part = parts.get(i);
+            int split = part.indexOf(' ');
+            String mnemonic = split == -1 ? part : part.substring(0, split);
+            String operand = split == -1 ? "" : part.substring(split + 1).trim();
+
+            opcodes[i] = matchOpcodes(mnemonic);
+            if (!operand.isEmpty()) {
+                operands[i] = Pattern.compile(globToRegex(operand.replace("...", "*").replace('\u2026', '*')));
+            }
+        }
+        return new BytecodePattern(text, opcodes, operands);
+    }
+
+    //splits at semicolons that aren't in a string
+    private static List<String> splitInstructions(String text) {
+        List<String> parts = new ArrayList<>();
+        StringBuilder part = new StringBuilder();
+        boolean inString = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                inString = !inString;
+            }
+            if (c == ';' && !inString) {
+                addPart(parts, part);
+            } else {
+                part.append(c);
+            }
+        }
+        addPart(parts, part);
+        return parts;
+    }
+
+    private static void addPart(List<String> parts, StringBuilder part) {
+        String str = part.toString().trim();
+        if (!str.isEmpty()) {
+            parts.add(str);
+        }
+        part.setLength(0);
+    }
+
+    private static boolean[] matchOpcodes(String mnemonic) {
+        Pattern regex = Pattern.compile(globToRegex(mnemonic.toLowerCase()));
+        boolean[] matches = new boolean[256];
+        boolean any = false;
+        for (int op = 0; op < Mnemonic.OPCODE.length; op++) {
+            if (Mnemonic.OPCODE[op] != null && regex.matcher(Mnemonic.OPCODE[op]).matches()) {
+                matches[op] = true;
+                any = true;
+            }
+        }
+        if (!any) {
+            throw new IllegalArgumentException("Unknown instruction: " + mnemonic);
+        }
+        return matches;
+    }
+
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        int star;
+        while ((star = glob.indexOf('*', start)) != -1) {
+            if (star > start) {
+                regex.append(Pattern.quote(glob.substring(start, star)));
+            }
+            regex.append(".*");
+            start = star + 1;
+        }
+        if (start < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(start)));
+        }
+        return regex.toString();
+    }
+
+    public int getLength() {
+        return opcodes.length;
+    }
+
+    /**
+     * Finds every match in a method.
+     *
+     * @return The index of the first instruction of each match
+     */
+    public List<Integer> findMatches(OpcodeStream code) {
+        List<Integer> matches = new ArrayList<>();
+        int last = code.size() - opcodes.length;
+        for (int start = 0; start <= last; start++) {
+            if (matchesAt(code, start)) {
+                matches.add(start);
+            }
+        }
+        return matches;
+    }
+
+    private boolean matchesAt(OpcodeStream code, int start) {
+        //opcodes are checked first, operands are only rendered when every opcode matches
+        for (int i = 0; i < opcodes.length; i++) {
+            if (!opcodes[i][code.getOpcode(start + i)]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < operands.length; i++) {
+            if (operands[i] != null && !operands[i].matcher(code.getOperand(start + i)).find()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,149 @@
+package net.acomputerdog.ce2.search;
+
+import net.acomputerdog.ce2.CEClassPath;
+import net.acomputerdog.ce2.classfile.ClassReader;
+import net.acomputerdog.ce2.disassembler.Disassembly;
+import net.acomputerdog.ce2.disassembler.Reference;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Searches every method on a classpath for a BytecodePattern.  Classes are read and matched on a pool with one
+ * thread per core.  Once the search has enough matches or is cancelled, it stops reading the classpath and
+ * drops the classes that are still queued.
+ */
+public class BytecodeSearch {
+    private final BytecodePattern pattern;
+    private final int limit;
+
+    private final AtomicInteger matches = new AtomicInteger();
+    private final AtomicInteger classes = new AtomicInteger();
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param pattern Pattern to search for
+     * @param limit Maximum number of matches to find
+     */
+    public BytecodeSearch(BytecodePattern pattern, int limit) {
+        this.pattern = pattern;
+        this.limit = limit;
+    }
+
+    /**
+     * Runs the search.  Matches are passed to the consumer from the worker threads as soon as they are found.
+     */
+    public void run(CEClassPath classPath, Consumer<Match> results) {
+        try {
+            classPath.visitClassFilesParallel((entry, path, bytes) -> {
+                if (cancelled) {
+                    return false;
+                }
+                try {
+                    searchClass(ClassReader.read(bytes), results);
+                } catch (RuntimeException e) {
+                    System.err.println("Unable to search class " + path + ": " + e);
+                }
+                classes.incrementAndGet();
+                return !cancelled;
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void searchClass(ClassReader cls, Consumer<Match> results) {
+        for (ClassReader.Member method : cls.getMethods()) {
+            OpcodeStream code;
+            try {
+                code = OpcodeStream.read(cls, method);
+            } catch (RuntimeException e) {
+                System.err.println("Unable to search method " + cls.getName() + "." + method.getName() + ": " + e);
+                continue;
+            }
+            if (code == null) {
+                continue;
+            }
+
+            for (int start : pattern.findMatches(code)) {
+                //another thread may have found the last match
+                if (cancelled || matches.incrementAndGet() > limit) {
+                    cancelled = true;
+                    return;
+                }
+                StringBuilder text = new StringBuilder();
+                for (int i = start; i < start + pattern.getLength(); i++) {
+                    if (i > start) {
+                        text.append("; ");
+                    }
+                    text.append(code.getInstruction(i));
+                }
+                results.accept(new Match(cls.getName(), Disassembly.memberKey(method.getName(), method.getDescriptor()), code.getOffset(start), text.toString()));
+            }
+        }
+    }
+
+    /**
+     * Stops the search.  Classes that are already being searched may still report matches.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public int getMatchCount() {
+        return Math.min(matches.get(), limit);
+    }
+
+    /**
+     * Checks if the search stopped because it found the maximum number of matches.
+     */
+    public boolean isLimitReached() {
+        return matches.get() > limit;
+    }
+
+    public int getClassCount() {
+        return classes.get();
+    }
+
+    public static class Match {
+        private final String className;
+        private final String memberKey;
+        private final int offset;
+        private final String text;
+
+        private Match(String className, String memberKey, int offset, String text) {
+            this.className = className;
+            this.memberKey = memberKey;
+            this.offset = offset;
+            this.text = text;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getMemberKey() {
+            return memberKey;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Gets the matched instructions as text.
+         */
+        public String getText() {
+            return text;
+        }
+
+        public Reference toReference() {
+            return new Reference(className, memberKey, offset);
+        }
+
+        @Override
+        public String toString() {
+            return className + "." + memberKey + " @" + offset + ": " + text;
+        }
+    }
+}
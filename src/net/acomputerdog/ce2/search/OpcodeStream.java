@@ -0,0 +1,182 @@
+package net.acomputerdog.ce2.search;
+
+import javassist.bytecode.Mnemonic;
+import javassist.bytecode.Opcode;
+import net.acomputerdog.ce2.classfile.ClassReader;
+import net.acomputerdog.ce2.classfile.CodeReader;
+
+/**
+ * The instructions of one method as a flat array of opcodes, so that patterns can be matched without
+ * decoding operands.  Operands are only rendered as text when they are asked for.  wide instructions are
+ * stored as the opcode that they widen.
+ */
+public class OpcodeStream {
+    private final ClassReader cls;
+    private final CodeReader code;
+    private final byte[] opcodes;
+    private final int[] offsets;
+    private final boolean[] wide;
+    private final int size;
+
+    private OpcodeStream(ClassReader cls, CodeReader code, byte[] opcodes, int[] offsets, boolean[] wide, int size) {
+        this.cls = cls;
+        this.code = code;
+        this.opcodes = opcodes;
+        this.offsets = offsets;
+        this.wide = wide;
+        this.size = size;
+    }
+
+    /**
+     * Reads the instructions of a method.  Returns null if the method has no code.
+     */
+    public static OpcodeStream read(ClassReader cls, ClassReader.Member method) {
+        CodeReader it = method.getCode();
+        if (it == null) {
+            return null;
+        }
+        //no instruction is smaller than a byte
+        int length = it.getCodeLength();
+        byte[] opcodes = new byte[length];
+        int[] offsets = new int[length];
+        boolean[] wide = new boolean[length];
+        int size = 0;
+
+        while (it.hasNext()) {
+            int off = it.next();
+            int op = it.byteAt(off);
+            if (op == Opcode.WIDE) {
+                op = it.byteAt(off + 1);
+                wide[size] = true;
+            }
+            opcodes[size] = (byte) op;
+            offsets[size] = off;
+            size++;
+        }
+        return new OpcodeStream(cls, it, opcodes, offsets, wide, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getOpcode(int idx) {
+        return opcodes[idx] & 0xFF;
+    }
+
+    public int getOffset(int idx) {
+        return offsets[idx];
+    }
+
+    /**
+     * Gets an instruction as text, for example "invokevirtual java.io.File.exists()Z".
+     */
+    public String getInstruction(int idx) {
+        String operand = getOperand(idx);
+        String mnemonic = Mnemonic.OPCODE[getOpcode(idx)];
+        return operand.isEmpty() ? mnemonic : mnemonic + " " + operand;
+    }
+
+    /**
+     * Gets the operand of an instruction as text, or an empty string if it has none.
+     */
+    public String getOperand(int idx) {
+        int op = getOpcode(idx);
+        //skip the wide prefix
+        int off = wide[idx] ? offsets[idx] + 1 : offsets[idx];
+        switch (op) {
+            case Opcode.BIPUSH:
+                return String.valueOf(code.signedByteAt(off + 1));
+            case Opcode.SIPUSH:
+                return String.valueOf(s16(off + 1));
+            case Opcode.LDC:
+                return constant(code.byteAt(off + 1));
+            case Opcode.LDC_W:
+            case Opcode.LDC2_W:
+                return constant(u16(off + 1));
+            case Opcode.ILOAD:
+            case Opcode.LLOAD:
+            case Opcode.FLOAD:
+            case Opcode.DLOAD:
+            case Opcode.ALOAD:
+            case Opcode.ISTORE:
+            case Opcode.LSTORE:
+            case Opcode.FSTORE:
+            case Opcode.DSTORE:
+            case Opcode.ASTORE:
+            case Opcode.RET:
+                return String.valueOf(wide[idx] ? u16(off + 1) : code.byteAt(off + 1));
+            case Opcode.IINC:
+                return wide[idx] ? u16(off + 1) + " " + s16(off + 3) : code.byteAt(off + 1) + " " + code.signedByteAt(off + 2);
+            case Opcode.GETSTATIC:
+            case Opcode.PUTSTATIC:
+            case Opcode.GETFIELD:
+            case Opcode.PUTFIELD: {
+                int ref = u16(off + 1);
+                return cls.getRefClassName(ref) + "." + cls.getRefName(ref);
+            }
+            case Opcode.INVOKEVIRTUAL:
+            case Opcode.INVOKESPECIAL:
+            case Opcode.INVOKESTATIC:
+            case Opcode.INVOKEINTERFACE: {
+                int ref = u16(off + 1);
+                return cls.getRefClassName(ref) + "." + cls.getRefName(ref) + cls.getRefType(ref);
+            }
+            case Opcode.INVOKEDYNAMIC: {
+                int ref = u16(off + 1);
+                return cls.getRefName(ref) + cls.getRefType(ref);
+            }
+            case Opcode.NEW:
+            case Opcode.ANEWARRAY:
+            case Opcode.CHECKCAST:
+            case Opcode.INSTANCEOF:
+            case Opcode.MULTIANEWARRAY:
+                return cls.getClassName(u16(off + 1));
+            case Opcode.NEWARRAY:
+                return String.valueOf(code.signedByteAt(off + 1));
+            default:
+                if (isBranch(op)) {
+                    int delta = op == Opcode.GOTO_W || op == Opcode.JSR_W ? s32(off + 1) : s16(off + 1);
+                    return String.valueOf(offsets[idx] + delta);
+                }
+                return "";
+        }
+    }
+
+    private static boolean isBranch(int op) {
+        return (op >= Opcode.IFEQ && op <= Opcode.JSR) || op == Opcode.IFNULL || op == Opcode.IFNONNULL
+                || op == Opcode.GOTO_W || op == Opcode.JSR_W;
+    }
+
+    private String constant(int idx) {
+        switch (cls.getTag(idx)) {
+            case ClassReader.CONST_String:
+                return "\"" + cls.getString(idx) + "\"";
+            case ClassReader.CONST_Class:
+                return cls.getClassName(idx);
+            default:
+                return String.valueOf(cls.getLdcValue(idx));
+        }
+    }
+
+    private int u16(int off) {
+        return code.u16bitAt(off);
+    }
+
+    private int s16(int off) {
+        return code.s16bitAt(off);
+    }
+
+    private int s32(int off) {
+        return code.s32bitAt(off);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            builder.append(offsets[i]).append(": ").append(getInstruction(i)).append('\n');
+        }
+        return builder.toString();
+    }
+}
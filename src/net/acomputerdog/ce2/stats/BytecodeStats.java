@@ -0,0 +1,285 @@
+package net.acomputerdog.ce2.stats;
+
+import javassist.bytecode.Mnemonic;
+import javassist.bytecode.Opcode;
+import net.acomputerdog.ce2.classfile.ClassReader;
+import net.acomputerdog.ce2.classfile.CodeReader;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Bytecode statistics of a set of classes: an opcode histogram, method sizes against the HotSpot JIT limits,
+ * and per package totals.  Counters are kept in primitive arrays so that adding a method doesn't allocate.
+ * Not thread safe, each scanning thread fills its own BytecodeStats and they are merged at the end.
+ */
+public class BytecodeStats {
+    /**
+     * Methods with more bytecode than this aren't JIT compiled (-XX:HugeMethodLimit).
+     */
+    public static final int HUGE_METHOD_LIMIT = 8000;
+    /**
+     * Largest hot method that is inlined (-XX:FreqInlineSize).
+     */
+    public static final int FREQ_INLINE_SIZE = 325;
+    /**
+     * Largest method that is always inlined (-XX:MaxInlineSize).
+     */
+    public static final int MAX_INLINE_SIZE = 35;
+
+    //columns of the per package counters
+    public static final int CLASSES = 0;
+    public static final int METHODS = 1;
+    public static final int CODE_BYTES = 2;
+    public static final int OVER_MAX_INLINE = 3;
+    public static final int OVER_FREQ_INLINE = 4;
+    public static final int HUGE = 5;
+    public static final int INVOKEDYNAMIC = 6;
+    public static final String[] COLUMN_NAMES = {"classes", "methods", "code_bytes",
+            "over_" + MAX_INLINE_SIZE, "over_" + FREQ_INLINE_SIZE, "over_" + HUGE_METHOD_LIMIT, "invokedynamic"};
+
+    private final long[] opcodes = new long[256];
+    private final Map<String, long[]> packages = new HashMap<>();
+    private final List<HugeMethod> hugeMethods = new ArrayList<>();
+
+    public void addClass(ClassReader cls) {
+        String name = cls.getName();
+        int dot = name.lastIndexOf('.');
+        long[] pkg = getPackage(dot == -1 ? "" : name.substring(0, dot));
+        pkg[CLASSES]++;
+
+        for (ClassReader.Member method : cls.getMethods()) {
+            CodeReader code = method.getCode();
+            if (code == null) {
+                continue;
+            }
+            int length = code.getCodeLength();
+            pkg[METHODS]++;
+            pkg[CODE_BYTES] += length;
+            if (length > MAX_INLINE_SIZE) {
+                pkg[OVER_MAX_INLINE]++;
+            }
+            if (length > FREQ_INLINE_SIZE) {
+                pkg[OVER_FREQ_INLINE]++;
+            }
+            if (length > HUGE_METHOD_LIMIT) {
+                pkg[HUGE]++;
+                hugeMethods.add(new HugeMethod(name, method.getName() + method.getDescriptor(), length));
+            }
+
+            try {
+                while (code.hasNext()) {
+                    int op = code.byteAt(code.next());
+                    opcodes[op]++;
+                    if (op == Opcode.INVOKEDYNAMIC) {
+                        pkg[INVOKEDYNAMIC]++;
+                    }
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Unable to scan " + name + "." + method.getName() + ": " + e);
+            }
+        }
+    }
+
+    private long[] getPackage(String name) {
+        long[] pkg = packages.get(name);
+        if (pkg == null) {
+            pkg = new long[COLUMN_NAMES.length];
+            packages.put(name, pkg);
+        }
+        return pkg;
+    }
+
+    /**
+     * Adds the counts of another BytecodeStats to this one.
+     */
+    public void merge(BytecodeStats other) {
+        for (int op = 0; op < opcodes.length; op++) {
+            opcodes[op] += other.opcodes[op];
+        }
+        for (Map.Entry<String, long[]> entry : other.packages.entrySet()) {
+            long[] pkg = getPackage(entry.getKey());
+            for (int col = 0; col < pkg.length; col++) {
+                pkg[col] += entry.getValue()[col];
+            }
+        }
+        hugeMethods.addAll(other.hugeMethods);
+    }
+
+    /**
+     * Gets the number of times each opcode is used, indexed by opcode.
+     */
+    public long[] getOpcodeCounts() {
+        return opcodes.clone();
+    }
+
+    /**
+     * Gets the counters of every package, sorted by name.  Each array is indexed by the column constants.
+     */
+    public SortedMap<String, long[]> getPackages() {
+        return new TreeMap<>(packages);
+    }
+
+    /**
+     * Gets the counters summed over every package.
+     */
+    public long[] getTotals() {
+        long[] totals = new long[COLUMN_NAMES.length];
+        for (long[] pkg : packages.values()) {
+            for (int col = 0; col < totals.length; col++) {
+                totals[col] += pkg[col];
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Gets the methods that are too big to be JIT compiled, largest first.
+     */
+    public List<HugeMethod> getHugeMethods() {
+        List<HugeMethod> sorted = new ArrayList<>(hugeMethods);
+        sorted.sort((a, b) -> Integer.compare(b.length, a.length));
+        return sorted;
+    }
+
+    /**
+     * Writes one of the tables as CSV.
+     *
+     * @param table "packages", "opcodes" or "huge"
+     * @throws IllegalArgumentException If the table doesn't exist
+     */
+    public void writeCsv(Writer out, String table) throws IOException {
+        switch (table) {
+            case "packages":
+                out.write("package");
+                for (String column : COLUMN_NAMES) {
+                    out.write("," + column);
+                }
+                out.write("\n");
+                for (Map.Entry<String, long[]> entry : getPackages().entrySet()) {
+                    out.write(csv(entry.getKey()));
+                    for (long value : entry.getValue()) {
+                        out.write("," + value);
+                    }
+                    out.write("\n");
+                }
+                break;
+            case "opcodes":
+                out.write("opcode,mnemonic,count\n");
+                for (int op = 0; op < opcodes.length; op++) {
+                    if (opcodes[op] > 0) {
+                        out.write(op + "," + Mnemonic.OPCODE[op] + "," + opcodes[op] + "\n");
+                    }
+                }
+                break;
+            case "huge":
+                out.write("class,method,length\n");
+                for (HugeMethod method : getHugeMethods()) {
+                    out.write(csv(method.className) + "," + csv(method.method) + "," + method.length + "\n");
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown table: " + table);
+        }
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') == -1 && value.indexOf('"') == -1) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Writes every table as a JSON object.
+     */
+    public void writeJson(Writer out) throws IOException {
+        long[] totals = getTotals();
+        out.write("{\n  \"limits\": {\"maxInlineSize\": " + MAX_INLINE_SIZE + ", \"freqInlineSize\": " + FREQ_INLINE_SIZE
+                + ", \"hugeMethodLimit\": " + HUGE_METHOD_LIMIT + "},\n");
+        out.write("  \"totals\": " + jsonCounters(totals) + ",\n");
+
+        out.write("  \"packages\": {");
+        boolean first = true;
+        for (Map.Entry<String, long[]> entry : getPackages().entrySet()) {
+            out.write(first ? "\n" : ",\n");
+            out.write("    " + json(entry.getKey()) + ": " + jsonCounters(entry.getValue()));
+            first = false;
+        }
+        out.write("\n  },\n");
+
+        out.write("  \"opcodes\": {");
+        first = true;
+        for (int op = 0; op < opcodes.length; op++) {
+            if (opcodes[op] > 0) {
+                out.write(first ? "\n" : ",\n");
+                out.write("    " + json(Mnemonic.OPCODE[op]) + ": " + opcodes[op]);
+                first = false;
+            }
+        }
+        out.write("\n  },\n");
+
+        out.write("  \"hugeMethods\": [");
+        first = true;
+        for (HugeMethod method : getHugeMethods()) {
+            out.write(first ? "\n" : ",\n");
+            out.write("    {\"class\": " + json(method.className) + ", \"method\": " + json(method.method) + ", \"length\": " + method.length + "}");
+            first = false;
+        }
+        out.write("\n  ]\n}\n");
+    }
+
+    private static String jsonCounters(long[] counters) {
+        StringBuilder json = new StringBuilder("{");
+        for (int col = 0; col < counters.length; col++) {
+            if (col > 0) {
+                json.append(", ");
+            }
+            json.append('"').append(COLUMN_NAMES[col]).append("\": ").append(counters[col]);
+        }
+        return json.append('}').toString();
+    }
+
+    private static String json(String value) {
+        StringBuilder json = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    public static class HugeMethod {
+        private final String className;
+        private final String method;
+        private final int length;
+
+        private HugeMethod(String className, String method, int length) {
+            this.className = className;
+            this.method = method;
+            this.length = length;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * Gets the name and descriptor of the method.
+         */
+        public String getMethod() {
+            return method;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+}
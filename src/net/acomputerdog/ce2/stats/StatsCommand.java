@@ -0,0 +1,63 @@
+package net.acomputerdog.ce2.stats;
+
+import net.acomputerdog.ce2.CEClassPath;
+
+import java.io.*;
+
+/**
+ * Command line front end of StatsScanner.
+ * <p>
+ * Usage: stats [--json | --csv packages|opcodes|huge] [--out file] path...
+ */
+public class StatsCommand {
+    public static void main(String[] args) {
+        String format = "json";
+        String table = null;
+        File outFile = null;
+        CEClassPath classPath = new CEClassPath();
+        int paths = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--json":
+                    format = "json";
+                    break;
+                case "--csv":
+                    format = "csv";
+                    table = i + 1 < args.length ? args[++i] : null;
+                    break;
+                case "--out":
+                    outFile = i + 1 < args.length ? new File(args[++i]) : null;
+                    break;
+                default:
+                    File path = new File(args[i]);
+                    if (!path.exists()) {
+                        System.err.println("No such file: " + path);
+                        System.exit(1);
+                    }
+                    classPath.addPath(path);
+                    paths++;
+            }
+        }
+        if (paths == 0 || ("csv".equals(format) && table == null)) {
+            System.err.println("Usage: stats [--json | --csv packages|opcodes|huge] [--out file] path...");
+            System.exit(1);
+        }
+
+        BytecodeStats stats = new StatsScanner().scan(classPath, null);
+        try (Writer out = new BufferedWriter(outFile == null ? new OutputStreamWriter(System.out, "UTF-8")
+                : new OutputStreamWriter(new FileOutputStream(outFile), "UTF-8"))) {
+            if ("csv".equals(format)) {
+                stats.writeCsv(out, table);
+            } else {
+                stats.writeJson(out);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Unable to write stats: " + e);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package net.acomputerdog.ce2.stats;
+
+import net.acomputerdog.ce2.CEClassPath;
+import net.acomputerdog.ce2.classfile.ClassReader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Collects BytecodeStats over a classpath.  Classes are read and scanned on a pool with one thread per core.
+ * Every thread counts into its own BytecodeStats, so the threads never contend, and the results are merged once
+ * the scan is done.
+ */
+public class StatsScanner {
+    private final AtomicInteger count = new AtomicInteger();
+    private volatile boolean cancelled = false;
+
+    /**
+     * Scans every class on a classpath.
+     *
+     * @param progress Called with the number of classes scanned so far, may be null
+     * @return The merged statistics, or null if the scan was cancelled
+     */
+    public BytecodeStats scan(CEClassPath classPath, IntConsumer progress) {
+        List<BytecodeStats> perThread = new ArrayList<>();
+        ThreadLocal<BytecodeStats> local = ThreadLocal.withInitial(() -> {
+            BytecodeStats stats = new BytecodeStats();
+            synchronized (perThread) {
+                perThread.add(stats);
+            }
+            return stats;
+        });
+
+        try {
+            classPath.visitClassFilesParallel((entry, path, bytes) -> {
+                if (cancelled) {
+                    return false;
+                }
+                try {
+                    local.get().addClass(ClassReader.read(bytes));
+                } catch (RuntimeException e) {
+                    System.err.println("Unable to scan class " + path + ": " + e);
+                }
+                int done = count.incrementAndGet();
+                if (progress != null && done % 500 == 0) {
+                    progress.accept(done);
+                }
+                return true;
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if (cancelled) {
+            return null;
+        }
+
+        //the pool has terminated, so nothing is still counting
+        BytecodeStats total = new BytecodeStats();
+        synchronized (perThread) {
+            for (BytecodeStats stats : perThread) {
+                total.merge(stats);
+            }
+        }
+        return total;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public int getClassCount() {
+        return count.get();
+    }
+}
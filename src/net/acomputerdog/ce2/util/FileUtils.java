@@ -1,6 +1,9 @@
 package net.acomputerdog.ce2.util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -10,6 +13,16 @@ public class FileUtils {
         return new URL("jar:" + jarURL + "!/" + entry);
     }
 
+    public static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 1024));
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
     public static URL toUrl(File file) {
         try {
             return file.toURI().toURL();
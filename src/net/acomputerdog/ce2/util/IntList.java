@@ -0,0 +1,60 @@
+package net.acomputerdog.ce2.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints.
+ */
+public class IntList {
+    private int[] values;
+    private int size = 0;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(1, capacity)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public void addAll(IntList other) {
+        if (size + other.size > values.length) {
+            values = Arrays.copyOf(values, Math.max(size + other.size, size * 2));
+        }
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+    }
+
+    public int get(int idx) {
+        if (idx >= size) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", size: " + size);
+        }
+        return values[idx];
+    }
+
+    public void set(int idx, int value) {
+        if (idx >= size) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", size: " + size);
+        }
+        values[idx] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,60 @@
+package net.acomputerdog.ce2.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive longs.
+ */
+public class LongList {
+    private long[] values;
+    private int size = 0;
+
+    public LongList() {
+        this(16);
+    }
+
+    public LongList(int capacity) {
+        values = new long[Math.max(1, capacity)];
+    }
+
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public void addAll(LongList other) {
+        if (size + other.size > values.length) {
+            values = Arrays.copyOf(values, Math.max(size + other.size, size * 2));
+        }
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+    }
+
+    public long get(int idx) {
+        if (idx >= size) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", size: " + size);
+        }
+        return values[idx];
+    }
+
+    public void set(int idx, long value) {
+        if (idx >= size) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", size: " + size);
+        }
+        values[idx] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,53 @@
+package net.acomputerdog.ce2.web;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import net.acomputerdog.ce2.CEClassPath;
+import net.acomputerdog.ce2.disassembler.html.HTMLDisassembler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Renders class files to HTML with HTMLDisassembler.  Safe to use from many threads: every class is made in
+ * its own child pool, since javassist pools aren't safe to add classes to concurrently.  Classes it refers to
+ * are still shared through the parent pool.
+ */
+public class ClassRenderer {
+    private final ClassPool parent;
+
+    public ClassRenderer(CEClassPath classPath) {
+        parent = new ClassPool(true);
+        parent.appendClassPath(classPath);
+    }
+
+    /**
+     * Disassembles a class file.
+     *
+     * @return The HTML of the disassembly, with ce2: links
+     */
+    public String render(byte[] bytes) throws IOException {
+        ClassPool pool = new ClassPool(parent);
+        pool.childFirstLookup = true;
+        CtClass cls = pool.makeClass(new ByteArrayInputStream(bytes));
+        return new HTMLDisassembler(pool).disassembleClass(cls);
+    }
+
+    /**
+     * Hashes the contents of a class file, as hex.
+     */
+    public static String hash(byte[] bytes) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
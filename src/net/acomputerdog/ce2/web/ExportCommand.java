@@ -0,0 +1,54 @@
+package net.acomputerdog.ce2.web;
+
+import net.acomputerdog.ce2.CEClassPath;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Command line front end of SiteExporter.
+ * <p>
+ * Usage: export [--force] --out dir path...
+ */
+public class ExportCommand {
+    public static void main(String[] args) {
+        File out = null;
+        boolean force = false;
+        CEClassPath classPath = new CEClassPath();
+        int paths = 0;
+        for (int i = 0; i < args.length; i++) {
+            if ("--out".equals(args[i]) && i + 1 < args.length) {
+                out = new File(args[++i]);
+            } else if ("--force".equals(args[i])) {
+                force = true;
+            } else {
+                File path = new File(args[i]);
+                if (!path.exists()) {
+                    System.err.println("No such file: " + path);
+                    System.exit(1);
+                }
+                classPath.addPath(path);
+                paths++;
+            }
+        }
+        if (out == null || paths == 0) {
+            System.err.println("Usage: export [--force] --out dir path...");
+            System.exit(1);
+        }
+
+        long start = System.currentTimeMillis();
+        SiteExporter exporter = new SiteExporter(classPath, out.toPath(), force);
+        try {
+            exporter.run();
+        } catch (IOException e) {
+            System.err.println("Export failed: " + e);
+            System.exit(1);
+        }
+        System.out.println("Rendered " + exporter.getRenderedCount() + " classes, " + exporter.getSkippedCount()
+                + " unchanged, " + exporter.getRemovedCount() + " removed, " + exporter.getFailedCount() + " failed in "
+                + (System.currentTimeMillis() - start) + " ms.");
+        if (exporter.getFailedCount() > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package net.acomputerdog.ce2.web;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HTML for the pages that are served or exported: the package list, the classes of a package, and the
+ * disassembly of a class.
+ */
+public class Pages {
+    //links written by HTMLBuilder, "ce2:" followed by a Reference
+    private static final Pattern CE2_LINK = Pattern.compile("href=\"ce2:([^\"#@]*)[^\"]*\"");
+
+    private static final String STYLE = "body{font-family:sans-serif;margin:1em 2em}a{text-decoration:none}"
+            + "a:hover{text-decoration:underline}ul{list-style:none;padding-left:1em}"
+            + "nav{margin-bottom:1em;padding-bottom:.5em;border-bottom:1px solid #ccc}";
+
+    /**
+     * Wraps a body into a complete page.
+     *
+     * @param root Relative or absolute path of the root, used for the navigation links
+     * @param search Path of the search page, which takes the query as the "q" parameter
+     */
+    public static String page(String title, String root, String search, String body) {
+        return "<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>" + escape(title) + "</title>"
+                + "<style>" + STYLE + "</style></head>\n<body><nav><a href=\"" + root + "\">Packages</a>"
+                + " | <form style=\"display:inline\" action=\"" + search + "\"><input name=\"q\" placeholder=\"Go to class or member\"></form>"
+                + "</nav>\n<h2>" + escape(title) + "</h2>\n" + body + "\n</body></html>\n";
+    }
+
+    /**
+     * Lists packages with the number of classes in each.
+     */
+    public static String packageList(Map<String, List<String>> packages, Function<String, String> packageLink) {
+        StringBuilder html = new StringBuilder("<ul>\n");
+        for (Map.Entry<String, List<String>> entry : packages.entrySet()) {
+            html.append("<li><a href=\"").append(escape(packageLink.apply(entry.getKey()))).append("\">")
+                    .append(escape(displayPackage(entry.getKey()))).append("</a> (").append(entry.getValue().size()).append(")</li>\n");
+        }
+        return html.append("</ul>").toString();
+    }
+
+    /**
+     * Lists the classes of a package, by simple name.
+     */
+    public static String classList(List<String> classes, Function<String, String> classLink) {
+        StringBuilder html = new StringBuilder("<ul>\n");
+        for (String cls : classes) {
+            html.append("<li><a href=\"").append(escape(classLink.apply(cls))).append("\">")
+                    .append(escape(simpleName(cls))).append("</a></li>\n");
+        }
+        return html.append("</ul>").toString();
+    }
+
+    /**
+     * Replaces the ce2: links of HTMLDisassembler output with links to class pages.
+     */
+    public static String rewriteLinks(String html, Function<String, String> classLink) {
+        Matcher matcher = CE2_LINK.matcher(html);
+        StringBuffer out = new StringBuffer(html.length() + 1024);
+        while (matcher.find()) {
+            String link = "href=\"" + escape(classLink.apply(unescape(matcher.group(1)))) + "\"";
+            matcher.appendReplacement(out, Matcher.quoteReplacement(link));
+        }
+        matcher.appendTail(out);
+        return out.toString();
+    }
+
+    /**
+     * Groups class names by package, both sorted.
+     */
+    public static SortedMap<String, List<String>> groupByPackage(Collection<String> classNames) {
+        SortedMap<String, List<String>> packages = new TreeMap<>();
+        for (String name : classNames) {
+            packages.computeIfAbsent(packageOf(name), pkg -> new ArrayList<>()).add(name);
+        }
+        for (List<String> classes : packages.values()) {
+            Collections.sort(classes);
+        }
+        return packages;
+    }
+
+    public static String packageOf(String className) {
+        int dot = className.lastIndexOf('.');
+        return dot == -1 ? "" : className.substring(0, dot);
+    }
+
+    public static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    public static String displayPackage(String pkg) {
+        return pkg.isEmpty() ? "(default package)" : pkg;
+    }
+
+    public static String escape(String str) {
+        return str.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static String unescape(String str) {
+        return str.replace("&#34;", "\"").replace("&#60;", "<").replace("&#62;", ">").replace("&#38;", "&");
+    }
+}
@@ -0,0 +1,87 @@
+package net.acomputerdog.ce2.web;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Least recently used cache of rendered pages, bounded by their total size.  Requests for a page that is
+ * already being rendered wait for that render instead of starting another one.
+ */
+public class RenderCache {
+    private final long maxBytes;
+    //key -> page, least recently used first
+    private final Map<String, byte[]> pages = new LinkedHashMap<>(64, 0.75f, true);
+    private final ConcurrentMap<String, CompletableFuture<byte[]>> rendering = new ConcurrentHashMap<>();
+    private long bytes;
+
+    public RenderCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets a page, rendering it if it isn't cached.
+     *
+     * @throws Exception If the render failed, including when another request was rendering the page
+     */
+    public byte[] get(String key, Callable<byte[]> render) throws Exception {
+        byte[] page = lookup(key);
+        if (page != null) {
+            return page;
+        }
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = rendering.putIfAbsent(key, future);
+        if (running != null) {
+            try {
+                return running.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        try {
+            //another request may have finished rendering between the lookup and putIfAbsent
+            page = lookup(key);
+            if (page == null) {
+                page = render.call();
+                put(key, page);
+            }
+            future.complete(page);
+            return page;
+        } catch (Throwable t) {
+            //errors too, or the requests waiting on the future would never return
+            future.completeExceptionally(t);
+            throw t;
+        } finally {
+            rendering.remove(key);
+        }
+    }
+
+    private synchronized byte[] lookup(String key) {
+        return pages.get(key);
+    }
+
+    private synchronized void put(String key, byte[] page) {
+        if (page.length > maxBytes) {
+            return;
+        }
+        byte[] old = pages.put(key, page);
+        if (old != null) {
+            bytes -= old.length;
+        }
+        bytes += page.length;
+        Iterator<byte[]> it = pages.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().length;
+            it.remove();
+        }
+    }
+
+    public synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    public synchronized long getSize() {
+        return bytes;
+    }
+}
@@ -0,0 +1,45 @@
+package net.acomputerdog.ce2.web;
+
+import net.acomputerdog.ce2.CEClassPath;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Command line front end of WebServer.
+ * <p>
+ * Usage: serve [--port n] path...
+ */
+public class ServeCommand {
+    public static void main(String[] args) {
+        int port = 8080;
+        CEClassPath classPath = new CEClassPath();
+        int paths = 0;
+        for (int i = 0; i < args.length; i++) {
+            if ("--port".equals(args[i]) && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else {
+                File path = new File(args[i]);
+                if (!path.exists()) {
+                    System.err.println("No such file: " + path);
+                    System.exit(1);
+                }
+                classPath.addPath(path);
+                paths++;
+            }
+        }
+        if (paths == 0) {
+            System.err.println("Usage: serve [--port n] path...");
+            System.exit(1);
+        }
+
+        WebServer server = new WebServer(classPath);
+        try {
+            server.start(port);
+        } catch (IOException e) {
+            System.err.println("Unable to start server: " + e);
+            System.exit(1);
+        }
+        System.out.println("Serving on http://localhost:" + server.getAddress().getPort() + "/");
+    }
+}
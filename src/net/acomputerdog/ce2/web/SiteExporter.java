@@ -0,0 +1,260 @@
+package net.acomputerdog.ce2.web;
+
+import net.acomputerdog.ce2.CEClassPath;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports the disassembly of a classpath as a static site: a page per class, an index page per package, a
+ * package list, and a search page backed by a script with every class name.
+ * <p>
+ * Classes are hashed, rendered and written on one thread per core.  The hashes are saved with the site, and
+ * on the next export classes whose hash hasn't changed keep their existing page, so re-exporting a patched jar
+ * only renders the classes that changed.  Pages of classes that are gone are deleted.  The hashes are saved
+ * with a format version, and a site exported with a different version is rendered again in full.
+ */
+public class SiteExporter {
+    //class name -> hash of the class file of every page, written last so an interrupted export redoes its work
+    private static final String MANIFEST = ".ce2-export";
+    //first line of the manifest, followed by the format version
+    private static final String MANIFEST_HEADER = "ce2-export ";
+    //bump when the pages change, so that sites exported by an older version are rendered again
+    private static final int FORMAT_VERSION = 1;
+    //saved for classes whose page couldn't be rendered or written, never matches a real hash
+    private static final String FAILED_HASH = "-";
+    private static final String DEFAULT_PACKAGE_DIR = "_default";
+    private static final int MAX_SEARCH_RESULTS = 200;
+
+    private final CEClassPath classPath;
+    private final Path out;
+    private final boolean force;
+    private final ClassRenderer renderer;
+
+    private final AtomicInteger rendered = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private int removed;
+    private final Set<Path> createdDirs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param force If true, every class is rendered even if it hasn't changed
+     */
+    public SiteExporter(CEClassPath classPath, Path out, boolean force) {
+        this.classPath = classPath;
+        this.out = out;
+        this.force = force;
+        this.renderer = new ClassRenderer(classPath);
+    }
+
+    public void run() throws IOException {
+        Files.createDirectories(out);
+        //read even when every page is rendered again, to find the pages of classes that are gone
+        Map<String, String> oldHashes = new HashMap<>();
+        boolean reuse = readManifest(oldHashes) == FORMAT_VERSION && !force;
+        Map<String, String> hashes = new ConcurrentHashMap<>();
+
+        List<String> names = Collections.synchronizedList(new ArrayList<>());
+        try {
+            classPath.visitClassFilesParallel((entry, path, bytes) -> {
+                String name = path.substring(0, path.length() - ".class".length()).replace('/', '.');
+                names.add(name);
+                exportClass(name, bytes, reuse ? oldHashes.get(name) : null, hashes);
+                return true;
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+
+        SortedMap<String, List<String>> packages = Pages.groupByPackage(names);
+        //only classes that are gone from the classpath, a class that failed this time still has its error page
+        Set<String> visited = new HashSet<>(names);
+        for (String name : oldHashes.keySet()) {
+            if (!visited.contains(name) && Files.deleteIfExists(classPage(name))) {
+                removed++;
+            }
+        }
+        for (Map.Entry<String, List<String>> entry : packages.entrySet()) {
+            String html = Pages.classList(entry.getValue(), cls -> "../../" + classLink(cls));
+            write(packageDir(entry.getKey()).resolve("index.html"),
+                    Pages.page(Pages.displayPackage(entry.getKey()), "../../", "../../search.html", html));
+        }
+        write(out.resolve("index.html"), Pages.page("Packages", "", "search.html",
+                Pages.packageList(packages, pkg -> packageLink(pkg) + "/index.html")));
+        writeSearch(names);
+        writeManifest(hashes);
+    }
+
+    private void exportClass(String name, byte[] bytes, String oldHash, Map<String, String> hashes) {
+        String hash = ClassRenderer.hash(bytes);
+        Path page = classPage(name);
+        if (hash.equals(oldHash) && Files.isRegularFile(page)) {
+            hashes.put(name, hash);
+            skipped.incrementAndGet();
+            return;
+        }
+        String html;
+        try {
+            html = Pages.rewriteLinks(renderer.render(bytes), cls -> "../../" + classLink(cls));
+            hashes.put(name, hash);
+            rendered.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            //saved without its hash, so it is tried again next time but its page is still cleaned up once it is gone
+            html = "<p>Unable to disassemble this class: " + Pages.escape(e.toString()) + "</p>";
+            hashes.put(name, FAILED_HASH);
+            failed.incrementAndGet();
+        }
+        try {
+            write(page, Pages.page(name, "../../", "../../search.html", html));
+        } catch (IOException e) {
+            System.err.println("Unable to write " + page + ": " + e);
+            hashes.put(name, FAILED_HASH);
+            failed.incrementAndGet();
+        }
+    }
+
+    private Path packageDir(String pkg) {
+        return out.resolve("pkg").resolve(pkg.isEmpty() ? DEFAULT_PACKAGE_DIR : pkg);
+    }
+
+    private Path classPage(String cls) {
+        return packageDir(Pages.packageOf(cls)).resolve(Pages.simpleName(cls) + ".html");
+    }
+
+    //relative to the root
+    private static String packageLink(String pkg) {
+        return "pkg/" + (pkg.isEmpty() ? DEFAULT_PACKAGE_DIR : pkg);
+    }
+
+    //relative to the root
+    private static String classLink(String cls) {
+        return packageLink(Pages.packageOf(cls)) + "/" + Pages.simpleName(cls) + ".html";
+    }
+
+    private void writeSearch(List<String> names) throws IOException {
+        List<String> sorted = new ArrayList<>(names);
+        Collections.sort(sorted);
+        StringBuilder script = new StringBuilder("var CE2_CLASSES = [\n");
+        for (int i = 0; i < sorted.size(); i++) {
+            script.append(jsString(sorted.get(i))).append(i + 1 < sorted.size() ? ",\n" : "\n");
+        }
+        script.append("];\n");
+        write(out.resolve("search-index.js"), script.toString());
+
+        String body = "<ul id=\"results\"></ul>\n<script src=\"search-index.js\"></script>\n<script>\n"
+                + "var q = (new URLSearchParams(location.search).get('q') || '').toLowerCase();\n"
+                + "var list = document.getElementById('results');\n"
+                + "for (var i = 0, found = 0; q && i < CE2_CLASSES.length && found < " + MAX_SEARCH_RESULTS + "; i++) {\n"
+                + "  var name = CE2_CLASSES[i];\n"
+                + "  if (name.toLowerCase().indexOf(q) === -1) continue;\n"
+                + "  var dot = name.lastIndexOf('.');\n"
+                + "  var a = document.createElement('a');\n"
+                + "  a.href = 'pkg/' + (dot === -1 ? '" + DEFAULT_PACKAGE_DIR + "' : name.substring(0, dot)) + '/' + name.substring(dot + 1) + '.html';\n"
+                + "  a.textContent = name;\n"
+                + "  var li = document.createElement('li');\n"
+                + "  li.appendChild(a);\n"
+                + "  list.appendChild(li);\n"
+                + "  found++;\n"
+                + "}\n</script>";
+        write(out.resolve("search.html"), Pages.page("Search", "", "search.html", body));
+    }
+
+    private static String jsString(String str) {
+        StringBuilder js = new StringBuilder("\"");
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\' || c == '<' || c < 0x20) {
+                js.append(String.format("\\u%04x", (int) c));
+            } else {
+                js.append(c);
+            }
+        }
+        return js.append('"').toString();
+    }
+
+    /**
+     * Reads the hashes of the last export.
+     *
+     * @return The format version of the last export, 0 if it was from before versions were saved or -1 if
+     * there was no last export
+     */
+    private int readManifest(Map<String, String> hashes) throws IOException {
+        Path manifest = out.resolve(MANIFEST);
+        if (!Files.isRegularFile(manifest)) {
+            return -1;
+        }
+        int version = 0;
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(MANIFEST_HEADER)) {
+                    try {
+                        version = Integer.parseInt(line.substring(MANIFEST_HEADER.length()).trim());
+                    } catch (NumberFormatException e) {
+                        version = 0;
+                    }
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                if (space != -1) {
+                    hashes.put(line.substring(space + 1), line.substring(0, space));
+                }
+            }
+        }
+        return version;
+    }
+
+    private void writeManifest(Map<String, String> hashes) throws IOException {
+        StringBuilder manifest = new StringBuilder(hashes.size() * 100);
+        manifest.append(MANIFEST_HEADER).append(FORMAT_VERSION).append('\n');
+        for (Map.Entry<String, String> entry : new TreeMap<>(hashes).entrySet()) {
+            manifest.append(entry.getValue()).append(' ').append(entry.getKey()).append('\n');
+        }
+        write(out.resolve(MANIFEST), manifest.toString());
+    }
+
+    /**
+     * Writes a file with a single channel write of the encoded text.
+     */
+    private void write(Path file, String text) throws IOException {
+        Path dir = file.getParent();
+        if (!createdDirs.contains(dir)) {
+            Files.createDirectories(dir);
+            createdDirs.add(dir);
+        }
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(CharBuffer.wrap(text));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public int getRenderedCount() {
+        return rendered.get();
+    }
+
+    public int getSkippedCount() {
+        return skipped.get();
+    }
+
+    public int getFailedCount() {
+        return failed.get();
+    }
+
+    public int getRemovedCount() {
+        return removed;
+    }
+}
@@ -0,0 +1,273 @@
+package net.acomputerdog.ce2.web;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import javassist.NotFoundException;
+import net.acomputerdog.ce2.CEClassPath;
+import net.acomputerdog.ce2.index.ClassPathIndex;
+import net.acomputerdog.ce2.index.NameIndex;
+import net.acomputerdog.ce2.util.FileUtils;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the class tree, name search and disassembly of a classpath over HTTP, on localhost only.
+ * <p>
+ * Pages: / (packages), /package/name (classes of a package), /class/name (disassembly), /search?q=text.
+ * Disassembly pages are cached gzipped by the hash of the class file, which is also their ETag, so a class
+ * is only rendered again when it changes.  Requests run on virtual threads when the runtime has them
+ * (Java 21+), otherwise on a cached thread pool.
+ */
+public class WebServer {
+    //render cache size, override with -Dce2.serverCacheMB
+    private static final long CACHE_BYTES = Long.getLong("ce2.serverCacheMB", 64) * 1024 * 1024;
+    private static final int MAX_SEARCH_RESULTS = 100;
+    private static final int BACKLOG = 512;
+
+    private final CEClassPath classPath;
+    private final ClassRenderer renderer;
+    private final RenderCache cache = new RenderCache(CACHE_BYTES);
+    private final ClassPathIndex index = new ClassPathIndex();
+    private SortedMap<String, List<String>> packages;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public WebServer(CEClassPath classPath) {
+        this.classPath = classPath;
+        this.renderer = new ClassRenderer(classPath);
+    }
+
+    /**
+     * Starts serving.  The class tree is listed before this returns, the name index is built in the background.
+     *
+     * @param port Port to listen on, or 0 for any free port
+     */
+    public void start(int port) throws IOException {
+        List<String> names = new ArrayList<>();
+        classPath.visitClassFiles((entry, path, in) -> {
+            names.add(path.substring(0, path.length() - ".class".length()).replace('/', '.'));
+            return true;
+        });
+        packages = Pages.groupByPackage(names);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        server.createContext("/", this::handle);
+        executor = createExecutor();
+        server.setExecutor(executor);
+        server.start();
+
+        Thread thread = new Thread(() -> index.build(classPath, null), "CE2 indexer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            //Java 21+, looked up by reflection so that this still runs on Java 8
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "CE2 server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        index.cancel();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendText(exchange, 405, "Method not allowed");
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            if ("/".equals(path)) {
+                sendPage(exchange, 200, Pages.page("Packages", "/", "/search", Pages.packageList(packages, WebServer::packageLink)));
+            } else if (path.startsWith("/package/")) {
+                String pkg = path.substring("/package/".length());
+                List<String> classes = packages.get(pkg);
+                if (classes == null) {
+                    sendText(exchange, 404, "No such package: " + pkg);
+                } else {
+                    sendPage(exchange, 200, Pages.page(Pages.displayPackage(pkg), "/", "/search", Pages.classList(classes, WebServer::classLink)));
+                }
+            } else if (path.startsWith("/class/")) {
+                sendClass(exchange, path.substring("/class/".length()));
+            } else if ("/search".equals(path)) {
+                sendSearch(exchange, getParameter(exchange, "q"));
+            } else {
+                sendText(exchange, 404, "Not found");
+            }
+        } catch (Exception e) {
+            System.err.println("Error serving " + exchange.getRequestURI() + ": " + e);
+            sendText(exchange, 500, "Internal error: " + e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void sendClass(HttpExchange exchange, String name) throws Exception {
+        byte[] bytes;
+        try (InputStream in = classPath.openClassfile(name)) {
+            bytes = FileUtils.readFully(in);
+        } catch (NotFoundException e) {
+            sendText(exchange, 404, "No such class: " + name);
+            return;
+        }
+        String etag = "\"" + ClassRenderer.hash(bytes) + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        if (matchesETag(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        byte[] page = cache.get(etag, () -> {
+            String html = Pages.rewriteLinks(renderer.render(bytes), WebServer::classLink);
+            return gzip(Pages.page(name, "/", "/search", html).getBytes(StandardCharsets.UTF_8));
+        });
+        sendGzipped(exchange, 200, "text/html; charset=utf-8", page);
+    }
+
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void sendSearch(HttpExchange exchange, String query) throws IOException {
+        NameIndex names = index.getNames();
+        if (names == null) {
+            exchange.getResponseHeaders().set("Retry-After", "5");
+            sendText(exchange, 503, "The classpath is still being indexed");
+            return;
+        }
+        StringBuilder body = new StringBuilder("<ul>\n");
+        int count = 0;
+        if (query != null && !query.trim().isEmpty()) {
+            NameIndex.Query result = names.query(query.trim());
+            count = result.getMatchCount();
+            for (NameIndex.Match match : result.getTop(MAX_SEARCH_RESULTS)) {
+                body.append("<li><a href=\"").append(Pages.escape(classLink(match.getClassName()))).append("\">")
+                        .append(Pages.escape(match.toString())).append("</a></li>\n");
+            }
+        }
+        body.append("</ul>\n<p>").append(count).append(" matches</p>");
+        sendPage(exchange, 200, Pages.page("Search: " + (query == null ? "" : query), "/", "/search", body.toString()));
+    }
+
+    private static String getParameter(HttpExchange exchange, String name) throws UnsupportedEncodingException {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                int eq = param.indexOf('=');
+                if (eq != -1 && name.equals(param.substring(0, eq))) {
+                    return URLDecoder.decode(param.substring(eq + 1), "UTF-8");
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String packageLink(String pkg) {
+        return "/package/" + encode(pkg);
+    }
+
+    private static String classLink(String cls) {
+        return "/class/" + encode(cls);
+    }
+
+    private static String encode(String name) {
+        try {
+            return URLEncoder.encode(name, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        send(exchange, status, "text/plain; charset=utf-8", text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendPage(HttpExchange exchange, int status, String html) throws IOException {
+        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        if (acceptsGzip(exchange)) {
+            sendGzipped(exchange, status, "text/html; charset=utf-8", gzip(bytes));
+        } else {
+            send(exchange, status, "text/html; charset=utf-8", bytes);
+        }
+    }
+
+    private static void sendGzipped(HttpExchange exchange, int status, String type, byte[] gzipped) throws IOException {
+        if (!acceptsGzip(exchange)) {
+            send(exchange, status, type, gunzip(gzipped));
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        send(exchange, status, type, gzipped);
+    }
+
+    private static void send(HttpExchange exchange, int status, String type, byte[] body) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", type);
+        headers.add("Vary", "Accept-Encoding");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            headers.set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static boolean acceptsGzip(HttpExchange exchange) {
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        return accept != null && accept.contains("gzip");
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return FileUtils.readFully(in);
+        }
+    }
+}